@@ -0,0 +1,217 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JDBC version of bench-conversation-counters.sh for hosts without psql and pgbench.
+ *
+ * Creates the same bench_conversations table and data, runs the same "before" and "after"
+ * transactions from concurrent clients with the simple query protocol, and prints the same
+ * report line per variant. Takes the same settings from the environment, plus RUNS, the
+ * number of before/after rounds (1).
+ *
+ * Usage (Java 17 runs the source file directly; the driver comes from the local Maven repository):
+ *   DATABASE_URL=jdbc:postgresql://localhost:5432/invoiceng PGUSER=postgres PGPASSWORD=postgres \
+ *     java -cp ~/.m2/repository/org/postgresql/postgresql/42.6.0/postgresql-42.6.0.jar \
+ *     scripts/BenchConversationCounters.java
+ */
+public class BenchConversationCounters {
+
+    private static final String SELECT_SQL = "SELECT message_count AS mc FROM bench_conversations WHERE id = ?";
+    private static final String BEFORE_SQL = "UPDATE bench_conversations SET "
+            + "business_id = business_id, customer_phone = customer_phone, customer_name = customer_name, "
+            + "customer_whatsapp_id = customer_whatsapp_id, state = state, "
+            + "context = context::text::jsonb, cart = cart::text::jsonb, "
+            + "is_active = is_active, last_message_at = now(), message_count = ? + 1, "
+            + "is_handed_off = is_handed_off, handed_off_at = handed_off_at, handed_off_reason = handed_off_reason, "
+            + "outcome = outcome, order_id = order_id, created_at = created_at, updated_at = now() "
+            + "WHERE id = ?";
+    private static final String AFTER_SQL = "UPDATE bench_conversations SET "
+            + "message_count = COALESCE(message_count, 0) + 1, "
+            + "last_message_at = GREATEST(COALESCE(last_message_at, now()::timestamp), now()::timestamp), "
+            + "updated_at = CURRENT_TIMESTAMP "
+            + "WHERE id = ?";
+
+    private static final String URL = jdbcUrl(env("DATABASE_URL", "postgresql://localhost:5432/invoiceng"));
+    private static final String USER = env("PGUSER", env("DATABASE_USERNAME", "postgres"));
+    private static final String PASSWORD = env("PGPASSWORD", env("DATABASE_PASSWORD", "postgres"));
+
+    private static final int ROWS = Integer.parseInt(env("ROWS", "10000"));
+    private static final int CLIENTS = Integer.parseInt(env("CLIENTS", "16"));
+    private static final int DURATION = Integer.parseInt(env("DURATION", "30"));
+    private static final int CONTEXT_BYTES = Integer.parseInt(env("CONTEXT_BYTES", "3000"));
+    private static final int CART_BYTES = Integer.parseInt(env("CART_BYTES", "1000"));
+    private static final int RUNS = Integer.parseInt(env("RUNS", "1"));
+
+    public static void main(String[] args) throws Exception {
+        try (Connection admin = connect(false); Statement statement = admin.createStatement()) {
+            System.out.printf("Creating bench_conversations with %d rows (context %dB, cart %dB)%n", ROWS, CONTEXT_BYTES, CART_BYTES);
+            createTable(statement);
+            try {
+                System.out.printf("Running %d s per variant with %d clients%n", DURATION, CLIENTS);
+                for (int i = 0; i < RUNS; i++) {
+                    run(admin, "before", true);
+                    run(admin, "after", false);
+                }
+            } finally {
+                statement.execute("DROP TABLE IF EXISTS bench_conversations");
+            }
+        }
+    }
+
+    private static void createTable(Statement statement) throws SQLException {
+        statement.execute("DROP TABLE IF EXISTS bench_conversations");
+        statement.execute("""
+                CREATE TABLE bench_conversations (
+                    id BIGINT PRIMARY KEY,
+                    business_id UUID NOT NULL,
+                    customer_phone VARCHAR(20) NOT NULL,
+                    customer_name VARCHAR(255),
+                    customer_whatsapp_id VARCHAR(100),
+                    state VARCHAR(50) DEFAULT 'greeting',
+                    context JSONB DEFAULT '{}',
+                    cart JSONB,
+                    cart_version BIGINT NOT NULL DEFAULT 0,
+                    is_active BOOLEAN DEFAULT TRUE,
+                    last_message_at TIMESTAMP,
+                    message_count INTEGER DEFAULT 0,
+                    is_handed_off BOOLEAN DEFAULT FALSE,
+                    handed_off_at TIMESTAMP,
+                    handed_off_reason TEXT,
+                    outcome VARCHAR(20),
+                    order_id UUID,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE (business_id, customer_phone)
+                )""");
+        statement.execute("CREATE INDEX ON bench_conversations (business_id)");
+        statement.execute("CREATE INDEX ON bench_conversations (business_id, is_active)");
+        statement.execute("CREATE INDEX ON bench_conversations (customer_phone)");
+
+        // Text that does not compress away, so the jsonb columns are as large as configured
+        statement.execute("CREATE FUNCTION pg_temp.filler(seed BIGINT, bytes INT) RETURNS TEXT LANGUAGE sql AS "
+                + "'SELECT left(string_agg(md5(seed::text || g::text), ''''), bytes) FROM generate_series(1, bytes / 32 + 1) AS g'");
+        statement.execute("INSERT INTO bench_conversations (id, business_id, customer_phone, customer_name, context, cart, last_message_at) "
+                + "SELECT i, "
+                + "('00000000-0000-0000-0000-' || lpad(to_hex(i % 50), 12, '0'))::uuid, "
+                + "'+234' || (8000000000 + i), "
+                + "'Customer ' || i, "
+                + "jsonb_build_object('historySummary', pg_temp.filler(i, " + CONTEXT_BYTES + "), "
+                + "'historySummaryThrough', now()::text), "
+                + "jsonb_build_object('items', jsonb_build_array(jsonb_build_object("
+                + "'productName', 'Product ' || i, 'quantity', 1, "
+                + "'notes', pg_temp.filler(-i, " + CART_BYTES + ")))), "
+                + "now() "
+                + "FROM generate_series(1, " + ROWS + ") AS i");
+        statement.execute("VACUUM ANALYZE bench_conversations");
+    }
+
+    private static void run(Connection admin, String name, boolean before) throws Exception {
+        try (Statement statement = admin.createStatement()) {
+            statement.execute("VACUUM bench_conversations");
+            statement.execute("CHECKPOINT");
+        }
+        long countBefore = queryLong(admin, "SELECT sum(message_count) FROM bench_conversations");
+        String lsnBefore = queryString(admin, "SELECT pg_current_wal_insert_lsn()::text");
+
+        AtomicLong transactions = new AtomicLong();
+        AtomicLong latencyNanos = new AtomicLong();
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(DURATION);
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            results.add(clients.submit(() -> {
+                client(before, deadline, transactions, latencyNanos);
+                return null;
+            }));
+        }
+        clients.shutdown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        String lsnAfter = queryString(admin, "SELECT pg_current_wal_insert_lsn()::text");
+        long countAfter = queryLong(admin, "SELECT sum(message_count) FROM bench_conversations");
+        long wal = queryLong(admin, "SELECT pg_wal_lsn_diff('" + lsnAfter + "', '" + lsnBefore + "')::bigint");
+        long tx = transactions.get();
+        long lost = tx - (countAfter - countBefore);
+
+        System.out.printf("%-7s %10d tx %10.1f tps %9.3f ms avg %12d WAL bytes %9d B/tx %8d lost increments%n",
+                name, tx, tx / seconds, latencyNanos.get() / 1e6 / Math.max(1, tx), wal, wal / Math.max(1, tx), lost);
+    }
+
+    private static void client(boolean before, long deadline, AtomicLong transactions, AtomicLong latencyNanos)
+            throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (Connection connection = connect(true);
+             PreparedStatement select = connection.prepareStatement(SELECT_SQL);
+             PreparedStatement full = connection.prepareStatement(BEFORE_SQL);
+             PreparedStatement counter = connection.prepareStatement(AFTER_SQL)) {
+            connection.setAutoCommit(!before);
+            while (System.nanoTime() < deadline) {
+                long id = random.nextLong(1, ROWS + 1);
+                long start = System.nanoTime();
+                if (before) {
+                    select.setLong(1, id);
+                    int messageCount;
+                    try (ResultSet row = select.executeQuery()) {
+                        row.next();
+                        messageCount = row.getInt(1);
+                    }
+                    full.setInt(1, messageCount);
+                    full.setLong(2, id);
+                    full.executeUpdate();
+                    connection.commit();
+                } else {
+                    counter.setLong(1, id);
+                    counter.executeUpdate();
+                }
+                latencyNanos.addAndGet(System.nanoTime() - start);
+                transactions.incrementAndGet();
+            }
+        }
+    }
+
+    private static Connection connect(boolean simpleProtocol) throws SQLException {
+        // pgbench sends each statement as simple query text; the clients do the same
+        String url = simpleProtocol ? URL + (URL.contains("?") ? "&" : "?") + "preferQueryMode=simple" : URL;
+        return DriverManager.getConnection(url, USER, PASSWORD);
+    }
+
+    private static long queryLong(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet row = statement.executeQuery(sql)) {
+            row.next();
+            return row.getLong(1);
+        }
+    }
+
+    private static String queryString(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet row = statement.executeQuery(sql)) {
+            row.next();
+            return row.getString(1);
+        }
+    }
+
+    private static String jdbcUrl(String url) {
+        return url.startsWith("jdbc:") ? url : "jdbc:" + url;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,142 @@
+#!/usr/bin/env bash
+#
+# Compares the two ways of counting a message on a conversation row:
+#
+#   before  load the conversation, then UPDATE every column with message_count read
+#           by the load + 1 (what a JPA save of the whole entity did)
+#   after   UPDATE message_count = message_count + 1, last_message_at, updated_at only
+#           (ConversationRepository.recordMessages)
+#
+# For each it reports throughput, average latency, WAL written per transaction and
+# increments lost to concurrent read-modify-write. Runs against a scratch table,
+# bench_conversations, shaped like conversations with the same indexes. The table is
+# dropped at the end.
+#
+# Usage:
+#   DATABASE_URL=postgresql://localhost:5432/invoiceng PGUSER=postgres PGPASSWORD=postgres \
+#     scripts/bench-conversation-counters.sh
+#
+# Settings (environment): ROWS (10000), CLIENTS (16), DURATION seconds per run (30),
+# CONTEXT_BYTES (3000) and CART_BYTES (1000), the size of the jsonb columns.
+# Needs psql and pgbench, and a role allowed to CHECKPOINT. Use a database with no
+# other traffic, or the WAL figures include it.
+
+set -euo pipefail
+
+DB_URL="${DATABASE_URL:-postgresql://localhost:5432/invoiceng}"
+DB_URL="${DB_URL#jdbc:}"
+export PGUSER="${PGUSER:-${DATABASE_USERNAME:-postgres}}"
+export PGPASSWORD="${PGPASSWORD:-${DATABASE_PASSWORD:-postgres}}"
+
+ROWS="${ROWS:-10000}"
+CLIENTS="${CLIENTS:-16}"
+DURATION="${DURATION:-30}"
+CONTEXT_BYTES="${CONTEXT_BYTES:-3000}"
+CART_BYTES="${CART_BYTES:-1000}"
+
+WORK_DIR="$(mktemp -d)"
+trap 'rm -rf "$WORK_DIR"; psql "$DB_URL" -X -q -c "DROP TABLE IF EXISTS bench_conversations" >/dev/null 2>&1 || true' EXIT
+
+sql() {
+    psql "$DB_URL" -X -q -At -v ON_ERROR_STOP=1 -c "$1"
+}
+
+echo "Creating bench_conversations with $ROWS rows (context ${CONTEXT_BYTES}B, cart ${CART_BYTES}B)"
+psql "$DB_URL" -X -q -v ON_ERROR_STOP=1 <<SQL
+DROP TABLE IF EXISTS bench_conversations;
+CREATE TABLE bench_conversations (
+    id BIGINT PRIMARY KEY,
+    business_id UUID NOT NULL,
+    customer_phone VARCHAR(20) NOT NULL,
+    customer_name VARCHAR(255),
+    customer_whatsapp_id VARCHAR(100),
+    state VARCHAR(50) DEFAULT 'greeting',
+    context JSONB DEFAULT '{}',
+    cart JSONB,
+    cart_version BIGINT NOT NULL DEFAULT 0,
+    is_active BOOLEAN DEFAULT TRUE,
+    last_message_at TIMESTAMP,
+    message_count INTEGER DEFAULT 0,
+    is_handed_off BOOLEAN DEFAULT FALSE,
+    handed_off_at TIMESTAMP,
+    handed_off_reason TEXT,
+    outcome VARCHAR(20),
+    order_id UUID,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (business_id, customer_phone)
+);
+CREATE INDEX ON bench_conversations (business_id);
+CREATE INDEX ON bench_conversations (business_id, is_active);
+CREATE INDEX ON bench_conversations (customer_phone);
+
+-- Text that does not compress away, so the jsonb columns are as large as configured
+CREATE FUNCTION pg_temp.filler(seed BIGINT, bytes INT) RETURNS TEXT LANGUAGE sql AS
+    'SELECT left(string_agg(md5(seed::text || g::text), ''''), bytes) FROM generate_series(1, bytes / 32 + 1) AS g';
+
+INSERT INTO bench_conversations (id, business_id, customer_phone, customer_name, context, cart, last_message_at)
+SELECT i,
+       ('00000000-0000-0000-0000-' || lpad(to_hex(i % 50), 12, '0'))::uuid,
+       '+234' || (8000000000 + i),
+       'Customer ' || i,
+       jsonb_build_object('historySummary', pg_temp.filler(i, $CONTEXT_BYTES),
+                          'historySummaryThrough', now()::text),
+       jsonb_build_object('items', jsonb_build_array(jsonb_build_object(
+                          'productName', 'Product ' || i, 'quantity', 1,
+                          'notes', pg_temp.filler(-i, $CART_BYTES)))),
+       now()
+FROM generate_series(1, $ROWS) AS i;
+VACUUM ANALYZE bench_conversations;
+SQL
+
+cat > "$WORK_DIR/before.sql" <<'SQL'
+\set id random(1, :rows)
+BEGIN;
+SELECT message_count AS mc FROM bench_conversations WHERE id = :id \gset
+UPDATE bench_conversations SET
+    business_id = business_id, customer_phone = customer_phone, customer_name = customer_name,
+    customer_whatsapp_id = customer_whatsapp_id, state = state,
+    context = context::text::jsonb, cart = cart::text::jsonb,
+    is_active = is_active, last_message_at = now(), message_count = :mc + 1,
+    is_handed_off = is_handed_off, handed_off_at = handed_off_at, handed_off_reason = handed_off_reason,
+    outcome = outcome, order_id = order_id, created_at = created_at, updated_at = now()
+WHERE id = :id;
+COMMIT;
+SQL
+
+cat > "$WORK_DIR/after.sql" <<'SQL'
+\set id random(1, :rows)
+UPDATE bench_conversations SET
+    message_count = COALESCE(message_count, 0) + 1,
+    last_message_at = GREATEST(COALESCE(last_message_at, now()::timestamp), now()::timestamp),
+    updated_at = CURRENT_TIMESTAMP
+WHERE id = :id;
+SQL
+
+run() {
+    local name="$1" script="$2"
+    local count_before lsn_before lsn_after count_after out tx latency tps wal lost
+
+    sql "VACUUM bench_conversations" >/dev/null
+    sql "CHECKPOINT" >/dev/null
+    count_before="$(sql "SELECT sum(message_count) FROM bench_conversations")"
+    lsn_before="$(sql "SELECT pg_current_wal_insert_lsn()")"
+
+    out="$(pgbench "$DB_URL" -n -f "$script" -D rows="$ROWS" -c "$CLIENTS" -j "$CLIENTS" -T "$DURATION" 2>&1)"
+
+    lsn_after="$(sql "SELECT pg_current_wal_insert_lsn()")"
+    count_after="$(sql "SELECT sum(message_count) FROM bench_conversations")"
+
+    tx="$(sed -n 's/^number of transactions actually processed: \([0-9]*\).*/\1/p' <<<"$out")"
+    latency="$(sed -n 's/^latency average = \([0-9.]*\) ms/\1/p' <<<"$out")"
+    tps="$(sed -n 's/^tps = \([0-9.]*\).*/\1/p' <<<"$out" | head -1)"
+    wal="$(sql "SELECT pg_wal_lsn_diff('$lsn_after', '$lsn_before')::bigint")"
+    lost=$(( tx - (count_after - count_before) ))
+
+    printf '%-7s %10s tx %10s tps %9s ms avg %12s WAL bytes %9s B/tx %8s lost increments\n' \
+        "$name" "$tx" "$tps" "$latency" "$wal" "$(( wal / (tx > 0 ? tx : 1) ))" "$lost"
+}
+
+echo "Running $DURATION s per variant with $CLIENTS clients"
+run before "$WORK_DIR/before.sql"
+run after "$WORK_DIR/after.sql"
@@ -4,9 +4,10 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 /**
- * Configuration to enable async processing for webhook handling.
+ * Configuration to enable async processing.
  * This ensures @Async methods run in Spring-managed threads with proper
- * transaction context support.
+ * transaction context support. Inbound WhatsApp webhooks do not use it; they
+ * run on the per-conversation lanes of ConversationLaneDispatcher.
  */
 @Configuration
 @EnableAsync
@@ -8,6 +8,10 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
 @ConfigurationProperties(prefix = "claude")
 @Data
@@ -18,10 +22,24 @@ public class ClaudeConfig {
     private String baseUrl = "https://api.anthropic.com";
     private int maxTokens = 1024;
     private double temperature = 0.7;
+    private PromptCache promptCache = new PromptCache();
+    private Streaming streaming = new Streaming();
+    private Governor governor = new Governor();
+    private History history = new History();
+    private FastPath fastPath = new FastPath();
+    private Routing routing = new Routing();
+    private Usage usage = new Usage();
+    private Credits credits = new Credits();
+    private Catalog catalog = new Catalog();
+    // USD per million tokens, keyed by model ID
+    private Map<String, ModelPricing> pricing = new HashMap<>(Map.of(
+            "claude-sonnet-4-20250514", ModelPricing.of(3.00, 15.00, 3.75, 0.30),
+            "claude-3-5-haiku-20241022", ModelPricing.of(0.80, 4.00, 1.00, 0.08),
+            "claude-3-haiku-20240307", ModelPricing.of(0.25, 1.25, 0.30, 0.03)));
 
     @Bean
-    public WebClient claudeWebClient() {
-        return WebClient.builder()
+    public WebClient claudeWebClient(HttpClientFactory httpClientFactory) {
+        return httpClientFactory.webClientBuilder(HttpClientFactory.Provider.ANTHROPIC)
                 .baseUrl(baseUrl)
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader("x-api-key", apiKey)
@@ -29,4 +47,150 @@ public class ClaudeConfig {
                 .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
                 .build();
     }
+
+    /**
+     * Caching of the static system prompt prefix, locally and via Anthropic's prompt cache.
+     */
+    @Data
+    public static class PromptCache {
+        private boolean enabled = true;
+        private long ttlSeconds = 600;
+    }
+
+    /**
+     * Streaming completions, so actions can run while the reply is still being generated.
+     */
+    @Data
+    public static class Streaming {
+        private boolean enabled = true;
+        private long idleTimeoutSeconds = 30;
+    }
+
+    /**
+     * Adaptive concurrency limit and per-minute budgets for Claude calls. The limit grows by
+     * about one per window of successful calls and is cut by {@code backoffRatio} on 429/529,
+     * at most once per {@code backoffCooldownMs}. Input tokens exclude prompt cache reads.
+     */
+    @Data
+    public static class Governor {
+        private boolean enabled = true;
+        private int initialLimit = 16;
+        private int minLimit = 1;
+        private int maxLimit = 64;
+        private double backoffRatio = 0.5;
+        private long backoffCooldownMs = 1000;
+        private int requestsPerMinute = 1000;
+        private int inputTokensPerMinute = 400000;
+        private long maxWaitMs = 20000;
+    }
+
+    /**
+     * Conversation history sent with each turn. Messages are taken newest first until
+     * {@code tokenBudget} is used; older ones are folded into a rolling summary kept on the
+     * conversation context, refreshed in the background once {@code summarizeAfterMessages}
+     * dropped messages are not yet covered by it.
+     */
+    @Data
+    public static class History {
+        private int maxMessages = 40;
+        private int tokenBudget = 1500;
+        private int maxMessageTokens = 300;
+        private boolean summaryEnabled = true;
+        private int summarizeAfterMessages = 6;
+        private int summaryMaxMessages = 60;
+        private int summaryThreads = 2;
+        private int summaryQueueCapacity = 200;
+    }
+
+    /**
+     * Local answers for trivial turns ("hi", "thanks", "cart", "paid"...). In {@code SHADOW}
+     * every turn still goes to Claude and only agreement is measured; in {@code ON} tenants
+     * with {@code fast_path_enabled} in their sales settings are answered locally.
+     */
+    @Data
+    public static class FastPath {
+        private Mode mode = Mode.SHADOW;
+        private int maxMessageLength = 40;
+
+        public enum Mode {
+            OFF, SHADOW, ON
+        }
+    }
+
+    /**
+     * Per-turn choice between a fast and a strong model. Turns in {@code strongStates}, long
+     * messages, large carts and messages that look like a complaint, negotiation or handoff
+     * go to the strong model; the rest go to the fast one. Tenants can override the models
+     * and states in their agent config. A blank {@code strongModel} means {@code claude.model}.
+     */
+    @Data
+    public static class Routing {
+        private boolean enabled = true;
+        private String fastModel = "claude-3-5-haiku-20241022";
+        private String strongModel;
+        private List<String> strongStates = List.of("adding_to_cart", "confirming_order");
+        private int longMessageChars = 300;
+        private int largeCartItems = 3;
+    }
+
+    /**
+     * Usage accounting. Every Claude call made for a business is buffered and written to
+     * {@code ai_usage} and {@code ai_usage_log} in batches, off the reply path.
+     */
+    @Data
+    public static class Usage {
+        private boolean enabled = true;
+        private int batchSize = 200;
+        private long flushIntervalMs = 1000;
+        private int bufferCapacity = 10000;
+        private long shutdownTimeoutMs = 5000;
+    }
+
+    /**
+     * AI credit enforcement. Each node leases blocks of up to {@code blockSize} credits from
+     * {@code ai_credits} and spends them in memory. Usage is written back every
+     * {@code flushIntervalMs}, which also renews the node's leases for {@code leaseTtlSeconds};
+     * leases idle for {@code idleReleaseSeconds} are returned. Out-of-credit tenants and
+     * tenants without an {@code ai_credits} row are looked up again after {@code recheckSeconds}.
+     */
+    @Data
+    public static class Credits {
+        private boolean enabled = true;
+        private int blockSize = 20;
+        private long flushIntervalMs = 10000;
+        private long leaseTtlSeconds = 300;
+        private long idleReleaseSeconds = 600;
+        private long recheckSeconds = 60;
+        private long reclaimIntervalMs = 60000;
+    }
+
+    /**
+     * Products put in the system prompt. Catalogs of up to {@code fullListMaxProducts} are
+     * listed in full in the cached prefix; larger ones get a category summary there and, per
+     * turn, the {@code topK} products most relevant to the message, the cart and the last
+     * {@code recentMessages} messages.
+     */
+    @Data
+    public static class Catalog {
+        private int fullListMaxProducts = 60;
+        private int topK = 12;
+        private int recentMessages = 4;
+    }
+
+    @Data
+    public static class ModelPricing {
+        private double inputPerMillion;
+        private double outputPerMillion;
+        private double cacheWritePerMillion;
+        private double cacheReadPerMillion;
+
+        public static ModelPricing of(double input, double output, double cacheWrite, double cacheRead) {
+            ModelPricing pricing = new ModelPricing();
+            pricing.setInputPerMillion(input);
+            pricing.setOutputPerMillion(output);
+            pricing.setCacheWritePerMillion(cacheWrite);
+            pricing.setCacheReadPerMillion(cacheRead);
+            return pricing;
+        }
+    }
 }
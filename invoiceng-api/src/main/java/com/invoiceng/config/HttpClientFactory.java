@@ -0,0 +1,126 @@
+package com.invoiceng.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds {@link WebClient}s backed by one Reactor Netty connection pool per external provider.
+ *
+ * Each pool is created once and shared by every client of that provider, so TLS handshakes
+ * are amortized across requests. Pools are sized, time out waiting for a connection instead
+ * of queueing without limit, and publish Micrometer metrics under {@code reactor.netty.*}
+ * tagged with the provider name.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HttpClientFactory {
+
+    public enum Provider {
+        ANTHROPIC("anthropic"),
+        GRAPH_API("graph"),
+        PAYSTACK("paystack"),
+        TERMII("termii");
+
+        private final String value;
+
+        Provider(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    private static final String READ_TIMEOUT_HANDLER = "invoiceng.readTimeout";
+    private static final String WRITE_TIMEOUT_HANDLER = "invoiceng.writeTimeout";
+
+    private final HttpClientsConfig httpClientsConfig;
+
+    private final Map<Provider, ConnectionProvider> connectionProviders = new ConcurrentHashMap<>();
+    private final Map<Provider, HttpClient> httpClients = new ConcurrentHashMap<>();
+
+    /**
+     * A fresh builder for the provider, already wired to its shared connection pool.
+     */
+    public WebClient.Builder webClientBuilder(Provider provider) {
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient(provider)));
+    }
+
+    public HttpClient httpClient(Provider provider) {
+        return httpClients.computeIfAbsent(provider, this::createHttpClient);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionProviders.values().forEach(pool -> pool.disposeLater().block(Duration.ofSeconds(5)));
+    }
+
+    private HttpClient createHttpClient(Provider provider) {
+        HttpClientsConfig.Provider settings = settingsFor(provider);
+        ConnectionProvider pool = connectionProviders.computeIfAbsent(provider, p -> ConnectionProvider.builder(p.getValue())
+                .maxConnections(Math.max(1, settings.getMaxConnections()))
+                .pendingAcquireMaxCount(settings.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(settings.getPendingAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofSeconds(settings.getMaxIdleTimeSeconds()))
+                .maxLifeTime(Duration.ofSeconds(settings.getMaxLifeTimeSeconds()))
+                .evictInBackground(Duration.ofSeconds(settings.getEvictInBackgroundSeconds()))
+                .metrics(settings.isMetrics())
+                .build());
+
+        HttpClient client = HttpClient.create(pool)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.getConnectTimeoutMs())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofMillis(settings.getResponseTimeoutMs()))
+                // Read/write timeouts only while a request is in flight, so they never close an idle pooled connection
+                .doOnRequest((request, connection) -> connection
+                        .addHandlerLast(READ_TIMEOUT_HANDLER, new ReadTimeoutHandler(settings.getReadTimeoutMs(), TimeUnit.MILLISECONDS))
+                        .addHandlerLast(WRITE_TIMEOUT_HANDLER, new WriteTimeoutHandler(settings.getWriteTimeoutMs(), TimeUnit.MILLISECONDS)))
+                .observe((connection, state) -> {
+                    if (state == ConnectionObserver.State.RELEASED) {
+                        connection.removeHandler(READ_TIMEOUT_HANDLER).removeHandler(WRITE_TIMEOUT_HANDLER);
+                    }
+                });
+
+        if (settings.isHttp2()) {
+            // Negotiated over TLS via ALPN; falls back to HTTP/1.1 when the server declines
+            client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        if (settings.isMetrics()) {
+            // One URI tag per provider keeps path parameters (phone number IDs, references) out of the tags
+            client = client.metrics(true, uri -> provider.getValue());
+        }
+
+        log.info("Created HTTP connection pool for {} (max {} connections, http2={})",
+                provider.getValue(), settings.getMaxConnections(), settings.isHttp2());
+        return client;
+    }
+
+    private HttpClientsConfig.Provider settingsFor(Provider provider) {
+        return switch (provider) {
+            case ANTHROPIC -> httpClientsConfig.getAnthropic();
+            case GRAPH_API -> httpClientsConfig.getGraph();
+            case PAYSTACK -> httpClientsConfig.getPaystack();
+            case TERMII -> httpClientsConfig.getTermii();
+        };
+    }
+}
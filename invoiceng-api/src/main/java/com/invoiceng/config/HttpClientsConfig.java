@@ -0,0 +1,44 @@
+package com.invoiceng.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Connection pool and timeout settings for each external HTTP provider.
+ * Every provider gets its own pool so a slow one cannot hold the connections of the others.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "http-clients")
+@Data
+public class HttpClientsConfig {
+
+    private Provider anthropic = Provider.of(32, 120000);
+    private Provider graph = Provider.of(64, 15000);
+    private Provider paystack = Provider.of(16, 15000);
+    private Provider termii = Provider.of(8, 15000);
+
+    @Data
+    public static class Provider {
+        private int maxConnections = 16;
+        private int pendingAcquireMaxCount = 1000;
+        private long pendingAcquireTimeoutMs = 10000;
+        private long maxIdleTimeSeconds = 55;
+        private long maxLifeTimeSeconds = 600;
+        private long evictInBackgroundSeconds = 30;
+        private long connectTimeoutMs = 5000;
+        private long readTimeoutMs = 30000;
+        private long writeTimeoutMs = 10000;
+        private long responseTimeoutMs = 30000;
+        private boolean http2 = false;
+        private boolean metrics = true;
+
+        static Provider of(int maxConnections, long responseTimeoutMs) {
+            Provider provider = new Provider();
+            provider.setMaxConnections(maxConnections);
+            provider.setResponseTimeoutMs(responseTimeoutMs);
+            provider.setReadTimeoutMs(responseTimeoutMs);
+            return provider;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.invoiceng.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "webhook")
+@Data
+public class WebhookConfig {
+
+    private Lanes lanes = new Lanes();
+    private Journal journal = new Journal();
+    private Coalescing coalescing = new Coalescing();
+    private Dedupe dedupe = new Dedupe();
+    private Tenants tenants = new Tenants();
+    private Status status = new Status();
+    private Admission admission = new Admission();
+    private Sessions sessions = new Sessions();
+
+    /**
+     * Single-consumer worker lanes used to process inbound WhatsApp events.
+     * Events for the same conversation always hash to the same lane.
+     */
+    @Data
+    public static class Lanes {
+        private int count = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        private int queueCapacity = 500;
+        private long shutdownTimeoutMs = 10000;
+    }
+
+    /**
+     * Append-only journal that stores raw webhook bodies before they are acknowledged to Meta.
+     */
+    @Data
+    public static class Journal {
+        private boolean enabled = true;
+        private String directory = "./data/webhook-journal";
+        private long segmentSizeBytes = 64L * 1024 * 1024;
+        private long groupCommitLingerMicros = 100;
+        private int maxBatchSize = 256;
+        private long appendTimeoutMs = 5000;
+    }
+
+    /**
+     * Debounce window for merging a customer's rapid-fire messages into one AI turn.
+     */
+    @Data
+    public static class Coalescing {
+        private boolean enabled = true;
+        private long windowMs = 2000;
+        private long maxWaitMs = 6000;
+        private int maxBurstMessages = 10;
+    }
+
+    /**
+     * In-memory filter for WhatsApp message IDs already seen by this node.
+     */
+    @Data
+    public static class Dedupe {
+        private int expectedInsertions = 200000;
+        private double falsePositiveRate = 0.01;
+        private long windowMinutes = 60;
+        private int exactCacheSize = 10000;
+    }
+
+    /**
+     * In-memory routing table from WhatsApp phone number ID to tenant, and per-tenant
+     * product catalog snapshots. Entries are invalidated on tenant and catalog updates;
+     * the TTLs only bound staleness for changes made outside the application.
+     */
+    @Data
+    public static class Tenants {
+        private long ttlSeconds = 300;
+        private long negativeTtlSeconds = 30;
+        private long catalogTtlSeconds = 300;
+    }
+
+    /**
+     * Buffered writer for message status receipts (sent, delivered, read, failed).
+     */
+    @Data
+    public static class Status {
+        private int batchSize = 500;
+        private long flushIntervalMs = 200;
+        private int bufferCapacity = 20000;
+    }
+
+    /**
+     * Bounded in-flight budget for webhook deliveries. Deliveries over budget are deferred
+     * in the journal (spilled) and redriven later, or refused with 503 when they cannot be.
+     */
+    @Data
+    public static class Admission {
+        private int maxInFlight = 200;
+        private int maxInFlightPerTenant = 50;
+        private int maxSpilled = 50000;
+        private long redriveIntervalMs = 500;
+        private int maxRedriveAttempts = 5;
+        private int retryAfterSeconds = 5;
+    }
+
+    /**
+     * Live order contexts (carts) of recent conversations, kept in memory between turns.
+     * Changes are written back at the end of each turn. The sweep every
+     * {@code sweepIntervalMs} writes back any changes left pending. It also evicts sessions
+     * idle for {@code idleSeconds} and the least recently used ones over {@code maxSessions}.
+     */
+    @Data
+    public static class Sessions {
+        private boolean enabled = true;
+        private int maxSessions = 10000;
+        private long idleSeconds = 1800;
+        private long sweepIntervalMs = 5000;
+    }
+}
@@ -13,6 +13,9 @@ public class WhatsAppConfig {
     private String verifyToken;
     private String phoneNumberId;
     private String baseUrl = "https://graph.facebook.com";
+    private Outbound outbound = new Outbound();
+    private Outbox outbox = new Outbox();
+    private ReadReceipts readReceipts = new ReadReceipts();
 
     public String getMessagesUrl(String phoneNumberId) {
         return String.format("%s/%s/%s/messages", baseUrl, apiVersion, phoneNumberId);
@@ -21,4 +24,44 @@ public class WhatsAppConfig {
     public String getMediaUrl(String mediaId) {
         return String.format("%s/%s/%s", baseUrl, apiVersion, mediaId);
     }
+
+    /**
+     * Outbound send pipeline: per phone number throughput, concurrency and retry policy.
+     */
+    @Data
+    public static class Outbound {
+        private double messagesPerSecond = 80;
+        private int burst = 80;
+        private long maxRateLimitWaitMs = 30000;
+        private int maxConcurrency = 64;
+        private int queueCapacity = 10000;
+        private int maxRetries = 3;
+        private long retryMinBackoffMs = 250;
+        private long retryMaxBackoffMs = 5000;
+    }
+
+    /**
+     * Outbox dispatcher: claiming, leases and redelivery of queued outbound messages.
+     */
+    @Data
+    public static class Outbox {
+        private boolean enabled = true;
+        private int batchSize = 100;
+        private long pollIntervalMs = 500;
+        private long leaseSeconds = 120;
+        private long sendTimeoutMs = 30000;
+        private int maxAttempts = 8;
+        private long retryBaseDelayMs = 2000;
+        private long retryMaxDelayMs = 300000;
+        private int retentionDays = 7;
+    }
+
+    /**
+     * Read receipt coalescing: one receipt per conversation per flush window.
+     */
+    @Data
+    public static class ReadReceipts {
+        private long flushIntervalMs = 1000;
+        private int maxPending = 50000;
+    }
 }
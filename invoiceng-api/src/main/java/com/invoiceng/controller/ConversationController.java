@@ -4,7 +4,6 @@ import com.invoiceng.dto.response.ApiResponse;
 import com.invoiceng.dto.response.ConversationMessageResponse;
 import com.invoiceng.dto.response.ConversationResponse;
 import com.invoiceng.dto.response.PaginatedResponse;
-import com.invoiceng.dto.whatsapp.WhatsAppSendResponse;
 import com.invoiceng.entity.Conversation;
 import com.invoiceng.entity.ConversationMessage;
 import com.invoiceng.entity.User;
@@ -123,33 +122,17 @@ public class ConversationController {
         User business = userRepository.findById(currentUser.getId())
                 .orElseThrow(() -> new ResourceNotFoundException("User", "id", currentUser.getId()));
 
-        // Send via WhatsApp
+        // Save and queue in one transaction; the outbox sends it and records the WhatsApp message ID
         String phoneNumberId = whatsAppService.getPhoneNumberId(business);
-        String accessToken = whatsAppService.getAccessToken(business);
-        WhatsAppSendResponse sendResponse = whatsAppService.sendTextMessage(
+        ConversationMessage message = conversationService.queueOutboundText(
+                conversation,
                 phoneNumberId,
-                accessToken,
-                conversation.getCustomerPhone(),
                 request.content()
         );
 
-        // Extract message ID from response
-        String whatsappMessageId = null;
-        if (sendResponse != null && sendResponse.getMessages() != null && !sendResponse.getMessages().isEmpty()) {
-            whatsappMessageId = sendResponse.getMessages().get(0).getId();
-        }
-
-        // Save the message
-        ConversationMessage message = conversationService.saveOutboundMessage(
-                conversation,
-                request.content(),
-                "text",
-                whatsappMessageId
-        );
-
         return ResponseEntity.ok(ApiResponse.success(
                 ConversationMessageResponse.fromEntity(message),
-                "Message sent successfully"
+                "Message queued for delivery"
         ));
     }
 
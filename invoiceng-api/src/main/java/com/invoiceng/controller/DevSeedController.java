@@ -3,8 +3,11 @@ package com.invoiceng.controller;
 import com.invoiceng.dto.response.ApiResponse;
 import com.invoiceng.entity.*;
 import com.invoiceng.repository.*;
+import com.invoiceng.service.tenant.CatalogChangedEvent;
+import com.invoiceng.service.tenant.TenantChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -33,6 +36,7 @@ public class DevSeedController {
     private final ConversationMessageRepository messageRepository;
     private final AgentConfigRepository agentConfigRepository;
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
     @GetMapping("/users")
     public ResponseEntity<ApiResponse<List<Map<String, Object>>>> listAllUsers() {
@@ -204,6 +208,7 @@ public class DevSeedController {
         products.add(draft);
 
         productRepository.saveAll(products);
+        eventPublisher.publishEvent(new CatalogChangedEvent(user.getId()));
         return products.size();
     }
 
@@ -235,6 +240,7 @@ public class DevSeedController {
                 .build();
 
         agentConfigRepository.save(config);
+        eventPublisher.publishEvent(new TenantChangedEvent(user.getId()));
     }
 
     private int seedConversations(User user) {
@@ -356,9 +362,8 @@ public class DevSeedController {
 
         messageRepository.saveAll(msgList);
 
-        conversation.setMessageCount(messages.size());
-        conversation.setLastMessageAt(LocalDateTime.now().minusMinutes(new Random().nextInt(60)));
-        conversationRepository.save(conversation);
+        conversationRepository.recordMessages(conversation.getId(), messages.size(),
+                LocalDateTime.now().minusMinutes(new Random().nextInt(60)));
     }
 
     private int seedOrders(User user) {
@@ -497,6 +502,7 @@ public class DevSeedController {
         user.setWhatsappConnected(true);
         user.setWhatsappConnectedAt(LocalDateTime.now().minusDays(30));
         userRepository.save(user);
+        eventPublisher.publishEvent(new TenantChangedEvent(user.getId()));
     }
 
     @PostMapping("/link-whatsapp")
@@ -516,6 +522,7 @@ public class DevSeedController {
         user.setWhatsappConnected(true);
         user.setWhatsappConnectedAt(LocalDateTime.now());
         userRepository.save(user);
+        eventPublisher.publishEvent(new TenantChangedEvent(user.getId()));
 
         Map<String, Object> result = new HashMap<>();
         result.put("userId", user.getId().toString());
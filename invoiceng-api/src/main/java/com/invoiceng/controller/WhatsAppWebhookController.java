@@ -1,15 +1,26 @@
 package com.invoiceng.controller;
 
+import com.invoiceng.config.WebhookConfig;
 import com.invoiceng.config.WhatsAppConfig;
-import com.invoiceng.dto.whatsapp.WhatsAppWebhookPayload;
+import com.invoiceng.exception.WebhookJournalException;
 import com.invoiceng.service.WebhookProcessingService;
+import com.invoiceng.service.webhook.WebhookAdmissionGate;
+import com.invoiceng.service.webhook.WebhookCompletion;
+import com.invoiceng.service.webhook.WebhookEventParser;
+import com.invoiceng.service.webhook.WebhookEvents;
+import com.invoiceng.service.webhook.WebhookJournal;
+import com.invoiceng.service.webhook.WebhookSpillRedriver;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+
 @RestController
 @RequestMapping("/api/v1/webhooks/whatsapp")
 @RequiredArgsConstructor
@@ -19,6 +30,11 @@ public class WhatsAppWebhookController {
 
     private final WhatsAppConfig whatsAppConfig;
     private final WebhookProcessingService webhookProcessingService;
+    private final WebhookJournal webhookJournal;
+    private final WebhookAdmissionGate admissionGate;
+    private final WebhookSpillRedriver spillRedriver;
+    private final WebhookConfig webhookConfig;
+    private final WebhookEventParser webhookEventParser;
 
     /**
      * Webhook verification (GET) - Meta sends this to verify webhook
@@ -42,18 +58,80 @@ public class WhatsAppWebhookController {
     }
 
     /**
-     * Webhook events (POST) - Receives all WhatsApp events
+     * Webhook events (POST) - Receives all WhatsApp events.
+     * Only inbound messages and status receipts are extracted; deliveries without any are
+     * acknowledged straight away. The raw body is written to the webhook journal before 200 is returned, so a restart
+     * during processing replays the delivery instead of losing it. Deliveries over the
+     * in-flight budget are left in the journal and processed later, or refused with 503
+     * when that is not possible so Meta retries. A delivery the journal fails to store is
+     * refused with 503 as well.
      */
     @PostMapping
     @Operation(summary = "Handle webhook", description = "Endpoint for receiving WhatsApp webhook events")
-    public ResponseEntity<Void> handleWebhook(@RequestBody WhatsAppWebhookPayload payload) {
-        log.debug("Received WhatsApp webhook: {}", payload);
+    public ResponseEntity<Void> handleWebhook(@RequestBody byte[] body) {
+        WebhookEvents events;
+        try {
+            events = webhookEventParser.parse(body);
+        } catch (IOException e) {
+            log.warn("Rejected malformed WhatsApp webhook: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        log.debug("Received WhatsApp webhook with {} messages and {} statuses",
+                events.getMessages().size(), events.getStatuses().size());
+        if (events.isEmpty()) {
+            return ResponseEntity.ok().build();
+        }
+
+        String tenantKey = events.getTenantKey();
+        WebhookAdmissionGate.Permit permit = admissionGate.tryAcquire(tenantKey);
+
+        WebhookCompletion completion;
+        if (webhookJournal.isEnabled()) {
+            if (permit == null && !admissionGate.hasSpillCapacity()) {
+                return serviceUnavailable(tenantKey);
+            }
+
+            long seq;
+            try {
+                seq = webhookJournal.append(body);
+            } catch (WebhookJournalException e) {
+                // Not durable: let Meta retry rather than acknowledge something we may lose
+                log.error("Failed to journal WhatsApp webhook: {}", e.getMessage());
+                if (permit != null) {
+                    permit.release();
+                }
+                return retryLater();
+            }
 
-        // Always return 200 quickly to acknowledge receipt
-        // Process asynchronously using Spring's @Async with proper transaction management
-        webhookProcessingService.processWebhookAsync(payload, whatsAppConfig.getPhoneNumberId());
+            if (permit == null) {
+                // Durable but over budget: process once permits free up
+                admissionGate.spill(seq, tenantKey, 0);
+                return ResponseEntity.ok().build();
+            }
+            completion = spillRedriver.completionFor(seq, tenantKey, 0, permit);
+        } else {
+            if (permit == null) {
+                return serviceUnavailable(tenantKey);
+            }
+            completion = new WebhookCompletion(permit::release, permit::release);
+        }
+
+        // Queue on the per-conversation lanes; processing happens off the request thread
+        webhookProcessingService.processEventsAsync(events, whatsAppConfig.getPhoneNumberId(), completion);
 
         return ResponseEntity.ok().build();
     }
 
+    private ResponseEntity<Void> serviceUnavailable(String tenantKey) {
+        admissionGate.recordRejected();
+        log.warn("Webhook admission saturated, asking Meta to retry delivery for {}", tenantKey);
+        return retryLater();
+    }
+
+    private ResponseEntity<Void> retryLater() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(webhookConfig.getAdmission().getRetryAfterSeconds()))
+                .build();
+    }
+
 }
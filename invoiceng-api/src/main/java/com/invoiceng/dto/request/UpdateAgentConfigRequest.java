@@ -43,4 +43,6 @@ public class UpdateAgentConfigRequest {
 
     @Size(max = 100, message = "Dispatch time must be less than 100 characters")
     private String dispatchTime;
+
+    private Map<String, Object> modelRouting;
 }
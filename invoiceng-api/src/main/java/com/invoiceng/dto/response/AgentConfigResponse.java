@@ -32,6 +32,7 @@ public class AgentConfigResponse {
     private List<Map<String, Object>> deliveryAreas;
     private BigDecimal defaultDeliveryFee;
     private String dispatchTime;
+    private Map<String, Object> modelRouting;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -51,6 +52,7 @@ public class AgentConfigResponse {
                 .deliveryAreas(config.getDeliveryAreas())
                 .defaultDeliveryFee(config.getDefaultDeliveryFee())
                 .dispatchTime(config.getDispatchTime())
+                .modelRouting(config.getModelRouting())
                 .createdAt(config.getCreatedAt())
                 .updatedAt(config.getUpdatedAt())
                 .build();
@@ -38,6 +38,17 @@ public class WhatsAppSendRequest {
     // Template message
     private TemplateContent template;
 
+    public static WhatsAppSendRequest textMessage(String to, String body) {
+        return WhatsAppSendRequest.builder()
+                .to(to)
+                .type("text")
+                .text(TextContent.builder()
+                        .body(body)
+                        .previewUrl(true)
+                        .build())
+                .build();
+    }
+
     @Data
     @Builder
     @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -162,6 +162,15 @@ public class WhatsAppWebhookPayload {
         private String timestamp;
         private Conversation conversation;
         private Pricing pricing;
+        private List<StatusError> errors;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class StatusError {
+        private Integer code;
+        private String title;
+        private String message;
     }
 
     @Data
@@ -89,6 +89,11 @@ public class AgentConfig {
     @Builder.Default
     private String dispatchTime = "24-48 hours";
 
+    // Overrides for the Claude model router, see ModelRouter
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "model_routing", columnDefinition = "jsonb")
+    private Map<String, Object> modelRouting;
+
     @Column(name = "created_at")
     @Builder.Default
     private LocalDateTime createdAt = LocalDateTime.now();
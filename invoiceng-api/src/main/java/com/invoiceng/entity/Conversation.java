@@ -41,23 +41,32 @@ public class Conversation {
     @Builder.Default
     private String state = "greeting";
 
+    // Written only through targeted jsonb merges (ConversationRepository.mergeContext and
+    // mergeHistorySummary), so saving a stale copy cannot drop keys written by another thread
     @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "context", columnDefinition = "jsonb")
+    @Column(name = "context", columnDefinition = "jsonb", updatable = false)
     @Builder.Default
     private Map<String, Object> context = Map.of();
 
+    // Written only through ConversationRepository.writeCart, which also bumps cartVersion
     @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "cart", columnDefinition = "jsonb")
+    @Column(name = "cart", columnDefinition = "jsonb", updatable = false)
     private String cart;
 
+    @Column(name = "cart_version", updatable = false)
+    @Builder.Default
+    private Long cartVersion = 0L;
+
     @Column(name = "is_active")
     @Builder.Default
     private Boolean isActive = true;
 
-    @Column(name = "last_message_at")
+    // Counters are written only through ConversationRepository.recordMessages, so saves of a
+    // stale copy of the conversation cannot undo increments made by another thread
+    @Column(name = "last_message_at", updatable = false)
     private LocalDateTime lastMessageAt;
 
-    @Column(name = "message_count")
+    @Column(name = "message_count", updatable = false)
     @Builder.Default
     private Integer messageCount = 0;
 
@@ -90,6 +99,10 @@ public class Conversation {
         this.updatedAt = LocalDateTime.now();
     }
 
+    /**
+     * Count a message on this copy of the conversation. Does not write the counters; see
+     * {@code ConversationRepository.recordMessages}.
+     */
     public void incrementMessageCount() {
         this.messageCount = (this.messageCount == null ? 0 : this.messageCount) + 1;
         this.lastMessageAt = LocalDateTime.now();
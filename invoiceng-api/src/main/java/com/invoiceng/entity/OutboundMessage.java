@@ -0,0 +1,74 @@
+package com.invoiceng.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Outbox row for one WhatsApp message waiting to be sent. Only inserted through JPA;
+ * claiming and state changes are done by {@code OutboundMessageDispatcher} in SQL.
+ */
+@Entity
+@Table(name = "outbound_messages")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboundMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "business_id")
+    private UUID businessId;
+
+    @Column(name = "conversation_message_id")
+    private UUID conversationMessageId;
+
+    @Column(name = "phone_number_id", nullable = false, length = 100)
+    private String phoneNumberId;
+
+    @Column(name = "recipient_phone", nullable = false, length = 20)
+    private String recipientPhone;
+
+    @Column(name = "message_type", nullable = false, length = 20)
+    private String messageType;
+
+    // WhatsAppSendRequest as JSON, sent to the Graph API as-is
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "payload", nullable = false, columnDefinition = "jsonb")
+    private Map<String, Object> payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    @Builder.Default
+    private OutboundMessageStatus status = OutboundMessageStatus.PENDING;
+
+    @Column(name = "attempts")
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at")
+    @Builder.Default
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+
+    @Column(name = "whatsapp_message_id", length = 100)
+    private String whatsappMessageId;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at")
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
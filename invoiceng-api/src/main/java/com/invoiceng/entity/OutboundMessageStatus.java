@@ -0,0 +1,18 @@
+package com.invoiceng.entity;
+
+public enum OutboundMessageStatus {
+    PENDING("pending"),
+    SENDING("sending"),
+    SENT("sent"),
+    FAILED("failed");
+
+    private final String value;
+
+    OutboundMessageStatus(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
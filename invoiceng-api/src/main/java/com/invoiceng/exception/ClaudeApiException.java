@@ -0,0 +1,47 @@
+package com.invoiceng.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Failed Claude API call. Carries the HTTP status (0 when the call never reached the API)
+ * and the {@code Retry-After} hint, if Anthropic sent one.
+ */
+@Getter
+public class ClaudeApiException extends RuntimeException {
+
+    private static final int STATUS_OVERLOADED = 529;
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public ClaudeApiException(String message) {
+        this(message, 0, null);
+    }
+
+    public ClaudeApiException(String message, int statusCode, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Whether Anthropic refused the call for capacity reasons (429 rate limited or 529 overloaded).
+     */
+    public boolean isThrottled() {
+        return statusCode == 429 || statusCode == STATUS_OVERLOADED;
+    }
+
+    /**
+     * Status equivalent of an {@code error} event on a stream, which arrives after a 200.
+     */
+    public static int statusForErrorType(String errorType) {
+        return switch (errorType == null ? "" : errorType) {
+            case "rate_limit_error" -> 429;
+            case "overloaded_error" -> STATUS_OVERLOADED;
+            case "api_error" -> 500;
+            default -> 0;
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package com.invoiceng.exception;
+
+public class WebhookJournalException extends RuntimeException {
+
+    public WebhookJournalException(String message) {
+        super(message);
+    }
+
+    public WebhookJournalException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
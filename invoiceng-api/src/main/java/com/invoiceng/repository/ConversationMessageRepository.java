@@ -3,6 +3,7 @@ package com.invoiceng.repository;
 import com.invoiceng.entity.ConversationMessage;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -23,9 +24,40 @@ public interface ConversationMessageRepository extends JpaRepository<Conversatio
 
     boolean existsByWhatsappMessageId(String whatsappMessageId);
 
+    /**
+     * Insert an inbound message unless its WhatsApp message ID is already stored.
+     * Relies on the partial unique index on whatsapp_message_id.
+     *
+     * @return 1 if the row was inserted, 0 if it was a duplicate
+     */
+    @Modifying
+    @Query(value = "INSERT INTO conversation_messages " +
+            "(id, conversation_id, direction, message_type, content, media_url, whatsapp_message_id, created_at) " +
+            "VALUES (:id, :conversationId, 'inbound', :messageType, :content, :mediaUrl, :whatsappMessageId, :createdAt) " +
+            "ON CONFLICT (whatsapp_message_id) WHERE whatsapp_message_id IS NOT NULL DO NOTHING",
+            nativeQuery = true)
+    int insertInboundIfAbsent(
+            @Param("id") UUID id,
+            @Param("conversationId") UUID conversationId,
+            @Param("messageType") String messageType,
+            @Param("content") String content,
+            @Param("mediaUrl") String mediaUrl,
+            @Param("whatsappMessageId") String whatsappMessageId,
+            @Param("createdAt") LocalDateTime createdAt
+    );
+
     @Query("SELECT cm FROM ConversationMessage cm WHERE cm.conversation.id = :conversationId ORDER BY cm.createdAt DESC")
     List<ConversationMessage> findRecentMessages(@Param("conversationId") UUID conversationId, Pageable pageable);
 
+    @Query("SELECT cm FROM ConversationMessage cm WHERE cm.conversation.id = :conversationId " +
+           "AND cm.createdAt > :after AND cm.createdAt <= :upTo ORDER BY cm.createdAt ASC")
+    List<ConversationMessage> findMessagesBetween(
+            @Param("conversationId") UUID conversationId,
+            @Param("after") LocalDateTime after,
+            @Param("upTo") LocalDateTime upTo,
+            Pageable pageable
+    );
+
     @Query("SELECT COUNT(cm) FROM ConversationMessage cm WHERE cm.conversation.business.id = :businessId AND cm.direction = :direction AND cm.createdAt >= :since")
     long countByBusinessIdAndDirectionSince(
             @Param("businessId") UUID businessId,
@@ -4,9 +4,11 @@ import com.invoiceng.entity.Conversation;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -64,4 +66,71 @@ public interface ConversationRepository extends JpaRepository<Conversation, UUID
            "FROM conversations WHERE business_id = :businessId " +
            "AND created_at >= :since GROUP BY DATE(created_at) ORDER BY date", nativeQuery = true)
     List<Object[]> getConversationsByDay(@Param("businessId") UUID businessId, @Param("since") LocalDateTime since);
+
+    /**
+     * Merge keys into the conversation context in place, leaving the other keys as stored.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE conversations SET context = COALESCE(context, '{}'::jsonb) || CAST(:context AS jsonb), " +
+           "updated_at = CURRENT_TIMESTAMP " +
+           "WHERE id = :conversationId",
+           nativeQuery = true)
+    int mergeContext(
+            @Param("conversationId") UUID conversationId,
+            @Param("context") String context
+    );
+
+    /**
+     * Merge a rolling history summary into the conversation context without touching other keys.
+     * Ignored if the stored summary already covers messages up to {@code through} or later.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE conversations SET context = COALESCE(context, '{}'::jsonb) " +
+           "|| jsonb_build_object('historySummary', CAST(:summary AS text), 'historySummaryThrough', CAST(:through AS text)) " +
+           "WHERE id = :conversationId " +
+           "AND (context->>'historySummaryThrough' IS NULL " +
+           "OR CAST(context->>'historySummaryThrough' AS timestamp) < CAST(:through AS timestamp))",
+           nativeQuery = true)
+    int mergeHistorySummary(
+            @Param("conversationId") UUID conversationId,
+            @Param("summary") String summary,
+            @Param("through") String through
+    );
+
+    /**
+     * Write the cart and state if the stored cart is still at {@code version}, and move it
+     * to {@code version + 1}. Returns 0 if another writer got there first.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE conversations SET cart = CAST(:cart AS jsonb), state = :state, " +
+           "cart_version = :version + 1, updated_at = CURRENT_TIMESTAMP " +
+           "WHERE id = :conversationId AND cart_version = :version",
+           nativeQuery = true)
+    int writeCart(
+            @Param("conversationId") UUID conversationId,
+            @Param("cart") String cart,
+            @Param("state") String state,
+            @Param("version") long version
+    );
+
+    /**
+     * Add {@code count} messages to the conversation's counters in place. Concurrent calls
+     * all count, and only these columns are written, not the whole row with its jsonb.
+     * {@code last_message_at} never moves backwards.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE conversations SET message_count = COALESCE(message_count, 0) + :count, " +
+           "last_message_at = GREATEST(COALESCE(last_message_at, CAST(:at AS timestamp)), CAST(:at AS timestamp)), " +
+           "updated_at = CURRENT_TIMESTAMP " +
+           "WHERE id = :conversationId",
+           nativeQuery = true)
+    int recordMessages(
+            @Param("conversationId") UUID conversationId,
+            @Param("count") int count,
+            @Param("at") LocalDateTime at
+    );
 }
@@ -0,0 +1,11 @@
+package com.invoiceng.repository;
+
+import com.invoiceng.entity.OutboundMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface OutboundMessageRepository extends JpaRepository<OutboundMessage, UUID> {
+}
@@ -6,8 +6,10 @@ import com.invoiceng.entity.AgentConfig;
 import com.invoiceng.entity.User;
 import com.invoiceng.repository.AgentConfigRepository;
 import com.invoiceng.repository.UserRepository;
+import com.invoiceng.service.tenant.TenantChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,6 +23,7 @@ public class AgentConfigService {
 
     private final AgentConfigRepository agentConfigRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public AgentConfigResponse getAgentConfig(UUID businessId) {
         AgentConfig config = agentConfigRepository.findByBusinessId(businessId)
@@ -82,8 +85,12 @@ public class AgentConfigService {
         if (request.getDispatchTime() != null) {
             config.setDispatchTime(request.getDispatchTime());
         }
+        if (request.getModelRouting() != null) {
+            config.setModelRouting(request.getModelRouting());
+        }
 
         config = agentConfigRepository.save(config);
+        eventPublisher.publishEvent(new TenantChangedEvent(businessId));
         log.info("Updated agent config for business {}", businessId);
 
         return AgentConfigResponse.fromEntity(config);
@@ -94,6 +101,7 @@ public class AgentConfigService {
         agentConfigRepository.findByBusinessId(businessId)
                 .ifPresent(config -> {
                     agentConfigRepository.delete(config);
+                    eventPublisher.publishEvent(new TenantChangedEvent(businessId));
                     log.info("Deleted agent config for business {}", businessId);
                 });
     }
@@ -112,6 +120,7 @@ public class AgentConfigService {
                 .build();
 
         config = agentConfigRepository.save(config);
+        eventPublisher.publishEvent(new TenantChangedEvent(businessId));
         log.info("Created default agent config for business {}", businessId);
 
         return config;
@@ -1,11 +1,16 @@
 package com.invoiceng.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.invoiceng.dto.whatsapp.WhatsAppWebhookPayload;
 import com.invoiceng.entity.Conversation;
 import com.invoiceng.entity.ConversationMessage;
 import com.invoiceng.entity.User;
 import com.invoiceng.repository.ConversationMessageRepository;
 import com.invoiceng.repository.ConversationRepository;
+import com.invoiceng.repository.UserRepository;
+import com.invoiceng.service.outbound.WhatsAppOutbox;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -21,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -30,13 +36,24 @@ public class ConversationService {
 
     private final ConversationRepository conversationRepository;
     private final ConversationMessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final WhatsAppOutbox whatsAppOutbox;
+    private final ObjectMapper objectMapper;
 
     /**
      * Get or create a conversation for a customer with a business
      */
     @Transactional
     public Conversation getOrCreateConversation(User business, String customerPhone, String customerName, String customerWhatsappId) {
-        Optional<Conversation> existing = conversationRepository.findByBusinessIdAndCustomerPhone(business.getId(), customerPhone);
+        return getOrCreateConversation(business.getId(), customerPhone, customerName, customerWhatsappId);
+    }
+
+    /**
+     * Get or create a conversation for a customer with a business, without loading the business
+     */
+    @Transactional
+    public Conversation getOrCreateConversation(UUID businessId, String customerPhone, String customerName, String customerWhatsappId) {
+        Optional<Conversation> existing = conversationRepository.findByBusinessIdAndCustomerPhone(businessId, customerPhone);
 
         if (existing.isPresent()) {
             Conversation conversation = existing.get();
@@ -57,7 +74,7 @@ public class ConversationService {
 
         // Create new conversation
         Conversation conversation = Conversation.builder()
-                .business(business)
+                .business(userRepository.getReferenceById(businessId))
                 .customerPhone(customerPhone)
                 .customerName(customerName)
                 .customerWhatsappId(customerWhatsappId)
@@ -68,7 +85,7 @@ public class ConversationService {
                 .build();
 
         conversation = conversationRepository.save(conversation);
-        log.info("Created new conversation {} for business {} with customer {}", conversation.getId(), business.getId(), customerPhone);
+        log.info("Created new conversation {} for business {} with customer {}", conversation.getId(), businessId, customerPhone);
 
         return conversation;
     }
@@ -78,12 +95,6 @@ public class ConversationService {
      */
     @Transactional
     public ConversationMessage saveInboundMessage(Conversation conversation, WhatsAppWebhookPayload.Message message) {
-        // Check for duplicate
-        if (message.getId() != null && messageRepository.existsByWhatsappMessageId(message.getId())) {
-            log.debug("Skipping duplicate message: {}", message.getId());
-            return null;
-        }
-
         String content = extractMessageContent(message);
         String messageType = message.getType() != null ? message.getType() : "text";
 
@@ -103,11 +114,25 @@ public class ConversationService {
             conversationMessage.setMediaUrl(message.getDocument().getId());
         }
 
-        conversationMessage = messageRepository.save(conversationMessage);
+        // Insert-on-conflict is the authoritative duplicate check for Meta's webhook retries
+        conversationMessage.setId(UUID.randomUUID());
+        int inserted = messageRepository.insertInboundIfAbsent(
+                conversationMessage.getId(),
+                conversation.getId(),
+                conversationMessage.getMessageType(),
+                conversationMessage.getContent(),
+                conversationMessage.getMediaUrl(),
+                conversationMessage.getWhatsappMessageId(),
+                conversationMessage.getCreatedAt()
+        );
+        if (inserted == 0) {
+            log.debug("Skipping duplicate message: {}", message.getId());
+            return null;
+        }
 
-        // Update conversation
+        // Update conversation counters only, not the whole row
         conversation.incrementMessageCount();
-        conversationRepository.save(conversation);
+        conversationRepository.recordMessages(conversation.getId(), 1, conversation.getLastMessageAt());
 
         log.debug("Saved inbound message {} for conversation {}", conversationMessage.getId(), conversation.getId());
 
@@ -128,15 +153,27 @@ public class ConversationService {
 
         message = messageRepository.save(message);
 
-        // Update conversation
+        // Update conversation counters only, not the whole row
         conversation.incrementMessageCount();
-        conversationRepository.save(conversation);
+        conversationRepository.recordMessages(conversation.getId(), 1, conversation.getLastMessageAt());
 
         log.debug("Saved outbound message {} for conversation {}", message.getId(), conversation.getId());
 
         return message;
     }
 
+    /**
+     * Save an outbound text message and queue it for sending in the same transaction.
+     * The WhatsApp message ID is filled in by the outbox dispatcher once the send is accepted.
+     */
+    @Transactional
+    public ConversationMessage queueOutboundText(Conversation conversation, String phoneNumberId, String content) {
+        ConversationMessage message = saveOutboundMessage(conversation, content, "text", null);
+        whatsAppOutbox.enqueueText(conversation.getBusiness().getId(), phoneNumberId,
+                conversation.getCustomerPhone(), content, message.getId());
+        return message;
+    }
+
     /**
      * Check if a message has already been processed
      */
@@ -157,7 +194,8 @@ public class ConversationService {
     }
 
     /**
-     * Update conversation state and context
+     * Update conversation state and context. Context keys are merged into the stored context
+     * in place, so keys written elsewhere (such as the history summary) are kept.
      */
     @Transactional
     public Conversation updateStateAndContext(UUID conversationId, String newState, Map<String, Object> context) {
@@ -165,16 +203,21 @@ public class ConversationService {
                 .orElseThrow(() -> new RuntimeException("Conversation not found: " + conversationId));
 
         conversation.setState(newState);
-        if (context != null) {
-            Map<String, Object> existingContext = conversation.getContext();
-            if (existingContext == null) {
-                existingContext = new HashMap<>();
+        conversation = conversationRepository.save(conversation);
+
+        if (context != null && !context.isEmpty()) {
+            try {
+                conversationRepository.mergeContext(conversationId, objectMapper.writeValueAsString(context));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Failed to save conversation context", e);
             }
-            existingContext.putAll(context);
-            conversation.setContext(existingContext);
+            Map<String, Object> merged = conversation.getContext() != null
+                    ? new HashMap<>(conversation.getContext()) : new HashMap<>();
+            merged.putAll(context);
+            conversation.setContext(merged);
         }
 
-        return conversationRepository.save(conversation);
+        return conversation;
     }
 
     /**
@@ -201,6 +244,24 @@ public class ConversationService {
         return reversed;
     }
 
+    /**
+     * Split the recent history into the inbound messages the customer sent since our last reply
+     * (the burst to answer) and the earlier history used as context.
+     */
+    public InboundBurst getUnansweredBurst(UUID conversationId, int historyLimit, int maxBurstMessages) {
+        List<ConversationMessage> recent = getRecentMessages(conversationId, historyLimit + maxBurstMessages);
+
+        int burstStart = recent.size();
+        while (burstStart > 0 && recent.get(burstStart - 1).isInbound()
+                && recent.size() - burstStart < maxBurstMessages) {
+            burstStart--;
+        }
+
+        List<ConversationMessage> history = recent.subList(Math.max(0, burstStart - historyLimit), burstStart);
+        List<ConversationMessage> burst = recent.subList(burstStart, recent.size());
+        return new InboundBurst(List.copyOf(history), List.copyOf(burst));
+    }
+
     /**
      * Get all messages for a conversation
      */
@@ -304,4 +365,28 @@ public class ConversationService {
 
         return "[Interactive]";
     }
+
+    /**
+     * Inbound messages awaiting a reply, plus the history that precedes them
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class InboundBurst {
+        private final List<ConversationMessage> history;
+        private final List<ConversationMessage> messages;
+
+        public boolean isEmpty() {
+            return messages.isEmpty();
+        }
+
+        /**
+         * The burst as a single customer turn, one message per line
+         */
+        public String getMergedContent() {
+            return messages.stream()
+                    .map(ConversationMessage::getContent)
+                    .filter(content -> content != null && !content.isBlank())
+                    .collect(Collectors.joining("\n"));
+        }
+    }
 }
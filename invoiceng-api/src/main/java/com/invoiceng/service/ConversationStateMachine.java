@@ -1,11 +1,14 @@
 package com.invoiceng.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.invoiceng.dto.CartItem;
 import com.invoiceng.dto.OrderContext;
 import com.invoiceng.entity.*;
 import com.invoiceng.repository.ConversationRepository;
 import com.invoiceng.repository.ProductRepository;
+import com.invoiceng.service.tenant.CatalogProduct;
+import com.invoiceng.service.tenant.CatalogSnapshot;
+import com.invoiceng.service.tenant.ProductCatalog;
+import com.invoiceng.service.tenant.TenantDirectory;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -27,39 +30,42 @@ public class ConversationStateMachine {
 
     private final ConversationRepository conversationRepository;
     private final ProductRepository productRepository;
-    private final AgentConfigService agentConfigService;
-    private final ObjectMapper objectMapper;
+    private final TenantDirectory tenantDirectory;
+    private final ProductCatalog productCatalog;
+    private final OrderSessionCache orderSessions;
 
     /**
-     * Get the current order context from conversation
+     * Get the current order context from conversation. This is the conversation's live
+     * context, shared by the turns of the conversation; changes are kept once saved or
+     * committed.
      */
     public OrderContext getOrderContext(Conversation conversation) {
-        try {
-            String cart = conversation.getCart();
-            if (cart == null || cart.isBlank()) {
-                return new OrderContext();
-            }
-            // Parse JSON string to OrderContext
-            return objectMapper.readValue(cart, OrderContext.class);
-        } catch (Exception e) {
-            log.warn("Failed to parse order context, returning new one: {}", e.getMessage());
-            return new OrderContext();
-        }
+        return orderSessions.get(conversation);
     }
 
     /**
-     * Save order context to conversation
+     * Save order context to conversation, writing it and the conversation straight away
      */
     @Transactional
     public Conversation saveOrderContext(Conversation conversation, OrderContext context) {
-        try {
-            // Serialize OrderContext to JSON string for storage
-            conversation.setCart(objectMapper.writeValueAsString(context));
-            return conversationRepository.save(conversation);
-        } catch (Exception e) {
-            log.error("Failed to save order context: {}", e.getMessage());
-            throw new RuntimeException("Failed to save order context", e);
-        }
+        orderSessions.stage(conversation, context);
+        orderSessions.flush(conversation);
+        return conversationRepository.save(conversation);
+    }
+
+    /**
+     * Write the cart and state changes of the turn that just ended.
+     */
+    public void flushOrderContext(Conversation conversation) {
+        orderSessions.flush(conversation);
+    }
+
+    /**
+     * Drop changes made to the live order context that were never committed, e.g. by a turn
+     * that failed halfway, and return the last committed context.
+     */
+    public OrderContext resetOrderContext(Conversation conversation) {
+        return orderSessions.reset(conversation);
     }
 
     /**
@@ -67,15 +73,6 @@ public class ConversationStateMachine {
      */
     @Transactional
     public CartOperationResult addToCart(Conversation conversation, UUID productId, int quantity) {
-        ConversationState currentState = ConversationState.fromValue(conversation.getState());
-
-        if (!currentState.canAddToCart()) {
-            return CartOperationResult.builder()
-                    .success(false)
-                    .message("Cannot add items in the current state. Please complete or cancel your current order first.")
-                    .build();
-        }
-
         // Find product
         Optional<Product> productOpt = productRepository.findById(productId);
         if (productOpt.isEmpty()) {
@@ -95,44 +92,18 @@ public class ConversationStateMachine {
                     .build();
         }
 
-        // Check stock if tracking inventory
-        if (Boolean.TRUE.equals(product.getTrackInventory())) {
-            if (product.getQuantity() == null || product.getQuantity() < quantity) {
-                int available = product.getQuantity() != null ? product.getQuantity() : 0;
-                return CartOperationResult.builder()
-                        .success(false)
-                        .message("Sorry, we only have " + available + " of " + product.getName() + " in stock.")
-                        .build();
-            }
-        }
-
-        // Get or create order context
-        OrderContext context = getOrderContext(conversation);
-
-        // Create cart item
-        CartItem item = CartItem.builder()
-                .productId(product.getId())
-                .productName(product.getName())
-                .quantity(quantity)
-                .unitPrice(product.getPrice())
-                .discountPercent(BigDecimal.ZERO)
-                .build();
-
-        context.addItem(item);
-
-        // Update state to ADDING_TO_CART if not already ordering
-        if (!currentState.isOrdering()) {
-            conversation.setState(ConversationState.ADDING_TO_CART.getValue());
-        }
-
-        saveOrderContext(conversation, context);
+        return addToCart(conversation, CatalogProduct.from(product), quantity);
+    }
 
-        return CartOperationResult.builder()
-                .success(true)
-                .message("Added " + quantity + "x " + product.getName() + " to your cart!")
-                .newState(ConversationState.ADDING_TO_CART)
-                .orderContext(context)
-                .build();
+    /**
+     * Add a product from the business's catalog snapshot to cart
+     */
+    @Transactional
+    public CartOperationResult addToCart(Conversation conversation, CatalogProduct product, int quantity) {
+        CartBatch batch = openCartBatch(conversation);
+        CartOperationResult result = batch.addProduct(product, quantity);
+        batch.commit();
+        return result;
     }
 
     /**
@@ -140,49 +111,10 @@ public class ConversationStateMachine {
      */
     @Transactional
     public CartOperationResult addToCartByName(Conversation conversation, String productName, int quantity) {
-        UUID businessId = conversation.getBusiness().getId();
-
-        // Try exact match first
-        List<Product> products = productRepository.findByBusinessIdAndStatusOrderByNameAsc(businessId, "active");
-
-        Product match = null;
-        String normalizedInput = productName.toLowerCase().trim();
-
-        // Try exact match
-        for (Product p : products) {
-            if (p.getName().toLowerCase().equals(normalizedInput)) {
-                match = p;
-                break;
-            }
-        }
-
-        // Try contains match
-        if (match == null) {
-            for (Product p : products) {
-                if (p.getName().toLowerCase().contains(normalizedInput) ||
-                        normalizedInput.contains(p.getName().toLowerCase())) {
-                    match = p;
-                    break;
-                }
-            }
-        }
-
-        if (match == null) {
-            // Return suggestions
-            StringBuilder sb = new StringBuilder("I couldn't find \"" + productName + "\". ");
-            if (!products.isEmpty()) {
-                sb.append("Here are our available products:\n");
-                for (int i = 0; i < Math.min(5, products.size()); i++) {
-                    sb.append("- ").append(products.get(i).getName()).append("\n");
-                }
-            }
-            return CartOperationResult.builder()
-                    .success(false)
-                    .message(sb.toString())
-                    .build();
-        }
-
-        return addToCart(conversation, match.getId(), quantity);
+        CartBatch batch = openCartBatch(conversation);
+        CartOperationResult result = batch.addToCartByName(productName, quantity);
+        batch.commit();
+        return result;
     }
 
     /**
@@ -204,13 +136,12 @@ public class ConversationStateMachine {
 
         if (newQuantity <= 0) {
             context.removeItem(itemIndex);
-            saveOrderContext(conversation, context);
 
             // If cart is now empty, go back to browsing
             if (context.isEmpty()) {
                 conversation.setState(ConversationState.BROWSING.getValue());
-                conversationRepository.save(conversation);
             }
+            orderSessions.stage(conversation, context);
 
             return CartOperationResult.builder()
                     .success(true)
@@ -235,7 +166,7 @@ public class ConversationStateMachine {
         }
 
         context.updateItemQuantity(itemIndex, newQuantity);
-        saveOrderContext(conversation, context);
+        orderSessions.stage(conversation, context);
 
         return CartOperationResult.builder()
                 .success(true)
@@ -249,49 +180,10 @@ public class ConversationStateMachine {
      */
     @Transactional
     public CartOperationResult applyDiscount(Conversation conversation, int itemIndex, BigDecimal discountPercent) {
-        AgentConfig config = agentConfigService.getAgentConfigEntity(conversation.getBusiness().getId());
-
-        // Check if negotiation is allowed
-        int maxDiscount = 10; // default
-        if (config != null && config.getSalesSettings() != null) {
-            Boolean negotiationEnabled = (Boolean) config.getSalesSettings().getOrDefault("negotiation_enabled", true);
-            if (!negotiationEnabled) {
-                return CartOperationResult.builder()
-                        .success(false)
-                        .message("Sorry, our prices are fixed and we cannot offer discounts.")
-                        .build();
-            }
-            maxDiscount = ((Number) config.getSalesSettings().getOrDefault("max_discount_percent", 10)).intValue();
-        }
-
-        if (discountPercent.compareTo(BigDecimal.valueOf(maxDiscount)) > 0) {
-            return CartOperationResult.builder()
-                    .success(false)
-                    .message("Sorry, the maximum discount I can offer is " + maxDiscount + "%.")
-                    .build();
-        }
-
-        OrderContext context = getOrderContext(conversation);
-
-        if (context.isEmpty() || itemIndex < 0 || itemIndex >= context.getItems().size()) {
-            return CartOperationResult.builder()
-                    .success(false)
-                    .message("Item not found in cart.")
-                    .build();
-        }
-
-        CartItem item = context.getItems().get(itemIndex);
-        item.setDiscountPercent(discountPercent);
-        item.calculateTotals();
-        context.recalculateTotals();
-
-        saveOrderContext(conversation, context);
-
-        return CartOperationResult.builder()
-                .success(true)
-                .message("Applied " + discountPercent + "% discount to " + item.getProductName() + "!")
-                .orderContext(context)
-                .build();
+        CartBatch batch = openCartBatch(conversation);
+        CartOperationResult result = batch.applyDiscount(itemIndex, discountPercent);
+        batch.commit();
+        return result;
     }
 
     /**
@@ -299,56 +191,10 @@ public class ConversationStateMachine {
      */
     @Transactional
     public CartOperationResult setDeliveryAddress(Conversation conversation, String address, String area) {
-        OrderContext context = getOrderContext(conversation);
-
-        if (context.isEmpty()) {
-            return CartOperationResult.builder()
-                    .success(false)
-                    .message("Your cart is empty. Please add some items first!")
-                    .build();
-        }
-
-        context.setDeliveryAddress(address);
-        context.setDeliveryArea(area);
-
-        // Calculate delivery fee based on area
-        AgentConfig config = agentConfigService.getAgentConfigEntity(conversation.getBusiness().getId());
-        BigDecimal deliveryFee = BigDecimal.ZERO;
-
-        if (config != null) {
-            if (config.getDeliveryAreas() != null && area != null) {
-                // Try to match area for specific fee
-                for (Map<String, Object> areaConfig : config.getDeliveryAreas()) {
-                    String areaName = (String) areaConfig.get("name");
-                    if (areaName != null && areaName.equalsIgnoreCase(area)) {
-                        Object fee = areaConfig.get("fee");
-                        if (fee instanceof Number) {
-                            deliveryFee = BigDecimal.valueOf(((Number) fee).doubleValue());
-                        }
-                        break;
-                    }
-                }
-            }
-            // Fall back to default delivery fee
-            if (deliveryFee.compareTo(BigDecimal.ZERO) == 0 && config.getDefaultDeliveryFee() != null) {
-                deliveryFee = config.getDefaultDeliveryFee();
-            }
-        }
-
-        context.setDeliveryFee(deliveryFee);
-        context.recalculateTotals();
-
-        // Update state
-        conversation.setState(ConversationState.COLLECTING_ADDRESS.getValue());
-
-        saveOrderContext(conversation, context);
-
-        return CartOperationResult.builder()
-                .success(true)
-                .message("Delivery address set to: " + address)
-                .newState(ConversationState.COLLECTING_ADDRESS)
-                .orderContext(context)
-                .build();
+        CartBatch batch = openCartBatch(conversation);
+        CartOperationResult result = batch.setDeliveryAddress(address, area);
+        batch.commit();
+        return result;
     }
 
     /**
@@ -392,29 +238,10 @@ public class ConversationStateMachine {
      */
     @Transactional
     public CartOperationResult confirmOrder(Conversation conversation) {
-        ConversationState currentState = ConversationState.fromValue(conversation.getState());
-
-        if (currentState != ConversationState.CONFIRMING_ORDER) {
-            return CartOperationResult.builder()
-                    .success(false)
-                    .message("Please review your order first before confirming.")
-                    .build();
-        }
-
-        OrderContext context = getOrderContext(conversation);
-        context.setConfirmed(true);
-
-        conversation.setState(ConversationState.AWAITING_PAYMENT.getValue());
-
-        saveOrderContext(conversation, context);
-
-        return CartOperationResult.builder()
-                .success(true)
-                .message("Order confirmed! I'll send you a payment link shortly.")
-                .newState(ConversationState.AWAITING_PAYMENT)
-                .orderContext(context)
-                .requiresPaymentLink(true)
-                .build();
+        CartBatch batch = openCartBatch(conversation);
+        CartOperationResult result = batch.confirmOrder();
+        batch.commit();
+        return result;
     }
 
     /**
@@ -422,23 +249,10 @@ public class ConversationStateMachine {
      */
     @Transactional
     public CartOperationResult cancelOrder(Conversation conversation) {
-        OrderContext context = getOrderContext(conversation);
-        context.clearCart();
-        context.setConfirmed(false);
-        context.setDeliveryAddress(null);
-        context.setDeliveryArea(null);
-        context.setDeliveryFee(null);
-
-        conversation.setState(ConversationState.BROWSING.getValue());
-
-        saveOrderContext(conversation, context);
-
-        return CartOperationResult.builder()
-                .success(true)
-                .message("Your order has been cancelled. Is there anything else I can help you with?")
-                .newState(ConversationState.BROWSING)
-                .orderContext(context)
-                .build();
+        CartBatch batch = openCartBatch(conversation);
+        CartOperationResult result = batch.cancelOrder();
+        batch.commit();
+        return result;
     }
 
     /**
@@ -463,6 +277,21 @@ public class ConversationStateMachine {
                 .build();
     }
 
+    /**
+     * Start a batch of cart operations on the conversation's stored order context.
+     */
+    public CartBatch openCartBatch(Conversation conversation) {
+        return new CartBatch(conversation, getOrderContext(conversation));
+    }
+
+    /**
+     * Start a batch of cart operations on an order context already read from the conversation.
+     * The context is changed in place.
+     */
+    public CartBatch openCartBatch(Conversation conversation, OrderContext context) {
+        return new CartBatch(conversation, context);
+    }
+
     /**
      * Get cart summary
      */
@@ -471,6 +300,277 @@ public class ConversationStateMachine {
         return context.getCartSummary();
     }
 
+    /**
+     * Cart operations for one turn, applied to a single in-memory order context.
+     *
+     * The order context is read once when the batch is opened and {@link #commit()} keeps
+     * the cart and the final state for the turn's single write; products come from the
+     * tenant's catalog snapshot. Operations see the state left by earlier ones in the batch.
+     * Not thread-safe; one batch per turn.
+     */
+    public class CartBatch {
+        private final Conversation conversation;
+        private final OrderContext context;
+        private ConversationState state;
+        private CatalogSnapshot catalog;
+        private boolean dirty;
+
+        private CartBatch(Conversation conversation, OrderContext context) {
+            this.conversation = conversation;
+            this.context = context;
+            this.state = ConversationState.fromValue(conversation.getState());
+        }
+
+        public OrderContext getContext() {
+            return context;
+        }
+
+        public ConversationState getState() {
+            return state;
+        }
+
+        /**
+         * Add product to cart by name (ranked fuzzy matching)
+         */
+        public CartOperationResult addToCartByName(String productName, int quantity) {
+            CatalogSnapshot products = catalog();
+            Optional<CatalogProduct> match = products.bestMatch(productName);
+
+            if (match.isEmpty()) {
+                // Return suggestions, closest names first
+                List<CatalogSnapshot.Match> closest = products.search(productName, 5);
+                List<CatalogProduct> suggestions = !closest.isEmpty()
+                        ? closest.stream().map(CatalogSnapshot.Match::product).toList()
+                        : products.getProducts().subList(0, Math.min(5, products.size()));
+                StringBuilder sb = new StringBuilder("I couldn't find \"" + productName + "\". ");
+                if (!suggestions.isEmpty()) {
+                    sb.append("Here are our available products:\n");
+                    for (CatalogProduct p : suggestions) {
+                        sb.append("- ").append(p.getName()).append("\n");
+                    }
+                }
+                return CartOperationResult.builder()
+                        .success(false)
+                        .message(sb.toString())
+                        .build();
+            }
+
+            return addProduct(match.get(), quantity);
+        }
+
+        /**
+         * Add a product of this business to the cart
+         */
+        CartOperationResult addProduct(CatalogProduct product, int quantity) {
+            if (!state.canAddToCart()) {
+                return CartOperationResult.builder()
+                        .success(false)
+                        .message("Cannot add items in the current state. Please complete or cancel your current order first.")
+                        .build();
+            }
+
+            // Check stock if tracking inventory
+            if (product.isTrackInventory()) {
+                if (product.getQuantity() == null || product.getQuantity() < quantity) {
+                    int available = product.getQuantity() != null ? product.getQuantity() : 0;
+                    return CartOperationResult.builder()
+                            .success(false)
+                            .message("Sorry, we only have " + available + " of " + product.getName() + " in stock.")
+                            .build();
+                }
+            }
+
+            CartItem item = CartItem.builder()
+                    .productId(product.getId())
+                    .productName(product.getName())
+                    .quantity(quantity)
+                    .unitPrice(product.getPrice())
+                    .discountPercent(BigDecimal.ZERO)
+                    .build();
+
+            context.addItem(item);
+
+            // Update state to ADDING_TO_CART if not already ordering
+            if (!state.isOrdering()) {
+                state = ConversationState.ADDING_TO_CART;
+            }
+            dirty = true;
+
+            return CartOperationResult.builder()
+                    .success(true)
+                    .message("Added " + quantity + "x " + product.getName() + " to your cart!")
+                    .newState(ConversationState.ADDING_TO_CART)
+                    .orderContext(context)
+                    .build();
+        }
+
+        /**
+         * Apply discount to a cart item (for negotiation)
+         */
+        public CartOperationResult applyDiscount(int itemIndex, BigDecimal discountPercent) {
+            AgentConfig config = tenantDirectory.getAgentConfig(conversation.getBusiness().getId());
+
+            // Check if negotiation is allowed
+            int maxDiscount = 10; // default
+            if (config != null && config.getSalesSettings() != null) {
+                Boolean negotiationEnabled = (Boolean) config.getSalesSettings().getOrDefault("negotiation_enabled", true);
+                if (!negotiationEnabled) {
+                    return CartOperationResult.builder()
+                            .success(false)
+                            .message("Sorry, our prices are fixed and we cannot offer discounts.")
+                            .build();
+                }
+                maxDiscount = ((Number) config.getSalesSettings().getOrDefault("max_discount_percent", 10)).intValue();
+            }
+
+            if (discountPercent.compareTo(BigDecimal.valueOf(maxDiscount)) > 0) {
+                return CartOperationResult.builder()
+                        .success(false)
+                        .message("Sorry, the maximum discount I can offer is " + maxDiscount + "%.")
+                        .build();
+            }
+
+            if (context.isEmpty() || itemIndex < 0 || itemIndex >= context.getItems().size()) {
+                return CartOperationResult.builder()
+                        .success(false)
+                        .message("Item not found in cart.")
+                        .build();
+            }
+
+            CartItem item = context.getItems().get(itemIndex);
+            item.setDiscountPercent(discountPercent);
+            item.calculateTotals();
+            context.recalculateTotals();
+            dirty = true;
+
+            return CartOperationResult.builder()
+                    .success(true)
+                    .message("Applied " + discountPercent + "% discount to " + item.getProductName() + "!")
+                    .orderContext(context)
+                    .build();
+        }
+
+        /**
+         * Set delivery address and calculate fee
+         */
+        public CartOperationResult setDeliveryAddress(String address, String area) {
+            if (context.isEmpty()) {
+                return CartOperationResult.builder()
+                        .success(false)
+                        .message("Your cart is empty. Please add some items first!")
+                        .build();
+            }
+
+            context.setDeliveryAddress(address);
+            context.setDeliveryArea(area);
+
+            // Calculate delivery fee based on area
+            AgentConfig config = tenantDirectory.getAgentConfig(conversation.getBusiness().getId());
+            BigDecimal deliveryFee = BigDecimal.ZERO;
+
+            if (config != null) {
+                if (config.getDeliveryAreas() != null && area != null) {
+                    // Try to match area for specific fee
+                    for (Map<String, Object> areaConfig : config.getDeliveryAreas()) {
+                        String areaName = (String) areaConfig.get("name");
+                        if (areaName != null && areaName.equalsIgnoreCase(area)) {
+                            Object fee = areaConfig.get("fee");
+                            if (fee instanceof Number) {
+                                deliveryFee = BigDecimal.valueOf(((Number) fee).doubleValue());
+                            }
+                            break;
+                        }
+                    }
+                }
+                // Fall back to default delivery fee
+                if (deliveryFee.compareTo(BigDecimal.ZERO) == 0 && config.getDefaultDeliveryFee() != null) {
+                    deliveryFee = config.getDefaultDeliveryFee();
+                }
+            }
+
+            context.setDeliveryFee(deliveryFee);
+            context.recalculateTotals();
+
+            state = ConversationState.COLLECTING_ADDRESS;
+            dirty = true;
+
+            return CartOperationResult.builder()
+                    .success(true)
+                    .message("Delivery address set to: " + address)
+                    .newState(ConversationState.COLLECTING_ADDRESS)
+                    .orderContext(context)
+                    .build();
+        }
+
+        /**
+         * Confirm order and mark as ready for payment
+         */
+        public CartOperationResult confirmOrder() {
+            if (state != ConversationState.CONFIRMING_ORDER) {
+                return CartOperationResult.builder()
+                        .success(false)
+                        .message("Please review your order first before confirming.")
+                        .build();
+            }
+
+            context.setConfirmed(true);
+            state = ConversationState.AWAITING_PAYMENT;
+            dirty = true;
+
+            return CartOperationResult.builder()
+                    .success(true)
+                    .message("Order confirmed! I'll send you a payment link shortly.")
+                    .newState(ConversationState.AWAITING_PAYMENT)
+                    .orderContext(context)
+                    .requiresPaymentLink(true)
+                    .build();
+        }
+
+        /**
+         * Cancel current order and clear cart
+         */
+        public CartOperationResult cancelOrder() {
+            context.clearCart();
+            context.setConfirmed(false);
+            context.setDeliveryAddress(null);
+            context.setDeliveryArea(null);
+            context.setDeliveryFee(null);
+
+            state = ConversationState.BROWSING;
+            dirty = true;
+
+            return CartOperationResult.builder()
+                    .success(true)
+                    .message("Your order has been cancelled. Is there anything else I can help you with?")
+                    .newState(ConversationState.BROWSING)
+                    .orderContext(context)
+                    .build();
+        }
+
+        /**
+         * Keep the cart and state if any operation changed them. They are written to the
+         * database with the rest of the turn's cart changes by {@link #flushOrderContext}.
+         *
+         * @return whether anything changed
+         */
+        public boolean commit() {
+            if (!dirty) {
+                return false;
+            }
+            conversation.setState(state.getValue());
+            orderSessions.stage(conversation, context);
+            dirty = false;
+            return true;
+        }
+
+        private CatalogSnapshot catalog() {
+            if (catalog == null) {
+                catalog = productCatalog.get(conversation.getBusiness().getId());
+            }
+            return catalog;
+        }
+    }
+
     /**
      * Result of cart operation
      */
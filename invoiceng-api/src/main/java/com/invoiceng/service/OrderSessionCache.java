@@ -0,0 +1,339 @@
+package com.invoiceng.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.invoiceng.config.WebhookConfig;
+import com.invoiceng.dto.OrderContext;
+import com.invoiceng.entity.Conversation;
+import com.invoiceng.repository.ConversationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live {@link OrderContext} of recent conversations, so a turn does not parse the cart JSON
+ * again and every cart change of a turn is written to the database once.
+ *
+ * A session remembers the {@code cart_version} of the row it was loaded from or last wrote.
+ * It is only used while the conversation it is read through is not newer; a newer row
+ * means another node changed the cart, so the session is reloaded from it. Changes are staged
+ * in memory and written back by {@link #flush} at the end of the turn. The periodic sweep
+ * also writes them, as does eviction. Writes are conditional on the version, so a session
+ * that went stale never overwrites another node's cart. Its pending change is dropped and
+ * counted as a conflict instead.
+ *
+ * Turns of a conversation run one at a time on the conversation's webhook lane, so only
+ * one thread mutates a live context. Staging serializes it, and the sweep only writes that
+ * serialized copy.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderSessionCache {
+
+    // Longer than any turn, so a session is not evicted between a turn reading and staging it
+    private static final long MIN_EVICTION_IDLE_SECONDS = 120;
+
+    private final ConversationRepository conversationRepository;
+    private final ObjectMapper objectMapper;
+    private final WebhookConfig webhookConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+
+    private Counter hits;
+    private Counter misses;
+    private Counter writes;
+    private Counter conflicts;
+    private Counter evictions;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("conversation.sessions.lookups").tag("result", "hit")
+                .description("Order contexts served from a live session")
+                .register(meterRegistry);
+        misses = Counter.builder("conversation.sessions.lookups").tag("result", "miss")
+                .description("Order contexts parsed from the stored cart")
+                .register(meterRegistry);
+        writes = Counter.builder("conversation.sessions.writes")
+                .description("Staged carts written back to the database")
+                .register(meterRegistry);
+        conflicts = Counter.builder("conversation.sessions.conflicts")
+                .description("Staged carts dropped because the stored cart changed on another node")
+                .register(meterRegistry);
+        evictions = Counter.builder("conversation.sessions.evictions")
+                .description("Sessions evicted for being idle or over capacity")
+                .register(meterRegistry);
+        Gauge.builder("conversation.sessions.size", sessions, Map::size)
+                .description("Live order sessions in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Live order context of the conversation. Callers on the conversation's lane may mutate
+     * it; changes are kept only once {@link #stage staged}.
+     */
+    public OrderContext get(Conversation conversation) {
+        UUID id = conversation.getId();
+        if (id == null || !webhookConfig.getSessions().isEnabled()) {
+            misses.increment();
+            return parse(conversation.getCart());
+        }
+
+        long version = versionOf(conversation);
+        while (true) {
+            Session session = sessions.computeIfAbsent(id, k -> new Session(conversation.getCart(), version));
+            synchronized (session) {
+                if (session.evicted) {
+                    continue;
+                }
+                session.touch();
+                if (session.context != null && version <= session.version) {
+                    hits.increment();
+                    return session.context;
+                }
+                if (version > session.version) {
+                    // The cart was written elsewhere since this session loaded it
+                    if (session.pending) {
+                        conflicts.increment();
+                        log.warn("Cart of conversation {} changed on another node, dropping staged change", id);
+                    }
+                    session.reload(conversation.getCart(), version);
+                }
+                misses.increment();
+                session.context = parse(session.json);
+                return session.context;
+            }
+        }
+    }
+
+    /**
+     * Stage the context and the conversation's state for writing back. The conversation's
+     * cart is updated in memory straight away.
+     */
+    public void stage(Conversation conversation, OrderContext context) {
+        String json = serialize(context);
+        conversation.setCart(json);
+
+        UUID id = conversation.getId();
+        if (id == null || !webhookConfig.getSessions().isEnabled()) {
+            write(conversation, json);
+            return;
+        }
+
+        long version = versionOf(conversation);
+        while (true) {
+            Session session = sessions.computeIfAbsent(id, k -> new Session(json, version));
+            synchronized (session) {
+                if (session.evicted) {
+                    continue;
+                }
+                if (version > session.version) {
+                    if (session.pending) {
+                        conflicts.increment();
+                        log.warn("Cart of conversation {} changed on another node, dropping staged change", id);
+                    }
+                    session.reload(json, version);
+                }
+                session.touch();
+                session.context = context;
+                session.json = json;
+                session.state = conversation.getState();
+                session.pending = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write the conversation's staged cart, if any. Failures are logged and the change stays
+     * staged for the sweep to retry.
+     */
+    public void flush(Conversation conversation) {
+        Session session = conversation.getId() != null ? sessions.get(conversation.getId()) : null;
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            try {
+                writeBack(conversation.getId(), session);
+            } catch (Exception e) {
+                log.warn("Failed to write cart of conversation {}, will retry: {}", conversation.getId(), e.getMessage());
+            }
+            // Also catches up with a write the sweep made during the turn
+            if (!session.pending && !session.evicted) {
+                conversation.setCartVersion(session.version);
+            }
+        }
+    }
+
+    /**
+     * Throw away unstaged changes made to the live context, going back to the last staged
+     * or stored cart.
+     */
+    public OrderContext reset(Conversation conversation) {
+        Session session = conversation.getId() != null ? sessions.get(conversation.getId()) : null;
+        if (session == null) {
+            return get(conversation);
+        }
+        synchronized (session) {
+            session.context = null;
+        }
+        return get(conversation);
+    }
+
+    /**
+     * Writes back staged carts, then evicts idle sessions and, over capacity, the least
+     * recently used ones.
+     */
+    @Scheduled(fixedDelayString = "${webhook.sessions.sweep-interval-ms:5000}")
+    public void sweep() {
+        WebhookConfig.Sessions settings = webhookConfig.getSessions();
+        long now = System.nanoTime();
+        long idleBefore = now - TimeUnit.SECONDS.toNanos(settings.getIdleSeconds());
+        long evictableBefore = now - TimeUnit.SECONDS.toNanos(MIN_EVICTION_IDLE_SECONDS);
+
+        List<Map.Entry<UUID, Session>> live = new ArrayList<>(sessions.entrySet());
+        int overCapacity = live.size() - settings.getMaxSessions();
+        if (overCapacity > 0) {
+            live.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        }
+
+        int evicted = 0;
+        for (Map.Entry<UUID, Session> entry : live) {
+            Session session = entry.getValue();
+            synchronized (session) {
+                try {
+                    writeBack(entry.getKey(), session);
+                } catch (Exception e) {
+                    log.warn("Failed to write cart of conversation {}, will retry: {}", entry.getKey(), e.getMessage());
+                    continue;
+                }
+                boolean idle = session.lastAccess - idleBefore < 0;
+                boolean evictable = session.lastAccess - evictableBefore < 0;
+                if (idle || (evicted < overCapacity && evictable)) {
+                    session.evicted = true;
+                    sessions.remove(entry.getKey(), session);
+                    evictions.increment();
+                    evicted++;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int failed = 0;
+        for (Map.Entry<UUID, Session> entry : sessions.entrySet()) {
+            synchronized (entry.getValue()) {
+                try {
+                    writeBack(entry.getKey(), entry.getValue());
+                } catch (Exception e) {
+                    failed++;
+                }
+            }
+        }
+        if (failed > 0) {
+            log.warn("{} staged carts could not be written on shutdown", failed);
+        }
+    }
+
+    /**
+     * Write the session's staged cart. Caller holds the session's lock.
+     *
+     * @return whether a staged cart was written
+     */
+    private boolean writeBack(UUID conversationId, Session session) {
+        if (!session.pending) {
+            return false;
+        }
+        int updated = conversationRepository.writeCart(conversationId, session.json, session.state, session.version);
+        session.pending = false;
+        if (updated == 0) {
+            conflicts.increment();
+            log.warn("Cart of conversation {} changed on another node, dropping staged change", conversationId);
+            session.evicted = true;
+            sessions.remove(conversationId, session);
+            return false;
+        }
+        session.version++;
+        writes.increment();
+        return true;
+    }
+
+    private void write(Conversation conversation, String json) {
+        long version = versionOf(conversation);
+        if (conversationRepository.writeCart(conversation.getId(), json, conversation.getState(), version) == 0) {
+            conflicts.increment();
+            log.warn("Cart of conversation {} changed concurrently, change dropped", conversation.getId());
+            return;
+        }
+        conversation.setCartVersion(version + 1);
+        writes.increment();
+    }
+
+    private OrderContext parse(String cart) {
+        try {
+            if (cart == null || cart.isBlank()) {
+                return new OrderContext();
+            }
+            // Parse JSON string to OrderContext
+            return objectMapper.readValue(cart, OrderContext.class);
+        } catch (Exception e) {
+            log.warn("Failed to parse order context, returning new one: {}", e.getMessage());
+            return new OrderContext();
+        }
+    }
+
+    private String serialize(OrderContext context) {
+        try {
+            return objectMapper.writeValueAsString(context);
+        } catch (Exception e) {
+            log.error("Failed to save order context: {}", e.getMessage());
+            throw new RuntimeException("Failed to save order context", e);
+        }
+    }
+
+    private static long versionOf(Conversation conversation) {
+        return conversation.getCartVersion() != null ? conversation.getCartVersion() : 0L;
+    }
+
+    private static class Session {
+        private OrderContext context;
+        private String json;
+        private String state;
+        private long version;
+        private boolean pending;
+        private boolean evicted;
+        private volatile long lastAccess = System.nanoTime();
+
+        Session(String json, long version) {
+            this.json = json;
+            this.version = version;
+        }
+
+        void reload(String json, long version) {
+            this.json = json;
+            this.version = version;
+            this.context = null;
+            this.pending = false;
+        }
+
+        void touch() {
+            lastAccess = System.nanoTime();
+        }
+    }
+}
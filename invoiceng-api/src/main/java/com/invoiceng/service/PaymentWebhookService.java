@@ -6,6 +6,7 @@ import com.invoiceng.entity.ConversationState;
 import com.invoiceng.entity.WhatsAppOrder;
 import com.invoiceng.repository.ConversationRepository;
 import com.invoiceng.repository.WhatsAppOrderRepository;
+import com.invoiceng.service.outbound.WhatsAppOutbox;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -22,6 +23,7 @@ public class PaymentWebhookService {
     private final ConversationRepository conversationRepository;
     private final ConversationService conversationService;
     private final WhatsAppService whatsAppService;
+    private final WhatsAppOutbox whatsAppOutbox;
 
     /**
      * Handle successful payment from Paystack webhook
@@ -99,27 +101,13 @@ public class PaymentWebhookService {
             // Build confirmation message
             String message = buildPaymentConfirmationMessage(order, paymentData);
 
-            // Get WhatsApp credentials for the business
+            // Get the sending phone number for the business
             String phoneNumberId = whatsAppService.getPhoneNumberId(order.getBusiness());
-            String accessToken = whatsAppService.getAccessToken(order.getBusiness());
-
-            // Send the message
-            whatsAppService.sendTextMessage(phoneNumberId, accessToken, customerPhone, message);
-
-            log.info("Sent payment confirmation to {} for order {}", customerPhone, order.getOrderNumber());
-
-            // Save message to conversation if linked
-            if (order.getConversationId() != null) {
-                Optional<Conversation> conversationOpt = conversationRepository.findById(order.getConversationId());
-                if (conversationOpt.isPresent()) {
-                    conversationService.saveOutboundMessage(
-                            conversationOpt.get(),
-                            message,
-                            "text",
-                            null
-                    );
-                }
-            }
+
+            // Queue the message with the payment update; the webhook response does not wait for the Graph API
+            queueNotification(order, phoneNumberId, customerPhone, message);
+
+            log.info("Queued payment confirmation to {} for order {}", customerPhone, order.getOrderNumber());
 
         } catch (Exception e) {
             log.error("Failed to send payment confirmation for order {}: {}",
@@ -180,32 +168,33 @@ public class PaymentWebhookService {
             String message = buildStatusChangeMessage(order, newStatus);
 
             String phoneNumberId = whatsAppService.getPhoneNumberId(order.getBusiness());
-            String accessToken = whatsAppService.getAccessToken(order.getBusiness());
 
-            whatsAppService.sendTextMessage(phoneNumberId, accessToken, customerPhone, message);
+            queueNotification(order, phoneNumberId, customerPhone, message);
 
-            log.info("Sent {} notification to {} for order {}",
+            log.info("Queued {} notification to {} for order {}",
                     newStatus, customerPhone, order.getOrderNumber());
 
-            // Save message to conversation if linked
-            if (order.getConversationId() != null) {
-                Optional<Conversation> conversationOpt = conversationRepository.findById(order.getConversationId());
-                if (conversationOpt.isPresent()) {
-                    conversationService.saveOutboundMessage(
-                            conversationOpt.get(),
-                            message,
-                            "text",
-                            null
-                    );
-                }
-            }
-
         } catch (Exception e) {
             log.error("Failed to send status notification for order {}: {}",
                     order.getOrderNumber(), e.getMessage(), e);
         }
     }
 
+    /**
+     * Queue a notification in the current transaction, saving it to the linked
+     * conversation if there is one. The outbox sends it once the transaction commits.
+     */
+    private void queueNotification(WhatsAppOrder order, String phoneNumberId, String customerPhone, String message) {
+        if (order.getConversationId() != null) {
+            Optional<Conversation> conversationOpt = conversationRepository.findById(order.getConversationId());
+            if (conversationOpt.isPresent()) {
+                conversationService.queueOutboundText(conversationOpt.get(), phoneNumberId, message);
+                return;
+            }
+        }
+        whatsAppOutbox.enqueueText(order.getBusiness().getId(), phoneNumberId, customerPhone, message, null);
+    }
+
     private String buildStatusChangeMessage(WhatsAppOrder order, String status) {
         StringBuilder sb = new StringBuilder();
 
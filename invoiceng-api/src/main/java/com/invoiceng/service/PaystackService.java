@@ -1,5 +1,6 @@
 package com.invoiceng.service;
 
+import com.invoiceng.config.HttpClientFactory;
 import com.invoiceng.config.PaystackConfig;
 import com.invoiceng.exception.PaymentException;
 import jakarta.annotation.PostConstruct;
@@ -30,12 +31,12 @@ import java.util.UUID;
 public class PaystackService {
 
     private final PaystackConfig paystackConfig;
-    private final WebClient.Builder webClientBuilder;
+    private final HttpClientFactory httpClientFactory;
     private WebClient webClient;
 
     @PostConstruct
     public void init() {
-        this.webClient = webClientBuilder
+        this.webClient = httpClientFactory.webClientBuilder(HttpClientFactory.Provider.PAYSTACK)
                 .baseUrl(paystackConfig.getBaseUrl())
                 .defaultHeader("Authorization", "Bearer " + paystackConfig.getSecretKey())
                 .defaultHeader("Content-Type", "application/json")
@@ -13,8 +13,10 @@ import com.invoiceng.repository.ProductImageRepository;
 import com.invoiceng.repository.ProductRepository;
 import com.invoiceng.repository.ProductVariantRepository;
 import com.invoiceng.repository.UserRepository;
+import com.invoiceng.service.tenant.CatalogChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -37,6 +39,7 @@ public class ProductService {
     private final ProductVariantRepository variantRepository;
     private final ProductImageRepository imageRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public PaginatedResponse<ProductResponse> listProducts(
             UUID businessId,
@@ -144,6 +147,7 @@ public class ProductService {
             product.setVariants(variants);
         }
 
+        eventPublisher.publishEvent(new CatalogChangedEvent(businessId));
         log.info("Created product {} for business {}", product.getId(), businessId);
         return ProductResponse.fromEntity(product);
     }
@@ -209,6 +213,7 @@ public class ProductService {
         }
 
         product = productRepository.save(product);
+        eventPublisher.publishEvent(new CatalogChangedEvent(businessId));
         log.info("Updated product {}", productId);
 
         return ProductResponse.fromEntity(product);
@@ -220,6 +225,7 @@ public class ProductService {
                 .orElseThrow(() -> new ResourceNotFoundException("Product", "id", productId));
 
         productRepository.delete(product);
+        eventPublisher.publishEvent(new CatalogChangedEvent(businessId));
         log.info("Deleted product {}", productId);
     }
 
@@ -241,6 +247,7 @@ public class ProductService {
                 .build();
 
         imageRepository.save(image);
+        eventPublisher.publishEvent(new CatalogChangedEvent(businessId));
         log.info("Added image to product {}", productId);
 
         return getProduct(productId, businessId);
@@ -256,6 +263,7 @@ public class ProductService {
                 .orElseThrow(() -> new ResourceNotFoundException("Image", "id", imageId));
 
         imageRepository.delete(image);
+        eventPublisher.publishEvent(new CatalogChangedEvent(businessId));
         log.info("Deleted image {} from product {}", imageId, productId);
     }
 
@@ -268,6 +276,7 @@ public class ProductService {
         product.setQuantity(Math.max(0, newQuantity));
 
         product = productRepository.save(product);
+        eventPublisher.publishEvent(new CatalogChangedEvent(businessId));
         log.info("Updated inventory for product {}: {} -> {}", productId, product.getQuantity() - quantityChange, newQuantity);
 
         return ProductResponse.fromEntity(product);
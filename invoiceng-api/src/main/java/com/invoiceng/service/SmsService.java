@@ -1,5 +1,6 @@
 package com.invoiceng.service;
 
+import com.invoiceng.config.HttpClientFactory;
 import com.invoiceng.config.TermiiConfig;
 import com.invoiceng.exception.SmsException;
 import jakarta.annotation.PostConstruct;
@@ -18,12 +19,12 @@ import java.util.Map;
 public class SmsService {
 
     private final TermiiConfig termiiConfig;
-    private final WebClient.Builder webClientBuilder;
+    private final HttpClientFactory httpClientFactory;
     private WebClient webClient;
 
     @PostConstruct
     public void init() {
-        this.webClient = webClientBuilder
+        this.webClient = httpClientFactory.webClientBuilder(HttpClientFactory.Provider.TERMII)
                 .baseUrl(termiiConfig.getBaseUrl())
                 .defaultHeader("Content-Type", "application/json")
                 .build();
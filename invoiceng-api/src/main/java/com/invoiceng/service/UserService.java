@@ -5,8 +5,10 @@ import com.invoiceng.dto.response.UserResponse;
 import com.invoiceng.entity.User;
 import com.invoiceng.exception.ResourceNotFoundException;
 import com.invoiceng.repository.UserRepository;
+import com.invoiceng.service.tenant.TenantChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +21,7 @@ import java.util.UUID;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public UserResponse getCurrentUser(UUID userId) {
         User user = userRepository.findById(userId)
@@ -55,6 +58,7 @@ public class UserService {
         }
 
         user = userRepository.save(user);
+        eventPublisher.publishEvent(new TenantChangedEvent(userId));
         log.info("Updated user profile: {}", userId);
 
         return UserResponse.fromEntity(user);
@@ -1,76 +1,111 @@
 package com.invoiceng.service;
 
-import com.invoiceng.dto.whatsapp.WhatsAppSendResponse;
+import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.config.WebhookConfig;
 import com.invoiceng.dto.whatsapp.WhatsAppWebhookPayload;
 import com.invoiceng.entity.Conversation;
 import com.invoiceng.entity.ConversationMessage;
-import com.invoiceng.entity.User;
-import com.invoiceng.repository.UserRepository;
 import com.invoiceng.service.ai.AISalesAgentService;
+import com.invoiceng.service.outbound.ReadReceiptCoalescer;
+import com.invoiceng.service.tenant.TenantDescriptor;
+import com.invoiceng.service.tenant.TenantDirectory;
+import com.invoiceng.service.webhook.ConversationLaneDispatcher;
+import com.invoiceng.service.webhook.InboundBurstCoalescer;
+import com.invoiceng.service.webhook.MessageDedupeFilter;
+import com.invoiceng.service.webhook.MessageStatusRecorder;
+import com.invoiceng.service.webhook.WebhookCompletion;
+import com.invoiceng.service.webhook.WebhookEvents;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Handles webhook processing with proper transaction management.
- * Using @Async ensures the processing happens in a managed thread with Spring context.
+ * Messages are handed to {@link ConversationLaneDispatcher} so that each conversation
+ * is processed in order on a single lane while different conversations run in parallel.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class WebhookProcessingService {
 
-    private final WhatsAppService whatsAppService;
     private final ConversationService conversationService;
-    private final UserRepository userRepository;
+    private final TenantDirectory tenantDirectory;
     private final AISalesAgentService aiSalesAgentService;
     private final WhatsAppOrderService whatsAppOrderService;
+    private final ConversationStateMachine stateMachine;
+    private final ConversationLaneDispatcher laneDispatcher;
+    private final InboundBurstCoalescer burstCoalescer;
+    private final MessageDedupeFilter dedupeFilter;
+    private final MessageStatusRecorder statusRecorder;
+    private final ReadReceiptCoalescer readReceiptCoalescer;
+    private final WebhookConfig webhookConfig;
+    private final ClaudeConfig claudeConfig;
 
     /**
-     * Process webhook asynchronously with proper Spring transaction context
+     * Split the events of one delivery into per-conversation tasks and queue them on their
+     * lanes, reporting through {@code completion} once every queued task has finished.
+     * Returns as soon as the tasks are queued; the work itself runs on the lane threads.
      */
-    @Async
-    public void processWebhookAsync(WhatsAppWebhookPayload payload, String defaultPhoneNumberId) {
+    public void processEventsAsync(WebhookEvents events, String defaultPhoneNumberId, WebhookCompletion completion) {
         try {
-            processWebhook(payload, defaultPhoneNumberId);
+            processEvents(events, defaultPhoneNumberId, completion);
         } catch (Exception e) {
             log.error("Error processing webhook", e);
+            completion.failed();
+        } finally {
+            completion.dispatched();
         }
     }
 
-    private void processWebhook(WhatsAppWebhookPayload payload, String defaultPhoneNumberId) {
-        if (payload == null || payload.getEntry() == null) {
-            log.warn("Received empty webhook payload");
+    private void processEvents(WebhookEvents events, String defaultPhoneNumberId, WebhookCompletion completion) {
+        if (events.isEmpty()) {
+            log.debug("Webhook has no messages or statuses to process");
             return;
         }
 
-        for (WhatsAppWebhookPayload.Entry entry : payload.getEntry()) {
-            if (entry.getChanges() == null) continue;
-
-            for (WhatsAppWebhookPayload.Change change : entry.getChanges()) {
-                if (!"messages".equals(change.getField())) continue;
+        for (WebhookEvents.InboundMessage event : events.getMessages()) {
+            String phoneNumberId = event.getPhoneNumberId();
+            WhatsAppWebhookPayload.Message message = event.getMessage();
+            if (phoneNumberId == null) {
+                log.warn("No phone number ID in webhook payload");
+                continue;
+            }
 
-                processMessagesChange(change.getValue(), defaultPhoneNumberId);
+            boolean queued = laneDispatcher.submit(phoneNumberId, message.getFrom(), completion.track(
+                    () -> processLaneMessage(phoneNumberId, defaultPhoneNumberId, event.getContact(), message, completion)));
+            if (!queued) {
+                log.warn("Deferred message {} from {}: conversation lane is saturated",
+                        message.getId(), message.getFrom());
+                completion.rejected();
             }
         }
-    }
 
-    private void processMessagesChange(WhatsAppWebhookPayload.Value value, String defaultPhoneNumberId) {
-        if (value == null) return;
-
-        String phoneNumberId = value.getMetadata() != null ? value.getMetadata().getPhoneNumberId() : null;
-        if (phoneNumberId == null) {
-            log.warn("No phone number ID in webhook payload");
-            return;
+        // Status receipts need no conversation context, so they bypass the lanes and go to the batch writer
+        for (WebhookEvents.StatusReceipt receipt : events.getStatuses()) {
+            WhatsAppWebhookPayload.Status status = receipt.getStatus();
+            if (receipt.getPhoneNumberId() == null) {
+                log.warn("No phone number ID in webhook payload");
+                continue;
+            }
+            log.debug("Message {} status: {} for recipient {} on {}",
+                    status.getId(), status.getStatus(), status.getRecipientId(), receipt.getPhoneNumberId());
+            statusRecorder.record(receipt.getPhoneNumberId(), status, completion);
         }
+    }
 
-        Optional<User> businessOpt = userRepository.findByWhatsappPhoneNumberId(phoneNumberId);
-        if (businessOpt.isEmpty()) {
+    /**
+     * Runs on the conversation's lane: resolve the business and process the message.
+     */
+    private void processLaneMessage(String phoneNumberId, String defaultPhoneNumberId,
+                                    WhatsAppWebhookPayload.Contact contact, WhatsAppWebhookPayload.Message message,
+                                    WebhookCompletion completion) {
+        Optional<TenantDescriptor> tenantOpt = tenantDirectory.findByPhoneNumberId(phoneNumberId);
+        if (tenantOpt.isEmpty()) {
             if (phoneNumberId.equals(defaultPhoneNumberId)) {
                 log.debug("Using platform default WhatsApp number, no specific business mapping");
                 return;
@@ -79,39 +114,37 @@ public class WebhookProcessingService {
             return;
         }
 
-        User business = businessOpt.get();
-
-        if (value.getMessages() != null) {
-            for (WhatsAppWebhookPayload.Message message : value.getMessages()) {
-                processMessage(business, value, message);
-            }
-        }
-
-        if (value.getStatuses() != null) {
-            for (WhatsAppWebhookPayload.Status status : value.getStatuses()) {
-                processStatusUpdate(business, status);
-            }
-        }
+        processMessage(tenantOpt.get(), contact, message, completion);
     }
 
     /**
-     * Process message with transactional boundary
+     * Process message with transactional boundary. The delivery's {@code completion} is held
+     * until the AI turn answering the message has run.
      */
     @Transactional
-    public void processMessage(User business, WhatsAppWebhookPayload.Value value, WhatsAppWebhookPayload.Message message) {
+    public void processMessage(TenantDescriptor tenant, WhatsAppWebhookPayload.Contact contact,
+                               WhatsAppWebhookPayload.Message message, WebhookCompletion completion) {
         try {
             String customerPhone = message.getFrom();
             String messageId = message.getId();
 
-            if (conversationService.isMessageProcessed(messageId)) {
+            MessageDedupeFilter.Verdict verdict = dedupeFilter.check(messageId);
+            if (verdict == MessageDedupeFilter.Verdict.DUPLICATE) {
                 log.debug("Skipping duplicate message: {}", messageId);
                 return;
             }
+            if (verdict == MessageDedupeFilter.Verdict.POSSIBLE_DUPLICATE) {
+                if (conversationService.isMessageProcessed(messageId)) {
+                    log.debug("Skipping duplicate message: {}", messageId);
+                    dedupeFilter.record(messageId);
+                    return;
+                }
+                dedupeFilter.recordFalsePositive();
+            }
 
             String customerName = null;
             String customerWhatsappId = null;
-            if (value.getContacts() != null && !value.getContacts().isEmpty()) {
-                WhatsAppWebhookPayload.Contact contact = value.getContacts().get(0);
+            if (contact != null) {
                 if (contact.getProfile() != null) {
                     customerName = contact.getProfile().getName();
                 }
@@ -119,33 +152,88 @@ public class WebhookProcessingService {
             }
 
             Conversation conversation = conversationService.getOrCreateConversation(
-                    business, customerPhone, customerName, customerWhatsappId
+                    tenant.getBusinessId(), customerPhone, customerName, customerWhatsappId
             );
 
             ConversationMessage savedMessage = conversationService.saveInboundMessage(conversation, message);
+            dedupeFilter.record(messageId);
             if (savedMessage == null) {
+                // Stored before, e.g. by a run that stopped before answering it: make sure a turn
+                // still answers it. The turn does nothing if it was already answered.
+                if (!conversation.getIsHandedOff()) {
+                    UUID conversationId = conversation.getId();
+                    burstCoalescer.schedule(tenant.getPhoneNumberId(), customerPhone, conversationId, completion,
+                            () -> processAiTurn(tenant.getBusinessId(), conversationId));
+                }
                 return;
             }
 
             log.info("Received message from {} for business {}: {}",
-                    customerPhone, business.getBusinessName(), savedMessage.getContent());
+                    customerPhone, tenant.getBusinessName(), savedMessage.getContent());
 
-            String phoneNumberId = whatsAppService.getPhoneNumberId(business);
-            String accessToken = whatsAppService.getAccessToken(business);
-            whatsAppService.markAsRead(phoneNumberId, accessToken, messageId);
+            // Sent later, once per conversation for the newest message of the burst
+            String phoneNumberId = tenant.getPhoneNumberId();
+            readReceiptCoalescer.markAsRead(conversation.getId(), phoneNumberId, tenant.getAccessToken(),
+                    messageId, message.getTimestamp());
 
             if (conversation.getIsHandedOff()) {
                 log.debug("Conversation {} is handed off, skipping AI response", conversation.getId());
                 return;
             }
 
-            List<ConversationMessage> recentMessages = conversationService.getRecentMessages(conversation.getId(), 10);
+            // Debounce: messages sent in quick succession are answered together in one AI turn
+            UUID conversationId = conversation.getId();
+            burstCoalescer.schedule(phoneNumberId, customerPhone, conversationId, completion,
+                    () -> processAiTurn(tenant.getBusinessId(), conversationId));
+
+        } catch (Exception e) {
+            log.error("Error processing message from {}: {}", message.getFrom(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs on the conversation's lane once the customer's burst has settled: answers every
+     * inbound message received since the last reply with a single AI response.
+     */
+    private void processAiTurn(UUID businessId, UUID conversationId) {
+        try {
+            Optional<Conversation> conversationOpt = conversationService.getConversation(conversationId);
+            if (conversationOpt.isEmpty()) {
+                return;
+            }
+            Conversation conversation = conversationOpt.get();
+
+            if (conversation.getIsHandedOff()) {
+                log.debug("Conversation {} is handed off, skipping AI response", conversationId);
+                return;
+            }
+
+            ConversationService.InboundBurst burst = conversationService.getUnansweredBurst(
+                    conversationId, claudeConfig.getHistory().getMaxMessages(),
+                    webhookConfig.getCoalescing().getMaxBurstMessages());
+            if (burst.isEmpty()) {
+                log.debug("No unanswered messages for conversation {}, skipping AI turn", conversationId);
+                return;
+            }
+            if (burst.getMessages().size() > 1) {
+                log.info("Answering {} coalesced messages for conversation {}", burst.getMessages().size(), conversationId);
+            }
+
+            Optional<TenantDescriptor> tenantOpt = tenantDirectory.get(businessId);
+            if (tenantOpt.isEmpty()) {
+                log.warn("Business {} no longer exists, skipping AI turn", businessId);
+                return;
+            }
+            String phoneNumberId = tenantOpt.get().getPhoneNumberId();
 
             // Generate AI response - this is where cart operations happen
             AISalesAgentService.AIResponse aiResult = aiSalesAgentService.generateResponse(
-                    conversation, savedMessage.getContent(), recentMessages
+                    conversation, burst.getMergedContent(), burst.getHistory()
             );
 
+            // One write for all cart and state changes of the turn, before anything else reads the row
+            stateMachine.flushOrderContext(conversation);
+
             String aiResponse = aiResult.getMessage();
 
             if (aiResult.isShouldHandoff()) {
@@ -170,27 +258,11 @@ public class WebhookProcessingService {
                 }
             }
 
-            // Send response via WhatsApp
-            WhatsAppSendResponse sendResponse = whatsAppService.sendTextMessage(
-                    phoneNumberId, accessToken, customerPhone, aiResponse
-            );
-
-            if (sendResponse != null) {
-                conversationService.saveOutboundMessage(
-                        conversation,
-                        aiResponse,
-                        "text",
-                        sendResponse.getFirstMessageId()
-                );
-            }
+            // Save the reply and queue it for sending in one transaction; the outbox sends it
+            conversationService.queueOutboundText(conversation, phoneNumberId, aiResponse);
 
         } catch (Exception e) {
-            log.error("Error processing message from {}: {}", message.getFrom(), e.getMessage(), e);
+            log.error("Error running AI turn for conversation {}: {}", conversationId, e.getMessage(), e);
         }
     }
-
-    private void processStatusUpdate(User business, WhatsAppWebhookPayload.Status status) {
-        log.debug("Message {} status: {} for recipient {}",
-                status.getId(), status.getStatus(), status.getRecipientId());
-    }
 }
@@ -6,7 +6,6 @@ import com.invoiceng.dto.request.CreateWhatsAppOrderRequest;
 import com.invoiceng.dto.request.UpdateWhatsAppOrderRequest;
 import com.invoiceng.dto.response.PaginatedResponse;
 import com.invoiceng.dto.response.WhatsAppOrderResponse;
-import com.invoiceng.dto.whatsapp.WhatsAppSendResponse;
 import com.invoiceng.entity.Conversation;
 import com.invoiceng.entity.ConversationState;
 import com.invoiceng.entity.User;
@@ -420,24 +419,9 @@ public class WhatsAppOrderService {
 
             // Build and send payment message
             String paymentMessage = buildPaymentMessage(order, context, paymentLink);
+            // Queued with the order, so the link is only sent if the order commits
             String phoneNumberId = whatsAppService.getPhoneNumberId(business);
-            String accessToken = whatsAppService.getAccessToken(business);
-
-            WhatsAppSendResponse sendResponse = whatsAppService.sendTextMessage(
-                    phoneNumberId,
-                    accessToken,
-                    conversation.getCustomerPhone(),
-                    paymentMessage
-            );
-
-            if (sendResponse != null) {
-                conversationService.saveOutboundMessage(
-                        conversation,
-                        paymentMessage,
-                        "text",
-                        sendResponse.getFirstMessageId()
-                );
-            }
+            conversationService.queueOutboundText(conversation, phoneNumberId, paymentMessage);
 
             log.info("Created order {} from conversation {} and sent payment link",
                     order.getOrderNumber(), conversation.getId());
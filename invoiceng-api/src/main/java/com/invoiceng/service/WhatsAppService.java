@@ -1,18 +1,26 @@
 package com.invoiceng.service;
 
+import com.invoiceng.config.HttpClientFactory;
 import com.invoiceng.config.WhatsAppConfig;
 import com.invoiceng.dto.whatsapp.WhatsAppSendRequest;
 import com.invoiceng.dto.whatsapp.WhatsAppSendResponse;
 import com.invoiceng.entity.User;
 import com.invoiceng.exception.WhatsAppException;
+import com.invoiceng.service.outbound.OutboundConcurrencyLimiter;
+import com.invoiceng.service.outbound.PhoneNumberRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -22,31 +30,39 @@ import java.util.Map;
 public class WhatsAppService {
 
     private final WhatsAppConfig whatsAppConfig;
-    private final WebClient.Builder webClientBuilder;
+    private final HttpClientFactory httpClientFactory;
+    private final PhoneNumberRateLimiter rateLimiter;
+    private final OutboundConcurrencyLimiter concurrencyLimiter;
+    private final MeterRegistry meterRegistry;
     private WebClient webClient;
 
+    private Counter sent;
+    private Counter failed;
+    private Counter retries;
+
     @PostConstruct
     public void init() {
-        this.webClient = webClientBuilder
+        this.webClient = httpClientFactory.webClientBuilder(HttpClientFactory.Provider.GRAPH_API)
                 .baseUrl(whatsAppConfig.getBaseUrl())
                 .defaultHeader("Content-Type", "application/json")
                 .build();
+
+        sent = Counter.builder("whatsapp.outbound.sends").tag("result", "sent")
+                .description("WhatsApp messages accepted by the Graph API")
+                .register(meterRegistry);
+        failed = Counter.builder("whatsapp.outbound.sends").tag("result", "failed")
+                .description("WhatsApp messages that could not be sent")
+                .register(meterRegistry);
+        retries = Counter.builder("whatsapp.outbound.retries")
+                .description("WhatsApp sends retried after a 429 or 5xx response")
+                .register(meterRegistry);
     }
 
     /**
      * Send a text message via WhatsApp
      */
     public WhatsAppSendResponse sendTextMessage(String phoneNumberId, String accessToken, String recipientPhone, String text) {
-        WhatsAppSendRequest request = WhatsAppSendRequest.builder()
-                .to(recipientPhone)
-                .type("text")
-                .text(WhatsAppSendRequest.TextContent.builder()
-                        .body(text)
-                        .previewUrl(true)
-                        .build())
-                .build();
-
-        return sendMessage(phoneNumberId, accessToken, request);
+        return sendMessage(phoneNumberId, accessToken, WhatsAppSendRequest.textMessage(recipientPhone, text));
     }
 
     /**
@@ -193,58 +209,128 @@ public class WhatsAppService {
     }
 
     /**
-     * Send a generic message request
+     * Send a text message via WhatsApp without blocking the caller
+     */
+    public Mono<WhatsAppSendResponse> sendTextMessageAsync(String phoneNumberId, String accessToken,
+                                                           String recipientPhone, String text) {
+        return sendMessageAsync(phoneNumberId, accessToken, WhatsAppSendRequest.textMessage(recipientPhone, text));
+    }
+
+    /**
+     * Send a generic message request, blocking until the Graph API answers.
+     * Prefer {@link #sendMessageAsync} on request and lane threads.
      */
     public WhatsAppSendResponse sendMessage(String phoneNumberId, String accessToken, WhatsAppSendRequest request) {
-        try {
-            log.info("Sending WhatsApp message to: {}", request.getTo());
-
-            WhatsAppSendResponse response = webClient.post()
-                    .uri("/{version}/{phoneNumberId}/messages", whatsAppConfig.getApiVersion(), phoneNumberId)
-                    .header("Authorization", "Bearer " + accessToken)
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(WhatsAppSendResponse.class)
-                    .block();
-
-            log.info("WhatsApp message sent successfully, messageId: {}",
-                    response != null ? response.getFirstMessageId() : "unknown");
-
-            return response;
-
-        } catch (WebClientResponseException e) {
-            log.error("WhatsApp API error: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
-            throw new WhatsAppException("Failed to send WhatsApp message: " + e.getMessage(), e);
-        } catch (Exception e) {
-            log.error("Failed to send WhatsApp message", e);
-            throw new WhatsAppException("Failed to send WhatsApp message", e);
-        }
+        return sendMessageAsync(phoneNumberId, accessToken, request).block();
+    }
+
+    /**
+     * Send a generic message request.
+     *
+     * The call waits for a token from the phone number's rate limiter and a free slot in the
+     * shared concurrency limit, neither of which holds a thread. 429 and 5xx responses are
+     * retried with jittered exponential backoff; every failure surfaces as a {@link WhatsAppException}.
+     */
+    public Mono<WhatsAppSendResponse> sendMessageAsync(String phoneNumberId, String accessToken,
+                                                       WhatsAppSendRequest request) {
+        return send(phoneNumberId, accessToken, request.getTo(), request);
+    }
+
+    /**
+     * Send an already serialized message request, e.g. one stored in the outbox.
+     * Same pipeline and error handling as {@link #sendMessageAsync}.
+     */
+    public Mono<WhatsAppSendResponse> sendPayloadAsync(String phoneNumberId, String accessToken,
+                                                       String recipientPhone, String payloadJson) {
+        return send(phoneNumberId, accessToken, recipientPhone, payloadJson);
+    }
+
+    private Mono<WhatsAppSendResponse> send(String phoneNumberId, String accessToken, String recipientPhone, Object body) {
+        WhatsAppConfig.Outbound settings = whatsAppConfig.getOutbound();
+
+        return callGraphApi(phoneNumberId, accessToken, body, WhatsAppSendResponse.class)
+                .retryWhen(retryPolicy(settings))
+                .doOnSubscribe(s -> log.info("Sending WhatsApp message to: {}", recipientPhone))
+                .doOnNext(response -> {
+                    sent.increment();
+                    log.info("WhatsApp message sent successfully, messageId: {}", response.getFirstMessageId());
+                })
+                .onErrorMap(e -> !(e instanceof WhatsAppException), this::toWhatsAppException)
+                .doOnError(e -> failed.increment());
     }
 
     /**
      * Mark a message as read
      */
     public void markAsRead(String phoneNumberId, String accessToken, String messageId) {
-        try {
-            Map<String, Object> request = Map.of(
-                    "messaging_product", "whatsapp",
-                    "status", "read",
-                    "message_id", messageId
-            );
-
-            webClient.post()
-                    .uri("/{version}/{phoneNumberId}/messages", whatsAppConfig.getApiVersion(), phoneNumberId)
-                    .header("Authorization", "Bearer " + accessToken)
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .block();
-
-            log.debug("Marked message {} as read", messageId);
-
-        } catch (Exception e) {
-            log.warn("Failed to mark message as read: {}", e.getMessage());
+        markAsReadAsync(phoneNumberId, accessToken, messageId).block();
+    }
+
+    /**
+     * Mark a message as read. Failures are logged and swallowed: a missing blue tick is
+     * not worth failing the conversation turn over.
+     */
+    public Mono<Void> markAsReadAsync(String phoneNumberId, String accessToken, String messageId) {
+        Map<String, Object> request = Map.of(
+                "messaging_product", "whatsapp",
+                "status", "read",
+                "message_id", messageId
+        );
+
+        return callGraphApi(phoneNumberId, accessToken, request, Map.class)
+                .doOnNext(response -> log.debug("Marked message {} as read", messageId))
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Failed to mark message as read: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * One attempt at a Graph API messages call, gated by the per-number token bucket and
+     * the shared concurrency limit.
+     */
+    private <T> Mono<T> callGraphApi(String phoneNumberId, String accessToken, Object body, Class<T> responseType) {
+        Mono<T> call = webClient.post()
+                .uri("/{version}/{phoneNumberId}/messages", whatsAppConfig.getApiVersion(), phoneNumberId)
+                .header("Authorization", "Bearer " + accessToken)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(responseType);
+
+        return rateLimiter.acquire(phoneNumberId)
+                .then(concurrencyLimiter.run(call));
+    }
+
+    private Retry retryPolicy(WhatsAppConfig.Outbound settings) {
+        return Retry.backoff(settings.getMaxRetries(), Duration.ofMillis(settings.getRetryMinBackoffMs()))
+                .maxBackoff(Duration.ofMillis(settings.getRetryMaxBackoffMs()))
+                .jitter(0.5)
+                .filter(WhatsAppService::isRetryable)
+                .doBeforeRetry(signal -> {
+                    retries.increment();
+                    log.warn("Retrying WhatsApp send (attempt {}): {}",
+                            signal.totalRetries() + 1, signal.failure().getMessage());
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            int status = responseException.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return false;
+    }
+
+    private WhatsAppException toWhatsAppException(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            log.error("WhatsApp API error: {} - {}", responseException.getStatusCode(),
+                    responseException.getResponseBodyAsString());
+            return new WhatsAppException("Failed to send WhatsApp message: " + e.getMessage(), e);
         }
+        log.error("Failed to send WhatsApp message", e);
+        return new WhatsAppException("Failed to send WhatsApp message", e);
     }
 
     /**
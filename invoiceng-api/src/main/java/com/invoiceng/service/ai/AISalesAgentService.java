@@ -1,12 +1,18 @@
 package com.invoiceng.service.ai;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.dto.CartItem;
 import com.invoiceng.dto.OrderContext;
 import com.invoiceng.entity.*;
-import com.invoiceng.repository.ProductRepository;
-import com.invoiceng.repository.UserRepository;
-import com.invoiceng.service.AgentConfigService;
 import com.invoiceng.service.ConversationStateMachine;
+import com.invoiceng.service.tenant.CatalogProduct;
+import com.invoiceng.service.tenant.ProductCatalog;
+import com.invoiceng.service.tenant.TenantDescriptor;
+import com.invoiceng.service.tenant.TenantDirectory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +22,7 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -26,11 +33,21 @@ import java.util.stream.Collectors;
 public class AISalesAgentService {
 
     private final ClaudeService claudeService;
-    private final ProductRepository productRepository;
-    private final UserRepository userRepository;
-    private final AgentConfigService agentConfigService;
+    private final ProductCatalog productCatalog;
+    private final SystemPromptCache systemPromptCache;
+    private final ConversationHistoryAssembler historyAssembler;
+    private final IntentFastPath intentFastPath;
+    private final ModelRouter modelRouter;
+    private final AiCreditLedger creditLedger;
+    private final TenantDirectory tenantDirectory;
     private final ConversationStateMachine stateMachine;
     private final ObjectMapper objectMapper;
+    private final ClaudeConfig claudeConfig;
+    private final MeterRegistry meterRegistry;
+
+    private Timer firstTokenTimer;
+    private Timer firstActionTimer;
+    private Timer completeTimer;
 
     // Patterns for extracting actions from AI response
     private static final Pattern ADD_TO_CART_PATTERN = Pattern.compile(
@@ -58,118 +75,143 @@ public class AISalesAgentService {
             Pattern.CASE_INSENSITIVE
     );
 
-    public AIResponse generateResponse(Conversation conversation, String customerMessage, List<ConversationMessage> recentMessages) {
-        // Re-fetch business entity to avoid LazyInitializationException in async context
+    @PostConstruct
+    public void init() {
+        firstTokenTimer = Timer.builder("claude.response.first.token")
+                .description("Time from sending a streamed request to the first text delta")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        firstActionTimer = Timer.builder("claude.response.first.action")
+                .description("Time from sending a streamed request to the first complete action tag")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        completeTimer = Timer.builder("claude.response.complete")
+                .description("Time from sending a streamed request to the end of the response")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public AIResponse generateResponse(Conversation conversation, String customerMessage, List<ConversationMessage> history) {
+        // Tenant metadata comes from the in-memory directory; the conversation's business is a lazy proxy
         UUID businessId = conversation.getBusiness().getId();
-        User business = userRepository.findById(businessId)
+        TenantDescriptor tenant = tenantDirectory.get(businessId)
                 .orElseThrow(() -> new RuntimeException("Business not found: " + businessId));
-        AgentConfig config = agentConfigService.getAgentConfigEntity(businessId);
+        AgentConfig config = tenant.getAgentConfig();
         ConversationState currentState = ConversationState.fromValue(conversation.getState());
         OrderContext orderContext = stateMachine.getOrderContext(conversation);
 
+        // Trivial turns ("hi", "thanks", "cart"...) can be answered without the model
+        IntentFastPath.Intent localIntent = intentFastPath.classify(customerMessage, currentState, orderContext);
+        if (localIntent != null && intentFastPath.isAnsweringEnabled(tenant)) {
+            return intentFastPath.answer(localIntent, conversation, config, orderContext, customerMessage);
+        }
+
         // Check if Claude is configured
         if (!claudeService.isConfigured()) {
             log.warn("Claude API not configured, using fallback response");
             return generateFallbackResponse(conversation, businessId, customerMessage, config, orderContext);
         }
 
+        // Tenants out of AI credits are answered by the fallback responder
+        int credits = ClaudeCall.Operation.SALES_REPLY.getCredits();
+        if (!creditLedger.tryConsume(businessId, credits)) {
+            log.info("Business {} is out of AI credits, using fallback response", businessId);
+            return generateFallbackResponse(conversation, businessId, customerMessage, config, orderContext);
+        }
+
         try {
             // Build context for Claude with state and cart info
-            String systemPrompt = buildSystemPrompt(business, config, currentState, orderContext);
-            List<ClaudeService.Message> messages = buildMessageHistory(recentMessages, customerMessage);
-
-            // Get AI response
-            String aiResponse = claudeService.chat(systemPrompt, messages);
+            ConversationHistoryAssembler.AssembledHistory assembled =
+                    historyAssembler.assemble(conversation, history, customerMessage);
+            List<ClaudeService.Message> messages = assembled.messages();
+            ClaudeService.SystemPrompt systemPrompt = buildSystemPrompt(tenant, currentState, orderContext,
+                    assembled.summary(), catalogQuery(customerMessage, orderContext, messages));
+            ModelRouter.Route route = modelRouter.route(tenant, currentState, orderContext, customerMessage);
+            log.debug("Routing turn of conversation {} to {} ({})", conversation.getId(), route.model(), route.reason());
+
+            // Get AI response, applying embedded actions to the cart as they are detected
+            ActionExecution execution = new ActionExecution(stateMachine.openCartBatch(conversation, orderContext));
+            ClaudeCall call = ClaudeCall.salesReply(businessId, conversation.getId());
+            if (claudeConfig.getStreaming().isEnabled()) {
+                streamAndExecute(call, route.model(), systemPrompt, messages, execution);
+            } else {
+                String aiResponse = claudeService.chat(call, route.model(), systemPrompt, messages);
+                if (aiResponse != null) {
+                    execution.detector.append(aiResponse).forEach(tag -> executeAction(tag, execution));
+                }
+            }
 
-            if (aiResponse == null || aiResponse.isBlank()) {
+            if (execution.detector.getText().isBlank()) {
+                creditLedger.refund(businessId, credits);
                 return generateFallbackResponse(conversation, businessId, customerMessage, config, orderContext);
             }
 
-            // Parse response and execute any embedded actions
-            return parseAndExecuteResponse(aiResponse, conversation, orderContext);
+            // One save of the cart and state for all of the turn's actions
+            execution.cart.commit();
+            AIResponse response = buildResponse(execution);
+            if (localIntent != null) {
+                intentFastPath.recordShadow(localIntent, response);
+            }
+            return response;
 
         } catch (Exception e) {
             log.error("Error generating AI response: {}", e.getMessage(), e);
-            return generateFallbackResponse(conversation, businessId, customerMessage, config, orderContext);
+            creditLedger.refund(businessId, credits);
+            // Actions already applied to the live cart were not committed; start again from the committed one
+            return generateFallbackResponse(conversation, businessId, customerMessage, config,
+                    stateMachine.resetOrderContext(conversation));
         }
     }
 
-    private String buildSystemPrompt(User business, AgentConfig config, ConversationState state, OrderContext orderContext) {
-        StringBuilder prompt = new StringBuilder();
-
-        // Agent identity and personality
-        String agentName = config != null && config.getAgentName() != null ?
-                config.getAgentName() : "Ayo";
-        String businessName = business.getBusinessName() != null ?
-                business.getBusinessName() : "our store";
-
-        prompt.append("You are ").append(agentName).append(", a friendly WhatsApp sales assistant for ")
-                .append(businessName).append(" in Nigeria. You're warm, helpful, and great at closing sales.\n\n");
-
-        // Core behavior rules - CRITICAL
-        prompt.append("CRITICAL RULES:\n");
-        prompt.append("1. Keep responses SHORT (1-2 sentences max). WhatsApp users hate long messages.\n");
-        prompt.append("2. Be conversational and warm - use light Nigerian English flavor.\n");
-        prompt.append("3. Always guide toward a purchase - ask if they want to order, offer help.\n");
-        prompt.append("4. NEVER invent products or prices not in your catalog.\n");
-        prompt.append("5. Use emojis sparingly (1-2 max per message).\n");
-        prompt.append("6. NEVER invent or fabricate bank account details, payment info, or any business information not provided below.\n");
-        prompt.append("7. For payments: ONLY tell customers 'I'll send you a payment link shortly' - NEVER provide manual bank transfer details.\n\n");
-
-        // Available products - IMPORTANT
-        List<Product> products = productRepository.findByBusinessIdAndStatusOrderByNameAsc(business.getId(), "active");
-        if (!products.isEmpty()) {
-            prompt.append("YOUR PRODUCTS:\n");
-            for (Product p : products) {
-                prompt.append("• ").append(p.getName());
-                prompt.append(" - ₦").append(p.getPrice().setScale(0, RoundingMode.HALF_UP).toPlainString());
-                if (Boolean.TRUE.equals(p.getTrackInventory()) && p.getQuantity() != null) {
-                    if (p.getQuantity() <= 0) {
-                        prompt.append(" [SOLD OUT]");
-                    } else if (p.getQuantity() < 5) {
-                        prompt.append(" [Only ").append(p.getQuantity()).append(" left!]");
-                    }
-                }
-                prompt.append("\n");
-            }
-            prompt.append("\n");
+    /**
+     * Static tenant prefix from the cache plus the per-turn products, cart and state guidance.
+     */
+    private ClaudeService.SystemPrompt buildSystemPrompt(TenantDescriptor tenant, ConversationState state,
+                                                         OrderContext orderContext, String historySummary,
+                                                         String catalogQuery) {
+        StringBuilder dynamic = new StringBuilder();
+
+        // Products relevant to this turn, when the catalog is too large for the static prefix
+        String relevantProducts = systemPromptCache.getRelevantProducts(tenant, catalogQuery);
+        if (relevantProducts != null) {
+            dynamic.append(relevantProducts).append("\n");
+        }
+
+        // Earlier turns that no longer fit the message history
+        if (historySummary != null) {
+            dynamic.append("EARLIER IN THIS CONVERSATION: ").append(historySummary).append("\n\n");
         }
 
         // Current order context
         if (!orderContext.isEmpty()) {
-            prompt.append("CUSTOMER'S CART: ").append(orderContext.getCartSummary()).append("\n");
+            dynamic.append("CUSTOMER'S CART: ").append(orderContext.getCartSummary()).append("\n");
             if (orderContext.getDeliveryAddress() != null) {
-                prompt.append("Delivery to: ").append(orderContext.getDeliveryAddress()).append("\n");
+                dynamic.append("Delivery to: ").append(orderContext.getDeliveryAddress()).append("\n");
             }
-            prompt.append("\n");
+            dynamic.append("\n");
         }
 
-        // Delivery info
-        String dispatchTime = config != null && config.getDispatchTime() != null ?
-                config.getDispatchTime() : "24-48 hours";
-        BigDecimal deliveryFee = config != null && config.getDefaultDeliveryFee() != null ?
-                config.getDefaultDeliveryFee() : BigDecimal.valueOf(1500);
-        prompt.append("DELIVERY: ₦").append(deliveryFee.setScale(0, RoundingMode.HALF_UP).toPlainString());
-        prompt.append(" fee, ships within ").append(dispatchTime).append("\n\n");
-
-        // Action commands
-        prompt.append("ACTIONS (include in your response when appropriate):\n");
-        prompt.append("[ADD_TO_CART: \"exact product name\", quantity] - when customer wants to buy\n");
-        prompt.append("[SET_ADDRESS: \"full address\"] - when customer gives address\n");
-        prompt.append("[CONFIRM_ORDER] - when customer says yes/confirm/proceed\n");
-        prompt.append("[HANDOFF: \"reason\"] - only for complex issues needing human help\n\n");
-
         // State-specific guidance
-        prompt.append("CURRENT SITUATION: ").append(getStateGuidance(state, orderContext)).append("\n\n");
+        dynamic.append("CURRENT SITUATION: ").append(getStateGuidance(state, orderContext)).append("\n");
 
-        // Example responses for quality
-        prompt.append("EXAMPLE GOOD RESPONSES:\n");
-        prompt.append("• Greeting: \"Hi! 👋 Welcome to ").append(businessName).append("! What can I help you find today?\"\n");
-        prompt.append("• Product inquiry: \"Yes! Our [Product] is ₦X. Very popular! Want me to add it to your cart?\"\n");
-        prompt.append("• After adding to cart: \"Added! ✓ Anything else, or should we proceed to checkout?\"\n");
-        prompt.append("• Asking for address: \"Great! Where should we deliver? Please share your full address.\"\n");
+        return new ClaudeService.SystemPrompt(systemPromptCache.getStaticPrompt(tenant), dynamic.toString());
+    }
 
-        return prompt.toString();
+    /**
+     * Text the relevant products are retrieved for: the new message, what is already in the
+     * cart and the last few messages, so "I'll take it" still finds the product just discussed.
+     */
+    private String catalogQuery(String customerMessage, OrderContext orderContext,
+                                List<ClaudeService.Message> messages) {
+        StringBuilder query = new StringBuilder(customerMessage != null ? customerMessage : "");
+        for (CartItem item : orderContext.getItems()) {
+            query.append(' ').append(item.getProductName());
+        }
+        int recent = claudeConfig.getCatalog().getRecentMessages();
+        for (int i = Math.max(0, messages.size() - recent); i < messages.size(); i++) {
+            query.append(' ').append(messages.get(i).getContent());
+        }
+        return query.toString();
     }
 
     private String getStateGuidance(ConversationState state, OrderContext orderContext) {
@@ -191,112 +233,160 @@ public class AISalesAgentService {
         }
     }
 
-    private List<ClaudeService.Message> buildMessageHistory(List<ConversationMessage> recentMessages, String currentMessage) {
-        List<ClaudeService.Message> messages = new ArrayList<>();
-
-        for (ConversationMessage msg : recentMessages) {
-            if ("inbound".equals(msg.getDirection())) {
-                messages.add(ClaudeService.Message.user(msg.getContent()));
-            } else {
-                messages.add(ClaudeService.Message.assistant(msg.getContent()));
+    /**
+     * Stream the completion and run each action as soon as its tag is complete, so cart
+     * changes and order confirmation overlap with the rest of the generation.
+     */
+    private void streamAndExecute(ClaudeCall call, String model, ClaudeService.SystemPrompt systemPrompt,
+                                  List<ClaudeService.Message> messages, ActionExecution execution) {
+        long start = System.nanoTime();
+        boolean firstToken = true;
+        boolean firstAction = true;
+        StreamingActionDetector detector = execution.detector;
+
+        for (String delta : claudeService.chatStream(call, model, systemPrompt, messages).toIterable()) {
+            if (firstToken) {
+                firstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                firstToken = false;
+            }
+            for (String tag : detector.append(delta)) {
+                if (firstAction) {
+                    firstActionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    firstAction = false;
+                }
+                executeAction(tag, execution);
             }
         }
 
-        messages.add(ClaudeService.Message.user(currentMessage));
-        return messages;
+        completeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
-    private AIResponse parseAndExecuteResponse(String response, Conversation conversation, OrderContext context) {
-        AIResponse.AIResponseBuilder builder = AIResponse.builder()
-                .shouldHandoff(false);
+    /**
+     * Apply one action tag to the turn's cart batch. Only the pattern of the tag's own action
+     * is tried. Addresses, discounts and handoffs only take their first occurrence in a
+     * response, as do order confirmation and cancellation.
+     */
+    private void executeAction(String tag, ActionExecution execution) {
+        String action = StreamingActionDetector.actionName(tag);
+        if (action == null) {
+            return;
+        }
+        ConversationStateMachine.CartBatch cart = execution.cart;
 
-        String cleanedResponse = response;
-        List<String> actions = new ArrayList<>();
+        switch (action) {
+            case "ADD_TO_CART" -> {
+                Matcher matcher = ADD_TO_CART_PATTERN.matcher(tag);
+                if (!matcher.matches()) {
+                    return;
+                }
+                String productName = matcher.group(1);
+                int quantity = Integer.parseInt(matcher.group(2));
+                execution.actions.add("ADD_TO_CART:" + productName + "," + quantity);
+
+                ConversationStateMachine.CartOperationResult result = cart.addToCartByName(productName, quantity);
+                if (!result.isSuccess()) {
+                    // Include error in response
+                    execution.notes.add(result.getMessage());
+                }
+            }
+            case "SET_ADDRESS" -> {
+                Matcher matcher = SET_ADDRESS_PATTERN.matcher(tag);
+                if (!matcher.matches() || execution.addressSet) {
+                    return;
+                }
+                execution.addressSet = true;
+                String address = matcher.group(1);
+                execution.actions.add("SET_ADDRESS:" + address);
 
-        // Check for ADD_TO_CART action
-        Matcher addMatcher = ADD_TO_CART_PATTERN.matcher(response);
-        while (addMatcher.find()) {
-            String productName = addMatcher.group(1);
-            int quantity = Integer.parseInt(addMatcher.group(2));
-            actions.add("ADD_TO_CART:" + productName + "," + quantity);
-
-            ConversationStateMachine.CartOperationResult result = stateMachine.addToCartByName(
-                    conversation, productName, quantity
-            );
-            if (!result.isSuccess()) {
-                // Include error in response
-                cleanedResponse = cleanedResponse.replace(addMatcher.group(), "") + "\n" + result.getMessage();
+                ConversationStateMachine.CartOperationResult result = cart.setDeliveryAddress(address, null);
+                if (result.getNewState() != null) {
+                    execution.builder.suggestedState(result.getNewState().getValue());
+                }
             }
-            context = result.getOrderContext() != null ? result.getOrderContext() : context;
-        }
-        cleanedResponse = ADD_TO_CART_PATTERN.matcher(cleanedResponse).replaceAll("");
-
-        // Check for SET_ADDRESS action
-        Matcher addressMatcher = SET_ADDRESS_PATTERN.matcher(response);
-        if (addressMatcher.find()) {
-            String address = addressMatcher.group(1);
-            actions.add("SET_ADDRESS:" + address);
-
-            ConversationStateMachine.CartOperationResult result = stateMachine.setDeliveryAddress(
-                    conversation, address, null
-            );
-            context = result.getOrderContext() != null ? result.getOrderContext() : context;
-            if (result.getNewState() != null) {
-                builder.suggestedState(result.getNewState().getValue());
+            case "CONFIRM_ORDER" -> {
+                if (!CONFIRM_ORDER_PATTERN.matcher(tag).matches() || execution.confirmed) {
+                    return;
+                }
+                execution.confirmed = true;
+                execution.actions.add("CONFIRM_ORDER");
+                ConversationStateMachine.CartOperationResult result = cart.confirmOrder();
+                if (result.isRequiresPaymentLink()) {
+                    execution.builder.requiresPaymentLink(true);
+                }
+                if (result.getNewState() != null) {
+                    execution.builder.suggestedState(result.getNewState().getValue());
+                }
             }
-        }
-        cleanedResponse = SET_ADDRESS_PATTERN.matcher(cleanedResponse).replaceAll("");
-
-        // Check for CONFIRM_ORDER action
-        if (CONFIRM_ORDER_PATTERN.matcher(response).find()) {
-            actions.add("CONFIRM_ORDER");
-            ConversationStateMachine.CartOperationResult result = stateMachine.confirmOrder(conversation);
-            if (result.isRequiresPaymentLink()) {
-                builder.requiresPaymentLink(true);
+            case "CANCEL_ORDER" -> {
+                if (!CANCEL_ORDER_PATTERN.matcher(tag).matches() || execution.cancelled) {
+                    return;
+                }
+                execution.cancelled = true;
+                execution.actions.add("CANCEL_ORDER");
+                cart.cancelOrder();
+                execution.builder.suggestedState(ConversationState.BROWSING.getValue());
             }
-            if (result.getNewState() != null) {
-                builder.suggestedState(result.getNewState().getValue());
+            case "APPLY_DISCOUNT" -> {
+                Matcher matcher = APPLY_DISCOUNT_PATTERN.matcher(tag);
+                if (!matcher.matches() || execution.discounted) {
+                    return;
+                }
+                execution.discounted = true;
+                int discount = Integer.parseInt(matcher.group(1));
+                execution.actions.add("APPLY_DISCOUNT:" + discount);
+                if (!cart.getContext().isEmpty()) {
+                    int lastIndex = cart.getContext().getItems().size() - 1;
+                    cart.applyDiscount(lastIndex, BigDecimal.valueOf(discount));
+                }
             }
-        }
-        cleanedResponse = CONFIRM_ORDER_PATTERN.matcher(cleanedResponse).replaceAll("");
-
-        // Check for CANCEL_ORDER action
-        if (CANCEL_ORDER_PATTERN.matcher(response).find()) {
-            actions.add("CANCEL_ORDER");
-            stateMachine.cancelOrder(conversation);
-            builder.suggestedState(ConversationState.BROWSING.getValue());
-        }
-        cleanedResponse = CANCEL_ORDER_PATTERN.matcher(cleanedResponse).replaceAll("");
-
-        // Check for APPLY_DISCOUNT action
-        Matcher discountMatcher = APPLY_DISCOUNT_PATTERN.matcher(response);
-        if (discountMatcher.find()) {
-            int discount = Integer.parseInt(discountMatcher.group(1));
-            actions.add("APPLY_DISCOUNT:" + discount);
-            if (!context.isEmpty()) {
-                int lastIndex = context.getItems().size() - 1;
-                stateMachine.applyDiscount(conversation, lastIndex, BigDecimal.valueOf(discount));
+            case "HANDOFF" -> {
+                Matcher matcher = HANDOFF_PATTERN.matcher(tag);
+                if (!matcher.matches() || execution.handedOff) {
+                    return;
+                }
+                execution.handedOff = true;
+                String reason = matcher.group(1);
+                execution.builder.shouldHandoff(true);
+                execution.builder.handoffReason(reason != null ? reason : "Customer requested human assistance");
             }
+            default -> { }
         }
-        cleanedResponse = APPLY_DISCOUNT_PATTERN.matcher(cleanedResponse).replaceAll("");
-
-        // Check for HANDOFF action
-        Matcher handoffMatcher = HANDOFF_PATTERN.matcher(response);
-        if (handoffMatcher.find()) {
-            String reason = handoffMatcher.group(1);
-            builder.shouldHandoff(true);
-            builder.handoffReason(reason != null ? reason : "Customer requested human assistance");
-        }
-        cleanedResponse = HANDOFF_PATTERN.matcher(cleanedResponse).replaceAll("");
+    }
 
-        // Clean up response
-        cleanedResponse = cleanedResponse.trim().replaceAll("\\s+", " ");
+    /**
+     * The model output without its action tags, plus the outcome of the executed actions.
+     */
+    private AIResponse buildResponse(ActionExecution execution) {
+        StringBuilder cleanedResponse = new StringBuilder(execution.detector.getTextWithoutTags());
+        for (String note : execution.notes) {
+            cleanedResponse.append("\n").append(note);
+        }
 
-        builder.message(cleanedResponse);
-        builder.executedActions(actions);
-        builder.orderContext(context);
+        return execution.builder
+                .message(cleanedResponse.toString().trim().replaceAll("\\s+", " "))
+                .executedActions(execution.actions)
+                .orderContext(execution.cart.getContext())
+                .build();
+    }
 
-        return builder.build();
+    /**
+     * Outcome of the actions executed so far for one response.
+     */
+    private static class ActionExecution {
+        private final ConversationStateMachine.CartBatch cart;
+        private final StreamingActionDetector detector = new StreamingActionDetector();
+        private final AIResponse.AIResponseBuilder builder = AIResponse.builder().shouldHandoff(false);
+        private final List<String> actions = new ArrayList<>();
+        private final List<String> notes = new ArrayList<>();
+        private boolean addressSet;
+        private boolean confirmed;
+        private boolean cancelled;
+        private boolean discounted;
+        private boolean handedOff;
+
+        ActionExecution(ConversationStateMachine.CartBatch cart) {
+            this.cart = cart;
+        }
     }
 
     private AIResponse generateFallbackResponse(Conversation conversation, UUID businessId, String customerMessage,
@@ -359,30 +449,26 @@ public class AISalesAgentService {
             }
 
             // Try to find matching product
-            List<Product> products = productRepository.findByBusinessIdAndStatusOrderByNameAsc(
-                    businessId, "active");
-
-            for (Product p : products) {
-                if (productQuery.toLowerCase().contains(p.getName().toLowerCase()) ||
-                        p.getName().toLowerCase().contains(productQuery.toLowerCase())) {
-                    ConversationStateMachine.CartOperationResult result = stateMachine.addToCart(
-                            conversation, p.getId(), quantity
-                    );
-                    if (result.isSuccess()) {
-                        actions.add("ADD_TO_CART:" + p.getName() + "," + quantity);
-                        String msg = result.getMessage() + "\n\n" + result.getOrderContext().getCartSummary();
-                        msg += "\n\nWould you like anything else, or should we proceed with delivery?";
-                        return AIResponse.builder()
-                                .message(msg)
-                                .executedActions(actions)
-                                .suggestedState(ConversationState.ADDING_TO_CART.getValue())
-                                .orderContext(result.getOrderContext())
-                                .build();
-                    } else {
-                        return AIResponse.builder()
-                                .message(result.getMessage())
-                                .build();
-                    }
+            Optional<CatalogProduct> match = productCatalog.get(businessId).bestMatch(productQuery);
+            if (match.isPresent()) {
+                CatalogProduct p = match.get();
+                ConversationStateMachine.CartOperationResult result = stateMachine.addToCart(
+                        conversation, p, quantity
+                );
+                if (result.isSuccess()) {
+                    actions.add("ADD_TO_CART:" + p.getName() + "," + quantity);
+                    String msg = result.getMessage() + "\n\n" + result.getOrderContext().getCartSummary();
+                    msg += "\n\nWould you like anything else, or should we proceed with delivery?";
+                    return AIResponse.builder()
+                            .message(msg)
+                            .executedActions(actions)
+                            .suggestedState(ConversationState.ADDING_TO_CART.getValue())
+                            .orderContext(result.getOrderContext())
+                            .build();
+                } else {
+                    return AIResponse.builder()
+                            .message(result.getMessage())
+                            .build();
                 }
             }
         }
@@ -393,11 +479,10 @@ public class AISalesAgentService {
                     config.getGreetingMessage() :
                     "Hello! Welcome to our store. How can I help you today?";
         } else if (lowerMessage.contains("price") || lowerMessage.contains("cost") || lowerMessage.contains("how much")) {
-            List<Product> products = productRepository.findByBusinessIdAndStatusOrderByNameAsc(
-                    businessId, "active");
+            List<CatalogProduct> products = productCatalog.get(businessId).getProducts();
             if (!products.isEmpty()) {
                 StringBuilder sb = new StringBuilder("Here are our products:\n\n");
-                for (Product p : products.subList(0, Math.min(5, products.size()))) {
+                for (CatalogProduct p : products.subList(0, Math.min(5, products.size()))) {
                     sb.append("- ").append(p.getName()).append(": NGN ")
                             .append(p.getPrice().setScale(0, RoundingMode.HALF_UP)).append("\n");
                 }
@@ -425,11 +510,10 @@ public class AISalesAgentService {
         } else if (lowerMessage.contains("thank")) {
             response = "You're welcome! Is there anything else I can help you with?";
         } else if (lowerMessage.contains("product") || lowerMessage.contains("menu") || lowerMessage.contains("list")) {
-            List<Product> products = productRepository.findByBusinessIdAndStatusOrderByNameAsc(
-                    businessId, "active");
+            List<CatalogProduct> products = productCatalog.get(businessId).getProducts();
             if (!products.isEmpty()) {
                 StringBuilder sb = new StringBuilder("Here's what we have:\n\n");
-                for (Product p : products) {
+                for (CatalogProduct p : products) {
                     sb.append("- ").append(p.getName()).append(": NGN ")
                             .append(p.getPrice().setScale(0, RoundingMode.HALF_UP)).append("\n");
                 }
@@ -0,0 +1,433 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enforces the AI credits in {@code ai_credits} without a database round trip per message.
+ *
+ * Each node leases blocks of credits for a tenant: they are moved out of
+ * {@code credits_remaining} into an {@code ai_credit_leases} row owned by the node and then
+ * spent from an in-memory counter. Only when a node's block is used up does a turn wait for
+ * the database, to lease the next one. Every flush writes the credits used since the last one
+ * to the lease and to {@code credits_used_this_month}, and renews the node's leases. Leases
+ * idle for a while, and all leases on shutdown, are returned to {@code credits_remaining}.
+ *
+ * If a node dies, its leases stop being renewed and expire; any node then returns their
+ * unused credits. Credits spent after the node's last flush are returned with them, so a
+ * crash can give a tenant up to one flush interval of free replies but never charges twice.
+ * A node that finds its own lease reclaimed (e.g. after a long database outage) drops the
+ * block and charges what it spent straight to {@code credits_remaining}.
+ *
+ * Tenants without an {@code ai_credits} row are not metered. Lookups that fail are let
+ * through, since the turn would fail on the database anyway.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AiCreditLedger {
+
+    // Takes up to one block out of credits_remaining and adds it to this node's lease
+    private static final String LEASE_SQL = "WITH g AS (" +
+            "  SELECT user_id, GREATEST(0, LEAST(credits_remaining, ?)) AS granted " +
+            "  FROM ai_credits WHERE user_id = ? FOR UPDATE), " +
+            "d AS (UPDATE ai_credits c SET credits_remaining = c.credits_remaining - g.granted " +
+            "  FROM g WHERE c.user_id = g.user_id RETURNING g.granted), " +
+            "l AS (INSERT INTO ai_credit_leases (user_id, node_id, credits_leased, expires_at) " +
+            "  SELECT ?, ?, granted, NOW() + (? * INTERVAL '1 second') FROM d WHERE granted > 0 " +
+            "  ON CONFLICT (user_id, node_id) DO UPDATE SET " +
+            "  credits_leased = ai_credit_leases.credits_leased + EXCLUDED.credits_leased, " +
+            "  expires_at = EXCLUDED.expires_at) " +
+            "SELECT granted FROM d";
+    private static final String RENEW_SQL = "UPDATE ai_credit_leases " +
+            "SET expires_at = NOW() + (? * INTERVAL '1 second') WHERE node_id = ? RETURNING user_id";
+    // Without a lease the used credits were already returned by a reclaim, so take them back
+    private static final String USAGE_SQL = "WITH l AS (" +
+            "  UPDATE ai_credit_leases SET credits_used = credits_used + ? " +
+            "  WHERE user_id = ? AND node_id = ? RETURNING user_id) " +
+            "UPDATE ai_credits SET credits_used_this_month = COALESCE(credits_used_this_month, 0) + ?, " +
+            "credits_remaining = CASE WHEN EXISTS (SELECT 1 FROM l) THEN credits_remaining " +
+            "  ELSE GREATEST(0, credits_remaining - ?) END " +
+            "WHERE user_id = ?";
+    private static final String RELEASE_SQL = "WITH l AS (" +
+            "  DELETE FROM ai_credit_leases WHERE user_id = ? AND node_id = ? " +
+            "  RETURNING credits_leased - credits_used AS unused) " +
+            "UPDATE ai_credits c SET credits_remaining = c.credits_remaining + GREATEST(0, l.unused) " +
+            "FROM l WHERE c.user_id = ?";
+    private static final String RECLAIM_SQL = "WITH expired AS (" +
+            "  DELETE FROM ai_credit_leases WHERE expires_at < NOW() " +
+            "  RETURNING user_id, GREATEST(0, credits_leased - credits_used) AS unused), " +
+            "totals AS (SELECT user_id, SUM(unused) AS unused FROM expired GROUP BY user_id) " +
+            "UPDATE ai_credits c SET credits_remaining = c.credits_remaining + t.unused " +
+            "FROM totals t WHERE c.user_id = t.user_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ClaudeConfig claudeConfig;
+    private final MeterRegistry meterRegistry;
+
+    // Identifies this process's leases; a restarted node starts with new ones
+    private final UUID nodeId = UUID.randomUUID();
+    private final Map<UUID, TenantCredits> tenants = new ConcurrentHashMap<>();
+
+    private Counter granted;
+    private Counter exhausted;
+    private Counter unmetered;
+    private Counter denied;
+    private Counter lookupFailures;
+    private Counter leasesLost;
+    private Counter flushFailures;
+    private Timer leaseDuration;
+
+    @PostConstruct
+    public void init() {
+        granted = Counter.builder("claude.credits.leases").tag("result", "granted")
+                .description("Credit blocks leased from ai_credits")
+                .register(meterRegistry);
+        exhausted = Counter.builder("claude.credits.leases").tag("result", "exhausted")
+                .description("Credit lease attempts for tenants with no credits left")
+                .register(meterRegistry);
+        unmetered = Counter.builder("claude.credits.leases").tag("result", "unmetered")
+                .description("Credit lease attempts for tenants without an ai_credits row")
+                .register(meterRegistry);
+        denied = Counter.builder("claude.credits.denied")
+                .description("Turns answered by the fallback responder because the tenant is out of credits")
+                .register(meterRegistry);
+        lookupFailures = Counter.builder("claude.credits.lookup.failures")
+                .description("Credit leases that failed and were let through")
+                .register(meterRegistry);
+        leasesLost = Counter.builder("claude.credits.leases.lost")
+                .description("Leases of this node reclaimed by another node before they were returned")
+                .register(meterRegistry);
+        flushFailures = Counter.builder("claude.credits.flush.failures")
+                .description("Credit usage flushes that could not be written")
+                .register(meterRegistry);
+        leaseDuration = Timer.builder("claude.credits.lease.duration")
+                .description("Time a turn waited to lease a block of credits")
+                .register(meterRegistry);
+        Gauge.builder("claude.credits.tenants", tenants, Map::size)
+                .description("Tenants with credit state on this node")
+                .register(meterRegistry);
+
+        log.info("AI credit ledger node ID: {}", nodeId);
+    }
+
+    /**
+     * Take {@code credits} for a turn of the business.
+     *
+     * @return false if the business is out of credits
+     */
+    public boolean tryConsume(UUID businessId, int credits) {
+        if (!claudeConfig.getCredits().isEnabled() || businessId == null || credits <= 0) {
+            return true;
+        }
+
+        TenantCredits tenant = tenants.computeIfAbsent(businessId, id -> new TenantCredits());
+        long now = System.nanoTime();
+        tenant.lastUsedAt = now;
+        if (tenant.take(credits)) {
+            return true;
+        }
+        if (tenant.status == Status.UNMETERED && now < tenant.recheckAt) {
+            return true;
+        }
+
+        synchronized (tenant) {
+            // Another turn may have leased a block while this one waited
+            if (tenant.take(credits)) {
+                return true;
+            }
+            if (now < tenant.recheckAt) {
+                if (tenant.status == Status.UNMETERED) {
+                    return true;
+                }
+                if (tenant.status == Status.EXHAUSTED) {
+                    denied.increment();
+                    return false;
+                }
+            }
+
+            if (!lease(businessId, tenant, Math.max(credits, claudeConfig.getCredits().getBlockSize()))) {
+                return true;
+            }
+            if (tenant.status == Status.UNMETERED) {
+                return true;
+            }
+            if (tenant.take(credits)) {
+                return true;
+            }
+            denied.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Give back credits taken for a turn that did not get a reply from Claude.
+     */
+    public void refund(UUID businessId, int credits) {
+        if (!claudeConfig.getCredits().isEnabled() || businessId == null || credits <= 0) {
+            return;
+        }
+        TenantCredits tenant = tenants.get(businessId);
+        if (tenant != null && tenant.leased) {
+            tenant.unflushed.addAndGet(-credits);
+            tenant.available.addAndGet(credits);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${claude.credits.flush-interval-ms:10000}")
+    public void flush() {
+        if (!claudeConfig.getCredits().isEnabled() || tenants.isEmpty()) {
+            return;
+        }
+
+        long cycleStart = System.nanoTime();
+        try {
+            dropLostLeases(renewLeases(), cycleStart);
+            flushUsage();
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.error("Failed to flush AI credit usage: {}", e.getMessage());
+            return;
+        }
+
+        long idleNanos = TimeUnit.SECONDS.toNanos(claudeConfig.getCredits().getIdleReleaseSeconds());
+        for (Map.Entry<UUID, TenantCredits> entry : tenants.entrySet()) {
+            TenantCredits tenant = entry.getValue();
+            if (cycleStart - tenant.lastUsedAt < idleNanos) {
+                continue;
+            }
+            try {
+                if (tenant.leased) {
+                    release(entry.getKey(), tenant);
+                } else if (tenant.unflushed.get() == 0) {
+                    tenants.remove(entry.getKey(), tenant);
+                }
+            } catch (Exception e) {
+                flushFailures.increment();
+                log.warn("Failed to return AI credit lease of business {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${claude.credits.reclaim-interval-ms:60000}")
+    public void reclaimExpiredLeases() {
+        if (!claudeConfig.getCredits().isEnabled()) {
+            return;
+        }
+        try {
+            int tenantsReclaimed = jdbcTemplate.update(RECLAIM_SQL);
+            if (tenantsReclaimed > 0) {
+                log.info("Returned expired AI credit leases of {} businesses", tenantsReclaimed);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to reclaim expired AI credit leases: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Map.Entry<UUID, TenantCredits> entry : tenants.entrySet()) {
+            try {
+                if (entry.getValue().leased) {
+                    release(entry.getKey(), entry.getValue());
+                }
+            } catch (Exception e) {
+                log.warn("Failed to return AI credit lease of business {}, it will expire: {}",
+                        entry.getKey(), e.getMessage());
+            }
+        }
+        try {
+            flushUsage();
+        } catch (Exception e) {
+            log.warn("Failed to flush AI credit usage on shutdown: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Lease a block for the tenant. Called with the tenant locked.
+     *
+     * @return false if the lease failed
+     */
+    private boolean lease(UUID businessId, TenantCredits tenant, int blockSize) {
+        ClaudeConfig.Credits settings = claudeConfig.getCredits();
+        long start = System.nanoTime();
+        Integer grant;
+        try {
+            grant = jdbcTemplate.query(LEASE_SQL, (ResultSetExtractor<Integer>) rs -> rs.next() ? rs.getInt(1) : null,
+                    blockSize, businessId, businessId, nodeId, settings.getLeaseTtlSeconds());
+        } catch (Exception e) {
+            lookupFailures.increment();
+            log.warn("Failed to lease AI credits for business {}, letting the turn through: {}", businessId, e.getMessage());
+            return false;
+        } finally {
+            leaseDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        long now = System.nanoTime();
+        if (grant == null) {
+            unmetered.increment();
+            tenant.status = Status.UNMETERED;
+            tenant.recheckAt = now + TimeUnit.SECONDS.toNanos(settings.getRecheckSeconds());
+        } else if (grant == 0) {
+            exhausted.increment();
+            tenant.status = Status.EXHAUSTED;
+            tenant.recheckAt = now + TimeUnit.SECONDS.toNanos(settings.getRecheckSeconds());
+            log.info("Business {} has no AI credits left", businessId);
+        } else {
+            granted.increment();
+            tenant.status = Status.METERED;
+            tenant.recheckAt = 0;
+            tenant.leased = true;
+            tenant.leasedAt = now;
+            tenant.available.addAndGet(grant);
+            log.debug("Leased {} AI credits for business {}", grant, businessId);
+        }
+        return true;
+    }
+
+    /**
+     * Extend this node's leases.
+     *
+     * @return businesses this node still holds a lease for
+     */
+    private Set<UUID> renewLeases() {
+        boolean anyLeased = tenants.values().stream().anyMatch(t -> t.leased);
+        if (!anyLeased) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(RENEW_SQL, UUID.class,
+                claudeConfig.getCredits().getLeaseTtlSeconds(), nodeId));
+    }
+
+    private void dropLostLeases(Set<UUID> live, long cycleStart) {
+        for (Map.Entry<UUID, TenantCredits> entry : tenants.entrySet()) {
+            TenantCredits tenant = entry.getValue();
+            if (!tenant.leased || live.contains(entry.getKey())) {
+                continue;
+            }
+            synchronized (tenant) {
+                // A lease taken after the renewal started is not in the renewed set
+                if (tenant.leased && tenant.leasedAt < cycleStart) {
+                    tenant.leased = false;
+                    int dropped = tenant.available.getAndSet(0);
+                    leasesLost.increment();
+                    log.warn("AI credit lease of business {} was reclaimed, dropped {} unused credits",
+                            entry.getKey(), dropped);
+                }
+            }
+        }
+    }
+
+    private void flushUsage() {
+        List<UUID> businessIds = new ArrayList<>();
+        List<Integer> deltas = new ArrayList<>();
+        for (Map.Entry<UUID, TenantCredits> entry : tenants.entrySet()) {
+            int used = entry.getValue().unflushed.getAndSet(0);
+            if (used != 0) {
+                businessIds.add(entry.getKey());
+                deltas.add(used);
+            }
+        }
+        if (businessIds.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> args = new ArrayList<>(businessIds.size());
+        for (int i = 0; i < businessIds.size(); i++) {
+            UUID businessId = businessIds.get(i);
+            int used = deltas.get(i);
+            args.add(new Object[]{used, businessId, nodeId, used, used, businessId});
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(USAGE_SQL, args));
+        } catch (RuntimeException e) {
+            // Nothing was written; count the usage again on the next flush
+            for (int i = 0; i < businessIds.size(); i++) {
+                TenantCredits tenant = tenants.computeIfAbsent(businessIds.get(i), id -> new TenantCredits());
+                tenant.unflushed.addAndGet(deltas.get(i));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write the tenant's usage and return the rest of its lease. The tenant stays locked so
+     * no block is leased into the row while it is being deleted.
+     */
+    private void release(UUID businessId, TenantCredits tenant) {
+        synchronized (tenant) {
+            if (!tenant.leased) {
+                return;
+            }
+            int unused = tenant.available.getAndSet(0);
+            int used = tenant.unflushed.getAndSet(0);
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (used != 0) {
+                        jdbcTemplate.update(USAGE_SQL, used, businessId, nodeId, used, used, businessId);
+                    }
+                    jdbcTemplate.update(RELEASE_SQL, businessId, nodeId, businessId);
+                });
+            } catch (RuntimeException e) {
+                tenant.available.addAndGet(unused);
+                tenant.unflushed.addAndGet(used);
+                throw e;
+            }
+            tenant.leased = false;
+            log.debug("Returned {} unused AI credits of business {}", unused, businessId);
+        }
+    }
+
+    private enum Status {
+        UNKNOWN, METERED, EXHAUSTED, UNMETERED
+    }
+
+    private static class TenantCredits {
+        // Credits of this node's lease not yet spent
+        private final AtomicInteger available = new AtomicInteger();
+        // Credits spent since the last flush
+        private final AtomicInteger unflushed = new AtomicInteger();
+        private volatile Status status = Status.UNKNOWN;
+        private volatile boolean leased;
+        private volatile long leasedAt;
+        private volatile long lastUsedAt = System.nanoTime();
+        // When an exhausted or unmetered tenant is looked up again
+        private volatile long recheckAt;
+
+        boolean take(int credits) {
+            while (true) {
+                int current = available.get();
+                if (current < credits) {
+                    return false;
+                }
+                if (available.compareAndSet(current, current - credits)) {
+                    unflushed.addAndGet(credits);
+                    return true;
+                }
+            }
+        }
+    }
+}
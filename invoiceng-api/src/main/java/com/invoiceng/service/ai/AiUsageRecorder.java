@@ -0,0 +1,291 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Buffers the usage of Claude calls and writes it to {@code ai_usage} and {@code ai_usage_log}
+ * in batches.
+ *
+ * Recording only puts the call on a bounded queue, so accounting adds no database round trip
+ * to a reply. A single writer thread flushes when a batch is full or when the oldest call has
+ * waited {@code flushIntervalMs}, with one multi-row insert per table. Cost is estimated from
+ * {@code claude.pricing} and stored both in whole cents and in micro-dollars, since most single
+ * calls cost less than a cent. Usage is best effort: calls that find the buffer full or belong
+ * to a failed flush are counted and logged, not retried. A row the database rejects is dropped
+ * on its own; the rest of its batch is still written.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AiUsageRecorder {
+
+    private static final String USAGE_INSERT_PREFIX = "INSERT INTO ai_usage " +
+            "(business_id, conversation_id, operation, model, input_tokens, output_tokens, " +
+            "cache_write_tokens, cache_read_tokens, cost_cents, cost_micro_usd, latency_ms, created_at) VALUES ";
+    private static final String USAGE_ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int USAGE_COLUMNS = 12;
+    private static final String LOG_INSERT_PREFIX = "INSERT INTO ai_usage_log " +
+            "(user_id, feature, credits_used, input_tokens, output_tokens, created_at) VALUES ";
+    private static final String LOG_ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?)";
+    private static final int LOG_COLUMNS = 6;
+    // Keeps a single statement well below PostgreSQL's bind parameter limit
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final long MICROS_PER_USD = 1_000_000L;
+    private static final long MICROS_PER_CENT = 10_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClaudeModelMetrics modelMetrics;
+    private final ClaudeConfig claudeConfig;
+    private final MeterRegistry meterRegistry;
+
+    private BlockingQueue<UsageRecord> buffer;
+    private Thread writer;
+    private volatile boolean running;
+
+    private DistributionSummary flushSize;
+    private Timer flushDuration;
+    private Counter dropped;
+    private Counter flushFailures;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        ClaudeConfig.Usage settings = claudeConfig.getUsage();
+        buffer = new ArrayBlockingQueue<>(Math.max(1, settings.getBufferCapacity()));
+
+        flushSize = DistributionSummary.builder("claude.usage.flush.size")
+                .description("Claude calls whose usage was written per flush")
+                .register(meterRegistry);
+        flushDuration = Timer.builder("claude.usage.flush.duration")
+                .description("Time spent writing one batch of Claude usage")
+                .register(meterRegistry);
+        dropped = Counter.builder("claude.usage.dropped")
+                .description("Claude calls not recorded because the usage buffer was full")
+                .register(meterRegistry);
+        flushFailures = Counter.builder("claude.usage.flush.failures")
+                .description("Claude usage batches that could not be written")
+                .register(meterRegistry);
+        rejected = Counter.builder("claude.usage.rejected")
+                .description("Claude usage rows dropped because the database rejected them")
+                .register(meterRegistry);
+        Gauge.builder("claude.usage.buffered", buffer, BlockingQueue::size)
+                .description("Claude calls waiting for their usage to be written")
+                .register(meterRegistry);
+
+        if (!settings.isEnabled()) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::runWriter, "ai-usage-writer");
+        writer.setDaemon(false);
+        writer.start();
+    }
+
+    /**
+     * Buffer the usage of a completed call. Calls without a business are not recorded.
+     */
+    public void record(ClaudeCall call, String model, TokenUsage usage, long latencyNanos) {
+        if (!running || call == null || call.businessId() == null) {
+            return;
+        }
+
+        long costMicros = Math.round(modelMetrics.estimateCost(model, usage) * MICROS_PER_USD);
+        UsageRecord record = new UsageRecord(call, model, usage, costMicros,
+                (int) TimeUnit.NANOSECONDS.toMillis(latencyNanos), LocalDateTime.now(), System.nanoTime());
+        if (!buffer.offer(record)) {
+            dropped.increment();
+            log.warn("Usage buffer is full, dropped {} usage of business {}", call.operation().getValue(), call.businessId());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(claudeConfig.getUsage().getShutdownTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!buffer.isEmpty()) {
+            log.warn("{} Claude usage records were not written before shutdown", buffer.size());
+        }
+    }
+
+    private void runWriter() {
+        ClaudeConfig.Usage settings = claudeConfig.getUsage();
+        int batchSize = Math.max(1, settings.getBatchSize());
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, settings.getFlushIntervalMs()));
+        List<UsageRecord> batch = new ArrayList<>(batchSize);
+
+        while (running || !buffer.isEmpty()) {
+            try {
+                UsageRecord first = buffer.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Linger until the batch is full or the oldest record has waited a full interval
+                long deadline = first.recordedAt + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    buffer.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    UsageRecord next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Unexpected error in usage writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<UsageRecord> batch) {
+        long start = System.nanoTime();
+        try {
+            for (int from = 0; from < batch.size(); from += MAX_ROWS_PER_STATEMENT) {
+                List<UsageRecord> rows = batch.subList(from, Math.min(batch.size(), from + MAX_ROWS_PER_STATEMENT));
+                write(rows, this::insertUsage, "ai_usage");
+                write(rows, this::insertLog, "ai_usage_log");
+            }
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.error("Failed to write usage of {} Claude calls: {}", batch.size(), e.getMessage());
+        }
+        flushDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        flushSize.record(batch.size());
+    }
+
+    /**
+     * Insert the rows into one table, splitting them in halves when the database rejects the
+     * data of the statement, down to single rows that are then dropped. Connection and other
+     * transient failures fail the flush.
+     */
+    private void write(List<UsageRecord> rows, Consumer<List<UsageRecord>> insert, String table) {
+        try {
+            insert.accept(rows);
+        } catch (NonTransientDataAccessException e) {
+            if (e instanceof NonTransientDataAccessResourceException) {
+                throw e;
+            }
+            if (rows.size() == 1) {
+                rejected.increment();
+                ClaudeCall call = rows.get(0).call;
+                log.warn("Dropping {} row for {} usage of business {} rejected by the database: {}", table,
+                        call.operation().getValue(), call.businessId(), e.getMostSpecificCause().getMessage());
+                return;
+            }
+            int half = rows.size() / 2;
+            write(rows.subList(0, half), insert, table);
+            write(rows.subList(half, rows.size()), insert, table);
+        }
+    }
+
+    private void insertUsage(List<UsageRecord> rows) {
+        StringBuilder sql = new StringBuilder(USAGE_INSERT_PREFIX.length() + rows.size() * (USAGE_ROW_PLACEHOLDERS.length() + 2));
+        sql.append(USAGE_INSERT_PREFIX);
+        Object[] args = new Object[rows.size() * USAGE_COLUMNS];
+        int i = 0;
+        for (UsageRecord row : rows) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(USAGE_ROW_PLACEHOLDERS);
+
+            args[i++] = row.call.businessId();
+            args[i++] = row.call.conversationId();
+            args[i++] = row.call.operation().getValue();
+            args[i++] = row.model;
+            args[i++] = row.usage.inputTokens();
+            args[i++] = row.usage.outputTokens();
+            args[i++] = row.usage.cacheWriteTokens();
+            args[i++] = row.usage.cacheReadTokens();
+            args[i++] = (int) ((row.costMicros + MICROS_PER_CENT / 2) / MICROS_PER_CENT);
+            args[i++] = row.costMicros;
+            args[i++] = row.latencyMs;
+            args[i++] = row.createdAt;
+        }
+
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    private void insertLog(List<UsageRecord> rows) {
+        StringBuilder sql = new StringBuilder(LOG_INSERT_PREFIX.length() + rows.size() * (LOG_ROW_PLACEHOLDERS.length() + 2));
+        sql.append(LOG_INSERT_PREFIX);
+        Object[] args = new Object[rows.size() * LOG_COLUMNS];
+        int i = 0;
+        for (UsageRecord row : rows) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(LOG_ROW_PLACEHOLDERS);
+
+            args[i++] = row.call.businessId();
+            args[i++] = row.call.operation().getValue();
+            args[i++] = row.call.operation().getCredits();
+            args[i++] = row.usage.billedInputTokens();
+            args[i++] = row.usage.outputTokens();
+            args[i++] = row.createdAt;
+        }
+
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    private static class UsageRecord {
+        private final ClaudeCall call;
+        private final String model;
+        private final TokenUsage usage;
+        private final long costMicros;
+        private final int latencyMs;
+        private final LocalDateTime createdAt;
+        private final long recordedAt;
+
+        UsageRecord(ClaudeCall call, String model, TokenUsage usage, long costMicros,
+                    int latencyMs, LocalDateTime createdAt, long recordedAt) {
+            this.call = call;
+            this.model = model;
+            this.usage = usage;
+            this.costMicros = costMicros;
+            this.latencyMs = latencyMs;
+            this.createdAt = createdAt;
+            this.recordedAt = recordedAt;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.invoiceng.service.ai;
+
+import java.util.UUID;
+
+/**
+ * Who a Claude call is made for and why. Used for fair sharing of Claude capacity and for
+ * usage accounting; calls without a business are neither shared fairly nor recorded.
+ *
+ * @param conversationId conversation the call belongs to, or null for work outside one
+ */
+public record ClaudeCall(UUID businessId, UUID conversationId, Operation operation) {
+
+    public static ClaudeCall salesReply(UUID businessId, UUID conversationId) {
+        return new ClaudeCall(businessId, conversationId, Operation.SALES_REPLY);
+    }
+
+    public static ClaudeCall historySummary(UUID businessId, UUID conversationId) {
+        return new ClaudeCall(businessId, conversationId, Operation.HISTORY_SUMMARY);
+    }
+
+    /**
+     * Kind of call, stored in {@code ai_usage.operation} and {@code ai_usage_log.feature}.
+     * Only customer-facing replies use AI credits.
+     */
+    public enum Operation {
+        SALES_REPLY("sales_reply", 1),
+        HISTORY_SUMMARY("history_summary", 0);
+
+        private final String value;
+        private final int credits;
+
+        Operation(String value, int credits) {
+            this.value = value;
+            this.credits = credits;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getCredits() {
+            return credits;
+        }
+    }
+}
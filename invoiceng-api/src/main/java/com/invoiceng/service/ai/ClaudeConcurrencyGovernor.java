@@ -0,0 +1,359 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.exception.ClaudeApiException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for Claude API calls.
+ *
+ * Concurrency is bounded by an AIMD window: every successful call grows the limit by
+ * {@code 1/limit} (about one per window of completions) and a 429 or 529 answer cuts it by
+ * {@code backoffRatio}, at most once per cooldown so a burst of refusals counts as one
+ * signal. Requests and input tokens are also drawn from per-minute budgets that refill
+ * continuously, so a wide window cannot overrun the account's RPM/ITPM limits. A
+ * {@code Retry-After} on a refusal pauses all grants until it has passed.
+ *
+ * Waiters queue per tenant and free slots are handed out round-robin across tenants. While
+ * several tenants are active each is capped at its share of the window; the cap is lifted
+ * when nobody else is waiting, so spare capacity is never left idle.
+ *
+ * {@link #acquire} blocks the calling thread (a conversation lane) for up to
+ * {@code maxWaitMs}, then fails with {@link ClaudeApiException} and the turn falls back.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ClaudeConcurrencyGovernor {
+
+    // Calls made outside a tenant's conversation share one queue
+    private static final UUID SHARED_TENANT = new UUID(0L, 0L);
+    private static final long IDLE_RECHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double NANOS_PER_MINUTE = 60e9;
+
+    private final ClaudeConfig claudeConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Tenants with waiters, in round-robin order
+    private final LinkedHashMap<UUID, Deque<Waiter>> waiting = new LinkedHashMap<>();
+    private final Map<UUID, Integer> inFlightByTenant = new HashMap<>();
+
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int waitingCount;
+    private double requestBudget;
+    private double tokenBudget;
+    private long refilledAt;
+    private long lastBackoffAt;
+    private long pausedUntil;
+
+    private Counter throttled;
+    private Counter rejected;
+    private Timer waitTime;
+
+    @PostConstruct
+    public void init() {
+        ClaudeConfig.Governor settings = claudeConfig.getGovernor();
+        limit = Math.max(settings.getMinLimit(), Math.min(settings.getInitialLimit(), settings.getMaxLimit()));
+        requestBudget = settings.getRequestsPerMinute();
+        tokenBudget = settings.getInputTokensPerMinute();
+        refilledAt = System.nanoTime();
+        lastBackoffAt = refilledAt - TimeUnit.MILLISECONDS.toNanos(settings.getBackoffCooldownMs());
+        pausedUntil = refilledAt;
+
+        throttled = Counter.builder("claude.governor.throttled")
+                .description("Claude calls refused with 429 or 529")
+                .register(meterRegistry);
+        rejected = Counter.builder("claude.governor.rejected")
+                .description("Claude calls abandoned after waiting too long for capacity")
+                .register(meterRegistry);
+        waitTime = Timer.builder("claude.governor.wait")
+                .description("Time a Claude call waited for a concurrency slot and budget")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("claude.governor.limit", this, g -> g.limit)
+                .description("Current adaptive concurrency limit for Claude calls")
+                .register(meterRegistry);
+        Gauge.builder("claude.governor.in.flight", this, g -> g.inFlight)
+                .description("Claude calls currently holding a slot")
+                .register(meterRegistry);
+        Gauge.builder("claude.governor.waiting", this, g -> g.waitingCount)
+                .description("Claude calls waiting for a slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wait for a slot and budget for one call.
+     *
+     * @param businessId tenant making the call, or null for calls outside a conversation
+     * @param estimatedInputTokens rough size of the prompt, reconciled once usage is known
+     * @throws ClaudeApiException if no capacity freed up within {@code maxWaitMs}
+     */
+    public Permit acquire(UUID businessId, int estimatedInputTokens) {
+        ClaudeConfig.Governor settings = claudeConfig.getGovernor();
+        if (!settings.isEnabled()) {
+            return new Permit(null, 0);
+        }
+
+        UUID tenant = businessId != null ? businessId : SHARED_TENANT;
+        int tokens = Math.max(1, Math.min(estimatedInputTokens, settings.getInputTokensPerMinute()));
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(settings.getMaxWaitMs());
+        Waiter waiter = new Waiter(tenant, tokens);
+
+        lock.lock();
+        try {
+            waiting.computeIfAbsent(tenant, k -> new ArrayDeque<>()).addLast(waiter);
+            waitingCount++;
+            long recheck = dispatch();
+            while (!waiter.granted) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    removeWaiter(waiter);
+                    rejected.increment();
+                    throw new ClaudeApiException("Timed out waiting for Claude capacity");
+                }
+                changed.awaitNanos(Math.min(remaining, recheck));
+                if (!waiter.granted) {
+                    recheck = dispatch();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (waiter.granted) {
+                complete(tenant, tokens, Outcome.ERROR, 0, null);
+            } else {
+                removeWaiter(waiter);
+            }
+            throw new ClaudeApiException("Interrupted while waiting for Claude capacity");
+        } finally {
+            lock.unlock();
+        }
+
+        waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Permit(tenant, tokens);
+    }
+
+    /**
+     * Grant slots to waiters while the window and budgets allow. Must hold the lock.
+     *
+     * @return nanos until budgets allow the next grant, for waiters to re-check
+     */
+    private long dispatch() {
+        long now = System.nanoTime();
+        refillBudgets(now);
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+
+        boolean granted = false;
+        long recheck = IDLE_RECHECK_NANOS;
+        int fairShare = fairShare();
+        while (waitingCount > 0 && inFlight < (int) limit) {
+            Waiter next = nextWaiter(fairShare);
+            if (next == null) {
+                // Every waiting tenant is at its share but the window has room: let them use it
+                next = nextWaiter(Integer.MAX_VALUE);
+            }
+            long budgetWait = budgetWait(next.tokens);
+            if (budgetWait > 0) {
+                recheck = budgetWait;
+                break;
+            }
+            grant(next);
+            granted = true;
+        }
+
+        if (granted) {
+            changed.signalAll();
+        }
+        return recheck;
+    }
+
+    private int fairShare() {
+        Set<UUID> active = new HashSet<>(waiting.keySet());
+        active.addAll(inFlightByTenant.keySet());
+        return Math.max(1, (int) Math.ceil(limit / Math.max(1, active.size())));
+    }
+
+    /**
+     * Head waiter of the first tenant under {@code cap}. The tenant moves to the back of the
+     * rotation so the next grant goes to someone else.
+     */
+    private Waiter nextWaiter(int cap) {
+        Iterator<Map.Entry<UUID, Deque<Waiter>>> it = waiting.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Deque<Waiter>> entry = it.next();
+            if (inFlightByTenant.getOrDefault(entry.getKey(), 0) < cap) {
+                it.remove();
+                waiting.put(entry.getKey(), entry.getValue());
+                return entry.getValue().peekFirst();
+            }
+        }
+        return null;
+    }
+
+    private void grant(Waiter waiter) {
+        Deque<Waiter> queue = waiting.get(waiter.tenant);
+        queue.removeFirst();
+        if (queue.isEmpty()) {
+            waiting.remove(waiter.tenant);
+        }
+        waitingCount--;
+        inFlight++;
+        inFlightByTenant.merge(waiter.tenant, 1, Integer::sum);
+        requestBudget -= 1;
+        tokenBudget -= waiter.tokens;
+        waiter.granted = true;
+    }
+
+    private void removeWaiter(Waiter waiter) {
+        Deque<Waiter> queue = waiting.get(waiter.tenant);
+        if (queue != null && queue.remove(waiter)) {
+            if (queue.isEmpty()) {
+                waiting.remove(waiter.tenant);
+            }
+            waitingCount--;
+        }
+    }
+
+    private void refillBudgets(long now) {
+        ClaudeConfig.Governor settings = claudeConfig.getGovernor();
+        long elapsed = now - refilledAt;
+        refilledAt = now;
+        requestBudget = Math.min(settings.getRequestsPerMinute(),
+                requestBudget + elapsed * settings.getRequestsPerMinute() / NANOS_PER_MINUTE);
+        tokenBudget = Math.min(settings.getInputTokensPerMinute(),
+                tokenBudget + elapsed * settings.getInputTokensPerMinute() / NANOS_PER_MINUTE);
+    }
+
+    private long budgetWait(int tokens) {
+        ClaudeConfig.Governor settings = claudeConfig.getGovernor();
+        double requestShort = Math.max(0, 1 - requestBudget) * NANOS_PER_MINUTE / settings.getRequestsPerMinute();
+        double tokenShort = Math.max(0, tokens - tokenBudget) * NANOS_PER_MINUTE / settings.getInputTokensPerMinute();
+        return (long) Math.ceil(Math.max(requestShort, tokenShort));
+    }
+
+    private void complete(UUID tenant, int estimatedTokens, Outcome outcome, int actualTokens, Duration retryAfter) {
+        ClaudeConfig.Governor settings = claudeConfig.getGovernor();
+        long now = System.nanoTime();
+
+        inFlight--;
+        inFlightByTenant.computeIfPresent(tenant, (k, n) -> n > 1 ? n - 1 : null);
+
+        switch (outcome) {
+            case SUCCESS -> {
+                limit = Math.min(settings.getMaxLimit(), limit + 1.0 / limit);
+                if (actualTokens > 0) {
+                    refillBudgets(now);
+                    tokenBudget = Math.min(settings.getInputTokensPerMinute(),
+                            tokenBudget - (actualTokens - estimatedTokens));
+                }
+            }
+            case THROTTLED -> {
+                throttled.increment();
+                if (now - lastBackoffAt >= TimeUnit.MILLISECONDS.toNanos(settings.getBackoffCooldownMs())) {
+                    lastBackoffAt = now;
+                    limit = Math.max(settings.getMinLimit(), limit * settings.getBackoffRatio());
+                    log.warn("Claude throttled, concurrency limit reduced to {}", (int) limit);
+                }
+                if (retryAfter != null && !retryAfter.isNegative()) {
+                    pausedUntil = Math.max(pausedUntil, now + retryAfter.toNanos());
+                }
+            }
+            default -> { }
+        }
+
+        dispatch();
+    }
+
+    private enum Outcome {
+        SUCCESS, THROTTLED, ERROR
+    }
+
+    private static class Waiter {
+        private final UUID tenant;
+        private final int tokens;
+        private boolean granted;
+
+        private Waiter(UUID tenant, int tokens) {
+            this.tenant = tenant;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * Slot held by one call. Record how the call went, then release; a permit released
+     * without an outcome (e.g. a cancelled stream) leaves the limit unchanged. Releasing more
+     * than once has no effect.
+     */
+    public class Permit {
+        private final UUID tenant;
+        private final int estimatedTokens;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile Outcome outcome = Outcome.ERROR;
+        private volatile int inputTokens;
+        private volatile Duration retryAfter;
+
+        private Permit(UUID tenant, int estimatedTokens) {
+            this.tenant = tenant;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        /**
+         * Billed input tokens of the call, excluding prompt cache reads.
+         */
+        public void recordInputTokens(int tokens) {
+            this.inputTokens = tokens;
+        }
+
+        public void succeeded() {
+            outcome = Outcome.SUCCESS;
+        }
+
+        public void failed(Throwable error) {
+            if (error instanceof ClaudeApiException apiError && apiError.isThrottled()) {
+                outcome = Outcome.THROTTLED;
+                retryAfter = apiError.getRetryAfter();
+            } else {
+                outcome = Outcome.ERROR;
+            }
+        }
+
+        public void release() {
+            if (tenant == null || !released.compareAndSet(false, true)) {
+                return;
+            }
+            lock.lock();
+            try {
+                complete(tenant, estimatedTokens, outcome, inputTokens, retryAfter);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-model latency, token and cost metrics for Claude calls, for tuning the routing table
+ * of {@link ModelRouter}. Costs are estimates from {@code claude.pricing}; models without a
+ * price are counted as free and logged once.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ClaudeModelMetrics {
+
+    private static final double PER_MILLION = 1_000_000d;
+
+    private final ClaudeConfig claudeConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, ModelMeters> meters = new ConcurrentHashMap<>();
+    private final Set<String> unpricedModels = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Record a completed call.
+     *
+     * @param mode {@code blocking} or {@code stream}
+     */
+    public void record(String model, String mode, long durationNanos, TokenUsage usage) {
+        ModelMeters m = meters.computeIfAbsent(model + "|" + mode, k -> new ModelMeters(model, mode));
+        m.latency.record(durationNanos, TimeUnit.NANOSECONDS);
+        m.inputTokens.record(usage.inputTokens());
+        m.outputTokens.record(usage.outputTokens());
+        m.cacheWriteTokens.record(usage.cacheWriteTokens());
+        m.cacheReadTokens.record(usage.cacheReadTokens());
+        m.cost.increment(estimateCost(model, usage));
+    }
+
+    /**
+     * Estimated cost of a call in USD.
+     */
+    public double estimateCost(String model, TokenUsage usage) {
+        ClaudeConfig.ModelPricing pricing = claudeConfig.getPricing().get(model);
+        if (pricing == null) {
+            if (unpricedModels.add(model)) {
+                log.warn("No pricing configured for Claude model {}, its cost is not tracked", model);
+            }
+            return 0;
+        }
+        return (usage.inputTokens() * pricing.getInputPerMillion()
+                + usage.outputTokens() * pricing.getOutputPerMillion()
+                + usage.cacheWriteTokens() * pricing.getCacheWritePerMillion()
+                + usage.cacheReadTokens() * pricing.getCacheReadPerMillion()) / PER_MILLION;
+    }
+
+    private class ModelMeters {
+        private final Timer latency;
+        private final DistributionSummary inputTokens;
+        private final DistributionSummary outputTokens;
+        private final DistributionSummary cacheWriteTokens;
+        private final DistributionSummary cacheReadTokens;
+        private final Counter cost;
+
+        ModelMeters(String model, String mode) {
+            latency = Timer.builder("claude.request.latency").tag("model", model).tag("mode", mode)
+                    .description("Time to complete a Claude call")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            inputTokens = tokens(model, mode, "input");
+            outputTokens = tokens(model, mode, "output");
+            cacheWriteTokens = tokens(model, mode, "cache_write");
+            cacheReadTokens = tokens(model, mode, "cache_read");
+            cost = Counter.builder("claude.request.cost").tag("model", model).tag("mode", mode)
+                    .description("Estimated cost of Claude calls")
+                    .baseUnit("usd")
+                    .register(meterRegistry);
+        }
+
+        private DistributionSummary tokens(String model, String mode, String type) {
+            return DistributionSummary.builder("claude.request.tokens")
+                    .tag("model", model).tag("mode", mode).tag("type", type)
+                    .description("Tokens per Claude call")
+                    .baseUnit("tokens")
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -1,18 +1,31 @@
 package com.invoiceng.service.ai;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.exception.ClaudeApiException;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
@@ -22,33 +35,146 @@ public class ClaudeService {
     private final WebClient claudeWebClient;
     private final ClaudeConfig claudeConfig;
     private final ObjectMapper objectMapper;
+    private final ClaudeConcurrencyGovernor governor;
+    private final ClaudeModelMetrics modelMetrics;
+    private final AiUsageRecorder usageRecorder;
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() { };
 
     public String chat(String systemPrompt, List<Message> messages) {
+        return chat(null, null, systemPrompt, messages);
+    }
+
+    /**
+     * @param call who the call is made for, or null for calls outside any business
+     * @param model model ID, or null for {@code claude.model}
+     */
+    public String chat(ClaudeCall call, String model, String systemPrompt, List<Message> messages) {
+        return send(call, newRequest(model, systemPrompt, systemPrompt.length(), messages));
+    }
+
+    /**
+     * Chat with a system prompt split into a static, cacheable prefix and a per-turn suffix.
+     * The prefix is marked with {@code cache_control} so Anthropic can reuse it across turns.
+     *
+     * @param call who the call is made for, used for fair sharing of Claude capacity and usage accounting
+     * @param model model ID, or null for {@code claude.model}
+     */
+    public String chat(ClaudeCall call, String model, SystemPrompt systemPrompt, List<Message> messages) {
+        return send(call, newRequest(model, systemPrompt.toRequestValue(claudeConfig.getPromptCache().isEnabled()),
+                systemPrompt.length(), messages));
+    }
+
+    /**
+     * Stream a completion over server-sent events, emitting text deltas as they arrive.
+     * Fails if no event arrives within the configured idle timeout.
+     *
+     * The governor slot is taken when the stream is subscribed and may block, so subscribe
+     * from a thread that is allowed to wait (the conversation lane).
+     */
+    public Flux<String> chatStream(ClaudeCall call, String model, SystemPrompt systemPrompt, List<Message> messages) {
+        ClaudeRequest request = newRequest(model, systemPrompt.toRequestValue(claudeConfig.getPromptCache().isEnabled()),
+                systemPrompt.length(), messages);
+        request.setStream(true);
+
+        return Flux.using(
+                () -> governor.acquire(businessIdOf(call), request.getEstimatedInputTokens()),
+                permit -> {
+                    StreamUsage usage = new StreamUsage();
+                    long start = System.nanoTime();
+                    return claudeWebClient.post()
+                            .uri("/v1/messages")
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .bodyValue(request)
+                            .retrieve()
+                            .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), this::apiError)
+                            .bodyToFlux(SSE_TYPE)
+                            .timeout(Duration.ofSeconds(claudeConfig.getStreaming().getIdleTimeoutSeconds()))
+                            .concatMap(event -> textDelta(event, usage))
+                            .doOnComplete(() -> {
+                                TokenUsage total = usage.toTokenUsage();
+                                long duration = System.nanoTime() - start;
+                                permit.recordInputTokens(total.billedInputTokens());
+                                permit.succeeded();
+                                modelMetrics.record(request.getModel(), "stream", duration, total);
+                                usageRecorder.record(call, request.getModel(), total, duration);
+                            })
+                            .doOnError(permit::failed);
+                },
+                ClaudeConcurrencyGovernor.Permit::release);
+    }
+
+    /**
+     * Text carried by one stream event, if any. Usage is collected from the events that report it.
+     */
+    private Flux<String> textDelta(ServerSentEvent<String> event, StreamUsage streamUsage) {
+        String type = event.event();
+        if (type == null || event.data() == null) {
+            return Flux.empty();
+        }
         try {
-            ClaudeRequest request = new ClaudeRequest();
-            request.setModel(claudeConfig.getModel());
-            request.setMaxTokens(claudeConfig.getMaxTokens());
-            request.setSystem(systemPrompt);
-            request.setMessages(messages.stream()
-                    .map(m -> Map.of("role", m.getRole(), "content", m.getContent()))
-                    .toList());
+            switch (type) {
+                case "content_block_delta" -> {
+                    JsonNode delta = objectMapper.readTree(event.data()).path("delta");
+                    if ("text_delta".equals(delta.path("type").asText())) {
+                        return Flux.just(delta.path("text").asText());
+                    }
+                }
+                case "message_start" -> {
+                    JsonNode usage = objectMapper.readTree(event.data()).path("message").path("usage");
+                    streamUsage.input = usage.path("input_tokens").asInt();
+                    streamUsage.cacheRead = usage.path("cache_read_input_tokens").asInt();
+                    streamUsage.cacheWrite = usage.path("cache_creation_input_tokens").asInt();
+                    log.debug("Claude stream usage: input={}, cacheRead={}, cacheWrite={}",
+                            streamUsage.input, streamUsage.cacheRead, streamUsage.cacheWrite);
+                }
+                case "message_delta" -> {
+                    JsonNode usage = objectMapper.readTree(event.data()).path("usage");
+                    streamUsage.output = usage.path("output_tokens").asInt();
+                    log.debug("Claude stream usage: output={}", streamUsage.output);
+                }
+                case "error" -> {
+                    String errorType = objectMapper.readTree(event.data()).path("error").path("type").asText();
+                    return Flux.error(new ClaudeApiException("Claude API stream error: " + event.data(),
+                            ClaudeApiException.statusForErrorType(errorType), null));
+                }
+                default -> { }
+            }
+        } catch (JsonProcessingException e) {
+            return Flux.error(e);
+        }
+        return Flux.empty();
+    }
 
-            log.debug("Calling Claude API with model: {}, maxTokens: {}", claudeConfig.getModel(), claudeConfig.getMaxTokens());
+    private String send(ClaudeCall call, ClaudeRequest request) {
+        ClaudeConcurrencyGovernor.Permit permit = null;
+        try {
+            permit = governor.acquire(businessIdOf(call), request.getEstimatedInputTokens());
 
+            log.debug("Calling Claude API with model: {}, maxTokens: {}", request.getModel(), request.getMaxTokens());
+
+            long start = System.nanoTime();
             ClaudeResponse response = claudeWebClient.post()
                     .uri("/v1/messages")
                     .bodyValue(request)
                     .retrieve()
-                    .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(),
-                            clientResponse -> clientResponse.bodyToMono(String.class)
-                                    .map(body -> {
-                                        log.error("Claude API error response: {}", body);
-                                        return new RuntimeException("Claude API error: " + body);
-                                    }))
+                    .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), this::apiError)
                     .bodyToMono(ClaudeResponse.class)
                     .timeout(Duration.ofSeconds(30))
                     .block();
 
+            permit.succeeded();
+            if (response != null && response.getUsage() != null) {
+                TokenUsage usage = response.getUsage().toTokenUsage();
+                long duration = System.nanoTime() - start;
+                log.debug("Claude usage: input={}, cacheRead={}, cacheWrite={}, output={}",
+                        usage.inputTokens(), usage.cacheReadTokens(), usage.cacheWriteTokens(), usage.outputTokens());
+                permit.recordInputTokens(usage.billedInputTokens());
+                modelMetrics.record(request.getModel(), "blocking", duration, usage);
+                usageRecorder.record(call, request.getModel(), usage, duration);
+            }
+
             if (response != null && response.getContent() != null && !response.getContent().isEmpty()) {
                 return response.getContent().get(0).getText();
             }
@@ -56,26 +182,53 @@ public class ClaudeService {
             log.warn("Empty response from Claude API");
             return null;
         } catch (Exception e) {
+            if (permit != null) {
+                permit.failed(e);
+            }
             log.error("Error calling Claude API: {}", e.getMessage(), e);
             return null;
+        } finally {
+            if (permit != null) {
+                permit.release();
+            }
         }
     }
 
     public Mono<String> chatAsync(String systemPrompt, List<Message> messages) {
-        ClaudeRequest request = new ClaudeRequest();
-        request.setModel(claudeConfig.getModel());
-        request.setMaxTokens(claudeConfig.getMaxTokens());
-        request.setSystem(systemPrompt);
-        request.setMessages(messages.stream()
-                .map(m -> Map.of("role", m.getRole(), "content", m.getContent()))
-                .toList());
+        return chatAsync(null, systemPrompt, messages);
+    }
+
+    /**
+     * @param call who the call is made for, or null for calls outside any business
+     */
+    public Mono<String> chatAsync(ClaudeCall call, String systemPrompt, List<Message> messages) {
+        ClaudeRequest request = newRequest(null, systemPrompt, systemPrompt.length(), messages);
 
-        return claudeWebClient.post()
-                .uri("/v1/messages")
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(ClaudeResponse.class)
-                .timeout(Duration.ofSeconds(30))
+        return Mono.usingWhen(
+                        Mono.fromCallable(() -> governor.acquire(businessIdOf(call), request.getEstimatedInputTokens()))
+                                .subscribeOn(Schedulers.boundedElastic()),
+                        permit -> {
+                            long start = System.nanoTime();
+                            return claudeWebClient.post()
+                                    .uri("/v1/messages")
+                                    .bodyValue(request)
+                                    .retrieve()
+                                    .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), this::apiError)
+                                    .bodyToMono(ClaudeResponse.class)
+                                    .timeout(Duration.ofSeconds(30))
+                                    .doOnSuccess(response -> {
+                                        permit.succeeded();
+                                        if (response != null && response.getUsage() != null) {
+                                            TokenUsage usage = response.getUsage().toTokenUsage();
+                                            long duration = System.nanoTime() - start;
+                                            permit.recordInputTokens(usage.billedInputTokens());
+                                            modelMetrics.record(request.getModel(), "blocking", duration, usage);
+                                            usageRecorder.record(call, request.getModel(), usage, duration);
+                                        }
+                                    })
+                                    .doOnError(permit::failed);
+                        },
+                        permit -> Mono.fromRunnable(permit::release))
                 .map(response -> {
                     if (response.getContent() != null && !response.getContent().isEmpty()) {
                         return response.getContent().get(0).getText();
@@ -88,6 +241,50 @@ public class ClaudeService {
                 });
     }
 
+    private static UUID businessIdOf(ClaudeCall call) {
+        return call != null ? call.businessId() : null;
+    }
+
+    private ClaudeRequest newRequest(String model, Object system, int systemChars, List<Message> messages) {
+        ClaudeRequest request = new ClaudeRequest();
+        request.setModel(model != null ? model : claudeConfig.getModel());
+        request.setMaxTokens(claudeConfig.getMaxTokens());
+        request.setSystem(system);
+        request.setMessages(messages.stream()
+                .map(m -> Map.of("role", m.getRole(), "content", m.getContent()))
+                .toList());
+
+        // Only used to draw from the governor's token budget
+        long chars = systemChars;
+        for (Message message : messages) {
+            chars += message.getContent() != null ? message.getContent().length() : 0;
+        }
+        request.setEstimatedInputTokens(TokenEstimator.estimateChars(chars));
+        return request;
+    }
+
+    private Mono<ClaudeApiException> apiError(ClientResponse clientResponse) {
+        int status = clientResponse.statusCode().value();
+        Duration retryAfter = parseRetryAfter(clientResponse.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        return clientResponse.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .map(body -> {
+                    log.error("Claude API error response ({}): {}", status, body);
+                    return new ClaudeApiException("Claude API error: " + body, status, retryAfter);
+                });
+    }
+
+    private static Duration parseRetryAfter(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     public boolean isConfigured() {
         return claudeConfig.getApiKey() != null && !claudeConfig.getApiKey().isBlank();
     }
@@ -112,13 +309,51 @@ public class ClaudeService {
         }
     }
 
+    /**
+     * System prompt as a static prefix (same for every turn of a tenant) and a dynamic suffix.
+     */
+    public record SystemPrompt(String staticPrefix, String dynamicSuffix) {
+
+        int length() {
+            return staticPrefix.length() + dynamicSuffix.length();
+        }
+
+        Object toRequestValue(boolean cacheStaticPrefix) {
+            if (!cacheStaticPrefix) {
+                return staticPrefix + "\n" + dynamicSuffix;
+            }
+            return List.of(
+                    Map.of("type", "text", "text", staticPrefix, "cache_control", Map.of("type", "ephemeral")),
+                    Map.of("type", "text", "text", dynamicSuffix));
+        }
+    }
+
+    /**
+     * Usage reported across the events of one stream.
+     */
+    private static class StreamUsage {
+        private int input;
+        private int output;
+        private int cacheWrite;
+        private int cacheRead;
+
+        TokenUsage toTokenUsage() {
+            return new TokenUsage(input, output, cacheWrite, cacheRead);
+        }
+    }
+
     @Data
     private static class ClaudeRequest {
         private String model;
         @JsonProperty("max_tokens")
         private int maxTokens;
-        private String system;
+        // Either a plain string or a list of text blocks
+        private Object system;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Boolean stream;
         private List<Map<String, String>> messages;
+        @JsonIgnore
+        private int estimatedInputTokens;
     }
 
     @Data
@@ -144,6 +379,14 @@ public class ClaudeService {
             private int inputTokens;
             @JsonProperty("output_tokens")
             private int outputTokens;
+            @JsonProperty("cache_creation_input_tokens")
+            private int cacheCreationInputTokens;
+            @JsonProperty("cache_read_input_tokens")
+            private int cacheReadInputTokens;
+
+            TokenUsage toTokenUsage() {
+                return new TokenUsage(inputTokens, outputTokens, cacheCreationInputTokens, cacheReadInputTokens);
+            }
         }
     }
 }
@@ -0,0 +1,142 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.entity.Conversation;
+import com.invoiceng.entity.ConversationMessage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the message history for a Claude turn within a token budget.
+ *
+ * Messages are taken from the newest backwards until the budget is used, each one cut to
+ * {@code maxMessageTokens} so a pasted description cannot take the whole window. What no
+ * longer fits is represented by the conversation's rolling summary; once enough dropped
+ * messages are missing from it, {@link ConversationSummarizer} is asked to fold them in.
+ * Messages older than the fetched history count as dropped too.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationHistoryAssembler {
+
+    // Role and framing tokens Anthropic adds around each message
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final ClaudeConfig claudeConfig;
+    private final ConversationSummarizer summarizer;
+    private final MeterRegistry meterRegistry;
+
+    private DistributionSummary historyTokens;
+
+    @PostConstruct
+    public void init() {
+        historyTokens = DistributionSummary.builder("claude.history.tokens")
+                .description("Estimated tokens of conversation history sent with a turn")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param history earlier messages in chronological order, excluding the current turn
+     * @param currentMessage the customer's message being answered, always sent in full
+     */
+    public AssembledHistory assemble(Conversation conversation, List<ConversationMessage> history, String currentMessage) {
+        ClaudeConfig.History settings = claudeConfig.getHistory();
+        int maxChars = settings.getMaxMessageTokens() * TokenEstimator.CHARS_PER_TOKEN;
+
+        int used = 0;
+        int firstKept = history.size();
+        while (firstKept > 0) {
+            int tokens = TokenEstimator.estimate(contentOf(history.get(firstKept - 1), maxChars)) + MESSAGE_OVERHEAD_TOKENS;
+            if (used + tokens > settings.getTokenBudget()) {
+                break;
+            }
+            used += tokens;
+            firstKept--;
+        }
+        historyTokens.record(used);
+
+        List<ClaudeService.Message> messages = new ArrayList<>();
+        for (ConversationMessage msg : history.subList(firstKept, history.size())) {
+            String content = contentOf(msg, maxChars);
+            messages.add(msg.isInbound() ? ClaudeService.Message.user(content) : ClaudeService.Message.assistant(content));
+        }
+        messages.add(ClaudeService.Message.user(currentMessage));
+
+        Map<String, Object> context = conversation.getContext();
+        String summary = context != null && context.get(ConversationSummarizer.SUMMARY_KEY) instanceof String s ? s : null;
+        LocalDateTime summaryThrough = context != null ? parseTime(context.get(ConversationSummarizer.SUMMARY_THROUGH_KEY)) : null;
+
+        if (settings.isSummaryEnabled() && !history.isEmpty()) {
+            long unsummarized = history.subList(0, firstKept).stream()
+                    .filter(m -> summaryThrough == null || m.getCreatedAt().isAfter(summaryThrough))
+                    .count();
+            // Messages before the fetched window are missing from the summary too, unless it reaches the window
+            if (summaryThrough == null || summaryThrough.isBefore(history.get(0).getCreatedAt())) {
+                unsummarized += olderThanWindow(conversation, history);
+            }
+            if (unsummarized >= settings.getSummarizeAfterMessages()) {
+                // Through the newest dropped message, or the oldest fetched one when the whole window fits
+                LocalDateTime upTo = history.get(Math.max(0, firstKept - 1)).getCreatedAt();
+                summarizer.requestRefresh(conversation.getId(), conversation.getBusiness().getId(),
+                        summary, summaryThrough, upTo);
+            }
+        }
+
+        return new AssembledHistory(messages, summary);
+    }
+
+    /**
+     * Estimated number of messages older than the fetched history, from the conversation's
+     * message count less the fetched ones and the current turn.
+     */
+    private static long olderThanWindow(Conversation conversation, List<ConversationMessage> history) {
+        int total = conversation.getMessageCount() != null ? conversation.getMessageCount() : 0;
+        return Math.max(0, total - history.size() - 1);
+    }
+
+    /**
+     * Text of a message for the prompt, cut to {@code maxChars}. Media without a caption is
+     * shown by its type.
+     */
+    static String contentOf(ConversationMessage message, int maxChars) {
+        String content = message.getContent();
+        if (content == null || content.isBlank()) {
+            return "[" + message.getMessageType() + "]";
+        }
+        if (content.length() <= maxChars) {
+            return content;
+        }
+        return content.substring(0, maxChars) + "…";
+    }
+
+    private static LocalDateTime parseTime(Object value) {
+        if (!(value instanceof String text)) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            log.warn("Ignoring unreadable history summary timestamp: {}", text);
+            return null;
+        }
+    }
+
+    /**
+     * Messages to send, oldest first and ending with the current turn, plus the summary of
+     * earlier history if there is one.
+     */
+    public record AssembledHistory(List<ClaudeService.Message> messages, String summary) {
+    }
+}
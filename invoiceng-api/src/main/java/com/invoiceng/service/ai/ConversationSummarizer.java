@@ -0,0 +1,164 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.entity.ConversationMessage;
+import com.invoiceng.repository.ConversationMessageRepository;
+import com.invoiceng.repository.ConversationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maintains the rolling summary of conversation history that no longer fits the prompt.
+ *
+ * Refreshes run on a small pool of their own, off the conversation lanes, so a turn never
+ * waits for one. At most one refresh per conversation is queued or running; a request that
+ * finds the pool full is dropped and asked for again on a later turn. The summary is merged
+ * into {@code conversations.context} with a guarded update, so an older refresh can never
+ * overwrite a newer one.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationSummarizer {
+
+    static final String SUMMARY_KEY = "historySummary";
+    static final String SUMMARY_THROUGH_KEY = "historySummaryThrough";
+
+    // Lower bound for conversations that have no summary yet
+    private static final LocalDateTime BEFORE_ANY_MESSAGE = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private static final String INSTRUCTIONS = """
+            You keep a running summary of a WhatsApp sales chat between a Nigerian online shop's \
+            assistant and a customer. Merge the summary so far (if any) with the new messages.
+            Keep what matters for the sale: products and quantities discussed, prices quoted, \
+            delivery address and area, customer preferences, complaints and anything promised.
+            Drop greetings and small talk. Write plain text under 120 words, no action tags.""";
+
+    private final ClaudeService claudeService;
+    private final ModelRouter modelRouter;
+    private final ClaudeConfig claudeConfig;
+    private final ConversationMessageRepository messageRepository;
+    private final ConversationRepository conversationRepository;
+    private final MeterRegistry meterRegistry;
+
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor executor;
+    private Counter refreshed;
+    private Counter failed;
+    private Counter dropped;
+
+    @PostConstruct
+    public void init() {
+        ClaudeConfig.History settings = claudeConfig.getHistory();
+        int threads = Math.max(1, settings.getSummaryThreads());
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, settings.getSummaryQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "conversation-summarizer-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        refreshed = Counter.builder("claude.history.summaries").tag("result", "refreshed")
+                .description("Conversation history summaries written")
+                .register(meterRegistry);
+        failed = Counter.builder("claude.history.summaries").tag("result", "failed")
+                .description("Conversation history summary refreshes that failed")
+                .register(meterRegistry);
+        dropped = Counter.builder("claude.history.summaries").tag("result", "dropped")
+                .description("Summary refreshes dropped because the summarizer queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a refresh folding the messages after {@code previousThrough} up to {@code upTo} into
+     * the summary, oldest first and at most {@code summaryMaxMessages} of them; later refreshes
+     * pick up the rest. Does nothing if a refresh for the conversation is already pending.
+     */
+    public void requestRefresh(UUID conversationId, UUID businessId, String previousSummary,
+                               LocalDateTime previousThrough, LocalDateTime upTo) {
+        if (!pending.add(conversationId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh(conversationId, businessId, previousSummary, previousThrough, upTo);
+                } catch (Exception e) {
+                    failed.increment();
+                    log.warn("Failed to summarize history of conversation {}: {}", conversationId, e.getMessage());
+                } finally {
+                    pending.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(conversationId);
+            dropped.increment();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Summaries are best effort; unfinished ones are requested again on the next turn
+        executor.shutdownNow();
+    }
+
+    private void refresh(UUID conversationId, UUID businessId, String previousSummary,
+                         LocalDateTime previousThrough, LocalDateTime upTo) {
+        ClaudeConfig.History settings = claudeConfig.getHistory();
+        List<ConversationMessage> messages = messageRepository.findMessagesBetween(
+                conversationId,
+                previousThrough != null ? previousThrough : BEFORE_ANY_MESSAGE,
+                upTo,
+                PageRequest.of(0, Math.max(1, settings.getSummaryMaxMessages())));
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        int maxChars = settings.getMaxMessageTokens() * TokenEstimator.CHARS_PER_TOKEN;
+        StringBuilder prompt = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            prompt.append("Summary so far:\n").append(previousSummary).append("\n\n");
+        }
+        prompt.append("New messages:\n");
+        for (ConversationMessage message : messages) {
+            prompt.append(message.isInbound() ? "Customer: " : "Assistant: ")
+                    .append(ConversationHistoryAssembler.contentOf(message, maxChars))
+                    .append("\n");
+        }
+        prompt.append("\nWrite the updated summary.");
+
+        String summary = claudeService.chat(ClaudeCall.historySummary(businessId, conversationId), modelRouter.backgroundModel(), INSTRUCTIONS,
+                List.of(ClaudeService.Message.user(prompt.toString())));
+        if (summary == null || summary.isBlank()) {
+            failed.increment();
+            return;
+        }
+
+        LocalDateTime through = messages.get(messages.size() - 1).getCreatedAt();
+        conversationRepository.mergeHistorySummary(conversationId, summary.trim(), through.toString());
+        refreshed.increment();
+        log.debug("Summarized {} messages of conversation {} through {}", messages.size(), conversationId, through);
+    }
+}
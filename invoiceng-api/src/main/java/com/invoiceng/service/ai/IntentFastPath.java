@@ -0,0 +1,306 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.dto.OrderContext;
+import com.invoiceng.entity.AgentConfig;
+import com.invoiceng.entity.Conversation;
+import com.invoiceng.entity.ConversationState;
+import com.invoiceng.service.ConversationStateMachine;
+import com.invoiceng.service.tenant.TenantDescriptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deterministic pre-classifier that answers trivial turns without calling Claude.
+ *
+ * A message is classified only if every word belongs to a known phrase or is a filler
+ * ("please", "sir", "abeg"...), so "ok thanks" matches but "ok how much is the red one"
+ * does not. State rules then decide whether the intent is safe to answer here: "yes" only
+ * confirms while an order is awaiting confirmation, "paid" is only acknowledged while a
+ * payment is pending, and so on. Anything else is escalated to the model.
+ *
+ * In shadow mode the classification is recorded next to what the model actually did, so
+ * the agreement rate can be checked before answering is switched on for a tenant.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IntentFastPath {
+
+    public enum Intent {
+        GREETING, ACKNOWLEDGE, THANKS, SHOW_CART, PAYMENT_CLAIM, CONFIRM, QUANTITY
+    }
+
+    private static final String TENANT_SWITCH = "fast_path_enabled";
+    private static final int MAX_QUANTITY = 99;
+
+    private static final Set<String> FILLERS = Set.of(
+            "please", "pls", "plz", "sir", "ma", "madam", "o", "oo", "ooo", "oh", "jare", "abeg",
+            "biko", "dear", "boss", "bro", "sis", "na", "so");
+
+    private static final KeywordTrie<Intent> KEYWORDS = new KeywordTrie<>();
+
+    static {
+        phrases(Intent.GREETING, "hi", "hii", "hello", "hey", "hiya", "hi there", "hello there", "howdy",
+                "greetings", "good morning", "good afternoon", "good evening", "morning", "evening",
+                "how far", "wassup", "whatsup", "whats up", "what s up", "sup");
+        phrases(Intent.ACKNOWLEDGE, "ok", "okay", "okk", "k", "kk", "alright", "alrighty", "noted",
+                "cool", "fine", "got it", "i see");
+        phrases(Intent.THANKS, "thanks", "thank you", "thank u", "thanks a lot", "thank you very much",
+                "thanks so much", "thx", "tnx", "tanx", "ty", "much appreciated");
+        phrases(Intent.SHOW_CART, "cart", "my cart", "show cart", "show my cart", "view cart", "view my cart",
+                "whats in my cart", "what s in my cart", "my order", "show my order", "basket");
+        phrases(Intent.PAYMENT_CLAIM, "paid", "i paid", "i have paid", "i ve paid", "ive paid",
+                "payment done", "payment made", "made payment", "i have made payment", "i ve made payment",
+                "i have made the payment", "done paying", "i have sent the money");
+        phrases(Intent.CONFIRM, "yes", "yes please", "yeah", "yep", "yup", "confirm", "confirmed", "i confirm",
+                "go ahead", "proceed", "correct", "that s correct", "thats correct");
+    }
+
+    private final ClaudeConfig claudeConfig;
+    private final ConversationStateMachine stateMachine;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Intent, Counter> answered = new EnumMap<>(Intent.class);
+    private final Map<Intent, Counter> agreed = new EnumMap<>(Intent.class);
+    private final Map<Intent, Counter> disagreed = new EnumMap<>(Intent.class);
+    private Counter escalated;
+
+    @PostConstruct
+    public void init() {
+        for (Intent intent : Intent.values()) {
+            String tag = intent.name().toLowerCase(Locale.ROOT);
+            answered.put(intent, Counter.builder("claude.fast.path.answered").tag("intent", tag)
+                    .description("Turns answered locally without calling Claude")
+                    .register(meterRegistry));
+            agreed.put(intent, Counter.builder("claude.fast.path.shadow").tag("intent", tag).tag("agreed", "true")
+                    .description("Shadow classifications the model's response agreed with")
+                    .register(meterRegistry));
+            disagreed.put(intent, Counter.builder("claude.fast.path.shadow").tag("intent", tag).tag("agreed", "false")
+                    .description("Shadow classifications the model's response disagreed with")
+                    .register(meterRegistry));
+        }
+        escalated = Counter.builder("claude.fast.path.escalated")
+                .description("Turns the fast path could not classify and left to the model")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Classify a turn.
+     *
+     * @return the intent if it is trivial and safe to answer in the current state, or null
+     *         to escalate to the model (also when the fast path is off)
+     */
+    public Intent classify(String message, ConversationState state, OrderContext orderContext) {
+        ClaudeConfig.FastPath settings = claudeConfig.getFastPath();
+        if (settings.getMode() == ClaudeConfig.FastPath.Mode.OFF
+                || message == null || message.length() > settings.getMaxMessageLength()) {
+            return null;
+        }
+
+        Intent intent = match(normalize(message));
+        if (intent == null || !allowedIn(intent, state, orderContext)) {
+            escalated.increment();
+            return null;
+        }
+        return intent;
+    }
+
+    /**
+     * Whether classified turns of this tenant are answered locally rather than only shadowed.
+     */
+    public boolean isAnsweringEnabled(TenantDescriptor tenant) {
+        if (claudeConfig.getFastPath().getMode() != ClaudeConfig.FastPath.Mode.ON) {
+            return false;
+        }
+        AgentConfig config = tenant.getAgentConfig();
+        return config != null && config.getSalesSettings() != null
+                && Boolean.TRUE.equals(config.getSalesSettings().get(TENANT_SWITCH));
+    }
+
+    /**
+     * Answer a classified turn. Confirmation and quantity replies update the order like the
+     * matching model actions would.
+     */
+    public AISalesAgentService.AIResponse answer(Intent intent, Conversation conversation, AgentConfig config,
+                                                 OrderContext orderContext, String message) {
+        answered.get(intent).increment();
+        ConversationState state = ConversationState.fromValue(conversation.getState());
+
+        switch (intent) {
+            case CONFIRM -> {
+                ConversationStateMachine.CartOperationResult result = stateMachine.confirmOrder(conversation);
+                return AISalesAgentService.AIResponse.builder()
+                        .message(result.getMessage())
+                        .requiresPaymentLink(result.isRequiresPaymentLink())
+                        .suggestedState(result.isSuccess() ? ConversationState.AWAITING_PAYMENT.getValue() : null)
+                        .executedActions(result.isSuccess() ? List.of("CONFIRM_ORDER") : List.of())
+                        .orderContext(result.getOrderContext() != null ? result.getOrderContext() : orderContext)
+                        .build();
+            }
+            case QUANTITY -> {
+                int quantity = Integer.parseInt(normalize(message)[0]);
+                ConversationStateMachine.CartOperationResult result =
+                        stateMachine.updateCartItemQuantity(conversation, 0, quantity);
+                if (!result.isSuccess()) {
+                    return reply(result.getMessage(), orderContext);
+                }
+                return AISalesAgentService.AIResponse.builder()
+                        .message(result.getMessage() + "\n\n" + result.getOrderContext().getCartSummary()
+                                + "\n\nWould you like anything else, or should we proceed with delivery?")
+                        .executedActions(List.of("ADD_TO_CART:" + orderContext.getItems().get(0).getProductName() + "," + quantity))
+                        .orderContext(result.getOrderContext())
+                        .build();
+            }
+            case SHOW_CART -> {
+                return orderContext.isEmpty()
+                        ? reply("Your cart is empty. Would you like to see our products?", orderContext)
+                        : reply(orderContext.getCartSummary(), orderContext);
+            }
+            case GREETING -> {
+                return reply(config != null && config.getGreetingMessage() != null
+                        ? config.getGreetingMessage()
+                        : "Hello! Welcome to our store. How can I help you today?", orderContext);
+            }
+            case THANKS -> {
+                return reply(state == ConversationState.AWAITING_PAYMENT
+                        ? "You're welcome! Let me know once you've made the payment."
+                        : "You're welcome! Is there anything else I can help you with?", orderContext);
+            }
+            case PAYMENT_CLAIM -> {
+                return reply("Thank you! We're confirming your payment and you'll get a message here "
+                        + "as soon as it comes through.", orderContext);
+            }
+            default -> {
+                return reply(state == ConversationState.AWAITING_PAYMENT
+                        ? "Alright! I'm here if you need any help with the payment."
+                        : "Great! Let me know if there's anything else you need.", orderContext);
+            }
+        }
+    }
+
+    /**
+     * Record whether the model's response to a shadowed turn matches the local classification:
+     * the same order action for confirmations and quantities, and no action or handoff otherwise.
+     */
+    public void recordShadow(Intent intent, AISalesAgentService.AIResponse modelResponse) {
+        List<String> actions = modelResponse.getExecutedActions() != null ? modelResponse.getExecutedActions() : List.of();
+        boolean agrees = switch (intent) {
+            case CONFIRM -> actions.contains("CONFIRM_ORDER");
+            case QUANTITY -> actions.stream().anyMatch(a -> a.startsWith("ADD_TO_CART:"));
+            default -> actions.isEmpty() && !modelResponse.isShouldHandoff();
+        };
+        if (agrees) {
+            agreed.get(intent).increment();
+        } else {
+            disagreed.get(intent).increment();
+            log.debug("Fast path classified a turn as {} but the model executed {} (handoff={})",
+                    intent, actions, modelResponse.isShouldHandoff());
+        }
+    }
+
+    /**
+     * The message's single intent, ignoring fillers, or null if any word is unknown or the
+     * message mixes intents. An acknowledgement next to another intent ("ok thanks") yields
+     * the other intent.
+     */
+    static Intent match(String[] tokens) {
+        if (tokens.length == 1 && isQuantity(tokens[0])) {
+            return Intent.QUANTITY;
+        }
+
+        Set<Intent> found = EnumSet.noneOf(Intent.class);
+        int i = 0;
+        while (i < tokens.length) {
+            KeywordTrie.Match<Intent> match = KEYWORDS.longestMatch(tokens, i);
+            if (match != null) {
+                found.add(match.value());
+                i += match.length();
+            } else if (FILLERS.contains(tokens[i])) {
+                i++;
+            } else {
+                return null;
+            }
+        }
+
+        if (found.size() > 1) {
+            found.remove(Intent.ACKNOWLEDGE);
+        }
+        return found.size() == 1 ? found.iterator().next() : null;
+    }
+
+    private static boolean allowedIn(Intent intent, ConversationState state, OrderContext orderContext) {
+        return switch (intent) {
+            case GREETING -> !state.isOrdering() && state != ConversationState.AWAITING_PAYMENT;
+            case ACKNOWLEDGE -> state == ConversationState.AWAITING_PAYMENT || state == ConversationState.COMPLETED;
+            case THANKS -> state != ConversationState.CONFIRMING_ORDER;
+            case SHOW_CART -> true;
+            case PAYMENT_CLAIM -> state == ConversationState.AWAITING_PAYMENT;
+            case CONFIRM -> state == ConversationState.CONFIRMING_ORDER && orderContext.isReadyForConfirmation();
+            // Only unambiguous while the cart holds a single line the customer is still sizing
+            case QUANTITY -> state == ConversationState.ADDING_TO_CART && orderContext.getItems() != null
+                    && orderContext.getItems().size() == 1;
+        };
+    }
+
+    private static boolean isQuantity(String token) {
+        if (token.isEmpty() || token.length() > 2) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        int quantity = Integer.parseInt(token);
+        return quantity >= 1 && quantity <= MAX_QUANTITY;
+    }
+
+    /**
+     * Lower-case words with punctuation, emoji and repeated spaces removed.
+     */
+    static String[] normalize(String message) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        String lower = message.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (!word.isEmpty()) {
+                tokens.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (!word.isEmpty()) {
+            tokens.add(word.toString());
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    private static void phrases(Intent intent, String... phrases) {
+        for (String phrase : phrases) {
+            KEYWORDS.put(phrase, intent);
+        }
+    }
+
+    private static AISalesAgentService.AIResponse reply(String message, OrderContext orderContext) {
+        return AISalesAgentService.AIResponse.builder()
+                .message(message)
+                .shouldHandoff(false)
+                .orderContext(orderContext)
+                .build();
+    }
+}
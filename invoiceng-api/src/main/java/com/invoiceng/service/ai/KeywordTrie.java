@@ -0,0 +1,54 @@
+package com.invoiceng.service.ai;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Word-level trie mapping keyword phrases to values, for matching normalized tokens without
+ * regular expressions. Built once, then only read; reads need no synchronization as long as
+ * the trie is published safely (e.g. via a final field).
+ */
+public final class KeywordTrie<V> {
+
+    private final Node<V> root = new Node<>();
+
+    /**
+     * Add a phrase of space-separated, already normalized words.
+     */
+    public KeywordTrie<V> put(String phrase, V value) {
+        Node<V> node = root;
+        for (String word : phrase.split(" ")) {
+            node = node.children.computeIfAbsent(word, w -> new Node<>());
+        }
+        node.value = value;
+        return this;
+    }
+
+    /**
+     * Longest phrase starting at {@code tokens[from]}.
+     *
+     * @return the match, or null if no phrase starts there
+     */
+    public Match<V> longestMatch(String[] tokens, int from) {
+        Node<V> node = root;
+        Match<V> longest = null;
+        for (int i = from; i < tokens.length; i++) {
+            node = node.children.get(tokens[i]);
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                longest = new Match<>(node.value, i - from + 1);
+            }
+        }
+        return longest;
+    }
+
+    public record Match<V>(V value, int length) {
+    }
+
+    private static final class Node<V> {
+        private final Map<String, Node<V>> children = new HashMap<>(4);
+        private V value;
+    }
+}
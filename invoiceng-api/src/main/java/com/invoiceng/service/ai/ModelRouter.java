@@ -0,0 +1,154 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.dto.OrderContext;
+import com.invoiceng.entity.AgentConfig;
+import com.invoiceng.entity.ConversationState;
+import com.invoiceng.service.tenant.TenantDescriptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Picks the Claude model for a conversation turn.
+ *
+ * Greeting and browsing turns go to the fast model. The strong model is used for the
+ * states listed in {@code claude.routing.strong-states}, for long messages and large carts,
+ * and whenever the message looks like a complaint, a price negotiation or a request for a
+ * human (built-in phrases plus the tenant's handoff triggers).
+ *
+ * Tenants can override this in {@code agent_configs.model_routing}:
+ * {@code fast_model} and {@code strong_model} replace the models, {@code strong_states}
+ * replaces the state list and {@code force} ({@code fast} or {@code strong}) pins every turn.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ModelRouter {
+
+    public enum Tier {
+        FAST, STRONG
+    }
+
+    public enum Reason {
+        DISABLED, TENANT_FORCED, HANDOFF_RISK, LONG_MESSAGE, LARGE_CART, STATE
+    }
+
+    // Matched as whole words against the normalized message
+    private static final List<String> RISK_PHRASES = List.of(
+            "refund", "complain", "complaint", "angry", "scam", "fraud", "fake", "disappointed", "not happy",
+            "manager", "human", "customer care", "wrong item", "damaged", "broken", "not delivered",
+            "never arrived", "discount", "reduce", "last price", "too expensive", "cheaper", "negotiate");
+
+    private final ClaudeConfig claudeConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Tier, Map<Reason, Counter>> decisions = new EnumMap<>(Tier.class);
+
+    @PostConstruct
+    public void init() {
+        for (Tier tier : Tier.values()) {
+            Map<Reason, Counter> byReason = new EnumMap<>(Reason.class);
+            for (Reason reason : Reason.values()) {
+                byReason.put(reason, Counter.builder("claude.routing.decisions")
+                        .tag("tier", tier.name().toLowerCase(Locale.ROOT))
+                        .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                        .description("Conversation turns routed to each model tier, by deciding rule")
+                        .register(meterRegistry));
+            }
+            decisions.put(tier, byReason);
+        }
+    }
+
+    public Route route(TenantDescriptor tenant, ConversationState state, OrderContext orderContext, String message) {
+        ClaudeConfig.Routing settings = claudeConfig.getRouting();
+        if (!settings.isEnabled()) {
+            return decide(new Route(defaultModel(), Tier.STRONG, Reason.DISABLED));
+        }
+
+        AgentConfig config = tenant.getAgentConfig();
+        Map<String, Object> overrides = config != null && config.getModelRouting() != null
+                ? config.getModelRouting() : Map.of();
+        String fastModel = stringOr(overrides.get("fast_model"), settings.getFastModel());
+        String strongModel = stringOr(overrides.get("strong_model"), defaultModel());
+
+        Object force = overrides.get("force");
+        if ("fast".equals(force)) {
+            return decide(new Route(fastModel, Tier.FAST, Reason.TENANT_FORCED));
+        }
+        if ("strong".equals(force)) {
+            return decide(new Route(strongModel, Tier.STRONG, Reason.TENANT_FORCED));
+        }
+
+        if (isHandoffRisk(message, config)) {
+            return decide(new Route(strongModel, Tier.STRONG, Reason.HANDOFF_RISK));
+        }
+        if (message != null && message.length() > settings.getLongMessageChars()) {
+            return decide(new Route(strongModel, Tier.STRONG, Reason.LONG_MESSAGE));
+        }
+        if (orderContext.getItems() != null && orderContext.getItems().size() >= settings.getLargeCartItems()) {
+            return decide(new Route(strongModel, Tier.STRONG, Reason.LARGE_CART));
+        }
+
+        Collection<?> strongStates = overrides.get("strong_states") instanceof Collection<?> states
+                ? states : settings.getStrongStates();
+        return strongStates.contains(state.getValue())
+                ? decide(new Route(strongModel, Tier.STRONG, Reason.STATE))
+                : decide(new Route(fastModel, Tier.FAST, Reason.STATE));
+    }
+
+    /**
+     * Model for background work such as history summaries.
+     */
+    public String backgroundModel() {
+        ClaudeConfig.Routing settings = claudeConfig.getRouting();
+        return settings.isEnabled() ? settings.getFastModel() : defaultModel();
+    }
+
+    private boolean isHandoffRisk(String message, AgentConfig config) {
+        if (message == null || message.isBlank()) {
+            return false;
+        }
+        String text = " " + String.join(" ", IntentFastPath.normalize(message)) + " ";
+        for (String phrase : RISK_PHRASES) {
+            if (text.contains(" " + phrase + " ")) {
+                return true;
+            }
+        }
+        if (config != null && config.getHandoffTriggers() != null) {
+            for (String trigger : config.getHandoffTriggers()) {
+                String normalized = String.join(" ", IntentFastPath.normalize(trigger));
+                if (!normalized.isEmpty() && text.contains(" " + normalized + " ")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String defaultModel() {
+        String strongModel = claudeConfig.getRouting().getStrongModel();
+        return strongModel != null && !strongModel.isBlank() ? strongModel : claudeConfig.getModel();
+    }
+
+    private Route decide(Route route) {
+        decisions.get(route.tier()).get(route.reason()).increment();
+        return route;
+    }
+
+    private static String stringOr(Object value, String fallback) {
+        return value instanceof String s && !s.isBlank() ? s : fallback;
+    }
+
+    public record Route(String model, Tier tier, Reason reason) {
+    }
+}
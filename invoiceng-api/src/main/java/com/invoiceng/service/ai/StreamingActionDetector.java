@@ -0,0 +1,145 @@
+package com.invoiceng.service.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks complete action tags ({@code [ADD_TO_CART: ...]}, {@code [CONFIRM_ORDER]}, ...)
+ * out of model output while it is still streaming in.
+ *
+ * Text is appended chunk by chunk; each call returns the tags completed by that chunk, in
+ * the order they appear. A {@code [} that can no longer start a known action is skipped
+ * as soon as that is certain, so ordinary brackets never hold up detection. The positions
+ * of the tags are kept so the text can be given back without them in one pass. One instance
+ * per response; not thread-safe.
+ */
+public class StreamingActionDetector {
+
+    static final String[] ACTION_NAMES = {
+            "ADD_TO_CART", "SET_ADDRESS", "CONFIRM_ORDER", "CANCEL_ORDER", "APPLY_DISCOUNT", "HANDOFF"
+    };
+
+    // A tag longer than this is not a tag (addresses are the longest legitimate argument)
+    private static final int MAX_TAG_LENGTH = 512;
+
+    private final StringBuilder text = new StringBuilder();
+    // Start and end (exclusive) of each detected tag, in order
+    private final List<int[]> tagSpans = new ArrayList<>();
+    private int scanFrom;
+
+    /**
+     * Append a chunk of output.
+     *
+     * @return tags completed by this chunk, including the brackets
+     */
+    public List<String> append(String chunk) {
+        text.append(chunk);
+        List<String> tags = null;
+
+        while (scanFrom < text.length()) {
+            int open = text.indexOf("[", scanFrom);
+            if (open < 0) {
+                scanFrom = text.length();
+                break;
+            }
+
+            int close = text.indexOf("]", open + 1);
+            int end = close >= 0 ? close : text.length();
+            if (!startsWithAction(open + 1, end) || end - open > MAX_TAG_LENGTH) {
+                scanFrom = open + 1;
+                continue;
+            }
+            if (close < 0) {
+                // Possibly a tag whose end has not arrived yet
+                scanFrom = open;
+                break;
+            }
+
+            if (hasCompleteActionName(open + 1, close)) {
+                if (tags == null) {
+                    tags = new ArrayList<>(2);
+                }
+                tags.add(text.substring(open, close + 1));
+                tagSpans.add(new int[]{open, close + 1});
+                scanFrom = close + 1;
+            } else {
+                scanFrom = open + 1;
+            }
+        }
+        return tags != null ? tags : List.of();
+    }
+
+    /**
+     * Everything appended so far.
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Everything appended so far, with the detected tags removed.
+     */
+    public String getTextWithoutTags() {
+        if (tagSpans.isEmpty()) {
+            return text.toString();
+        }
+        StringBuilder stripped = new StringBuilder(text.length());
+        int from = 0;
+        for (int[] span : tagSpans) {
+            stripped.append(text, from, span[0]);
+            from = span[1];
+        }
+        return stripped.append(text, from, text.length()).toString();
+    }
+
+    /**
+     * Name of the action a detected tag is for, or null if it is not one.
+     */
+    public static String actionName(String tag) {
+        int start = 1;
+        while (start < tag.length() && Character.isWhitespace(tag.charAt(start))) {
+            start++;
+        }
+        for (String name : ACTION_NAMES) {
+            if (tag.regionMatches(true, start, name, 0, name.length())) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the text between {@code from} and {@code to} is, or could still grow into,
+     * an action name (leading whitespace allowed).
+     */
+    private boolean startsWithAction(int from, int to) {
+        int start = skipWhitespace(from, to);
+        String candidate = text.substring(start, Math.min(to, start + 16)).toUpperCase(Locale.ROOT);
+        for (String name : ACTION_NAMES) {
+            if (candidate.length() >= name.length() ? candidate.startsWith(name) : name.startsWith(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasCompleteActionName(int from, int to) {
+        int start = skipWhitespace(from, to);
+        String candidate = text.substring(start, to).toUpperCase(Locale.ROOT);
+        for (String name : ACTION_NAMES) {
+            if (candidate.startsWith(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int skipWhitespace(int from, int to) {
+        int i = from;
+        while (i < to && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
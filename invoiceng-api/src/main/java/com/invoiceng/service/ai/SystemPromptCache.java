@@ -0,0 +1,249 @@
+package com.invoiceng.service.ai;
+
+import com.invoiceng.config.ClaudeConfig;
+import com.invoiceng.entity.AgentConfig;
+import com.invoiceng.service.tenant.CatalogProduct;
+import com.invoiceng.service.tenant.CatalogSnapshot;
+import com.invoiceng.service.tenant.ProductCatalog;
+import com.invoiceng.service.tenant.TenantDescriptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tenant cache of the static part of the sales agent's system prompt: identity, rules,
+ * catalog, delivery terms, actions and examples. Only the cart and state guidance are
+ * built per turn.
+ *
+ * Catalogs larger than {@code claude.catalog.full-list-max-products} are not listed in the
+ * prefix. It carries a summary of the categories instead, and {@link #getRelevantProducts}
+ * picks the products for each turn from the snapshot's BM25 index, so the prompt stays the
+ * same size however many products the tenant sells.
+ *
+ * An entry is rebuilt when the catalog snapshot or the tenant descriptor it was built from
+ * is replaced ({@link ProductCatalog} and the tenant directory reload them after a catalog,
+ * profile or agent-config change), or after {@code ttlSeconds}. Keeping the prefix
+ * byte-identical between turns is also what lets Anthropic's prompt cache hit.
+ */
+@Component
+@RequiredArgsConstructor
+public class SystemPromptCache {
+
+    private final ProductCatalog productCatalog;
+    private final ClaudeConfig claudeConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<UUID, CachedPrompt> prompts = new ConcurrentHashMap<>();
+
+    private Counter hits;
+    private Counter misses;
+    private Timer retrievalDuration;
+    private DistributionSummary retrievedProducts;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("claude.system.prompt.cache").tag("result", "hit")
+                .description("System prompts served from the per-tenant cache")
+                .register(meterRegistry);
+        misses = Counter.builder("claude.system.prompt.cache").tag("result", "miss")
+                .description("System prompts rebuilt from the catalog")
+                .register(meterRegistry);
+        retrievalDuration = Timer.builder("claude.catalog.retrieval")
+                .description("Time to select the relevant products of a turn")
+                .register(meterRegistry);
+        retrievedProducts = DistributionSummary.builder("claude.catalog.retrieved")
+                .description("Products put in the prompt of a turn for a large catalog")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Static system prompt prefix for the tenant.
+     */
+    public String getStaticPrompt(TenantDescriptor tenant) {
+        CatalogSnapshot catalog = productCatalog.get(tenant.getBusinessId());
+        CachedPrompt cached = prompts.get(tenant.getBusinessId());
+        if (cached != null && cached.tenant == tenant && cached.catalog == catalog && !cached.isExpired()) {
+            hits.increment();
+            return cached.prompt;
+        }
+
+        misses.increment();
+        String prompt = buildStaticPrompt(tenant, catalog);
+        long ttlNanos = TimeUnit.SECONDS.toNanos(claudeConfig.getPromptCache().getTtlSeconds());
+        prompts.put(tenant.getBusinessId(), new CachedPrompt(tenant, catalog, prompt, System.nanoTime() + ttlNanos));
+        return prompt;
+    }
+
+    /**
+     * Per-turn product section for tenants whose catalog is too large to list in the static
+     * prefix, or null when the whole catalog is already there. The query is matched against
+     * names, categories, tags, AI keywords and descriptions.
+     */
+    public String getRelevantProducts(TenantDescriptor tenant, String query) {
+        CatalogSnapshot catalog = productCatalog.get(tenant.getBusinessId());
+        if (isListedInFull(catalog)) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        List<CatalogProduct> relevant = catalog.searchIndex().topK(query, claudeConfig.getCatalog().getTopK());
+        retrievalDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        retrievedProducts.record(relevant.size());
+
+        StringBuilder section = new StringBuilder(64 * (relevant.size() + 1));
+        if (relevant.isEmpty()) {
+            section.append("RELEVANT PRODUCTS: none matched yet. Ask what they're looking for and suggest a category.\n");
+        } else {
+            section.append("RELEVANT PRODUCTS:\n");
+            relevant.forEach(p -> appendProduct(section, p));
+        }
+        return section.toString();
+    }
+
+    private String buildStaticPrompt(TenantDescriptor tenant, CatalogSnapshot catalog) {
+        AgentConfig config = tenant.getAgentConfig();
+        StringBuilder prompt = new StringBuilder(4096);
+
+        // Agent identity and personality
+        String agentName = config != null && config.getAgentName() != null ?
+                config.getAgentName() : "Ayo";
+        String businessName = tenant.getBusinessName() != null ?
+                tenant.getBusinessName() : "our store";
+
+        prompt.append("You are ").append(agentName).append(", a friendly WhatsApp sales assistant for ")
+                .append(businessName).append(" in Nigeria. You're warm, helpful, and great at closing sales.\n\n");
+
+        // Core behavior rules - CRITICAL
+        prompt.append("CRITICAL RULES:\n");
+        prompt.append("1. Keep responses SHORT (1-2 sentences max). WhatsApp users hate long messages.\n");
+        prompt.append("2. Be conversational and warm - use light Nigerian English flavor.\n");
+        prompt.append("3. Always guide toward a purchase - ask if they want to order, offer help.\n");
+        prompt.append("4. NEVER invent products or prices not in your catalog.\n");
+        prompt.append("5. Use emojis sparingly (1-2 max per message).\n");
+        prompt.append("6. NEVER invent or fabricate bank account details, payment info, or any business information not provided below.\n");
+        prompt.append("7. For payments: ONLY tell customers 'I'll send you a payment link shortly' - NEVER provide manual bank transfer details.\n\n");
+
+        // Available products - IMPORTANT
+        if (!catalog.isEmpty() && isListedInFull(catalog)) {
+            prompt.append("YOUR PRODUCTS:\n");
+            for (CatalogProduct p : catalog.getProducts()) {
+                appendProduct(prompt, p);
+            }
+            prompt.append("\n");
+        } else if (!catalog.isEmpty()) {
+            appendCategorySummary(prompt, catalog);
+        }
+
+        // Delivery info
+        String dispatchTime = config != null && config.getDispatchTime() != null ?
+                config.getDispatchTime() : "24-48 hours";
+        BigDecimal deliveryFee = config != null && config.getDefaultDeliveryFee() != null ?
+                config.getDefaultDeliveryFee() : BigDecimal.valueOf(1500);
+        prompt.append("DELIVERY: ₦").append(deliveryFee.setScale(0, RoundingMode.HALF_UP).toPlainString());
+        prompt.append(" fee, ships within ").append(dispatchTime).append("\n\n");
+
+        // Action commands
+        prompt.append("ACTIONS (include in your response when appropriate):\n");
+        prompt.append("[ADD_TO_CART: \"exact product name\", quantity] - when customer wants to buy\n");
+        prompt.append("[SET_ADDRESS: \"full address\"] - when customer gives address\n");
+        prompt.append("[CONFIRM_ORDER] - when customer says yes/confirm/proceed\n");
+        prompt.append("[HANDOFF: \"reason\"] - only for complex issues needing human help\n\n");
+
+        // Example responses for quality
+        prompt.append("EXAMPLE GOOD RESPONSES:\n");
+        prompt.append("• Greeting: \"Hi! 👋 Welcome to ").append(businessName).append("! What can I help you find today?\"\n");
+        prompt.append("• Product inquiry: \"Yes! Our [Product] is ₦X. Very popular! Want me to add it to your cart?\"\n");
+        prompt.append("• After adding to cart: \"Added! ✓ Anything else, or should we proceed to checkout?\"\n");
+        prompt.append("• Asking for address: \"Great! Where should we deliver? Please share your full address.\"\n");
+
+        return prompt.toString();
+    }
+
+    private boolean isListedInFull(CatalogSnapshot catalog) {
+        return catalog.size() <= claudeConfig.getCatalog().getFullListMaxProducts();
+    }
+
+    private static void appendProduct(StringBuilder prompt, CatalogProduct p) {
+        prompt.append("• ").append(p.getName());
+        prompt.append(" - ₦").append(p.getPrice().setScale(0, RoundingMode.HALF_UP).toPlainString());
+        if (p.isTrackInventory() && p.getQuantity() != null) {
+            if (p.getQuantity() <= 0) {
+                prompt.append(" [SOLD OUT]");
+            } else if (p.getQuantity() < 5) {
+                prompt.append(" [Only ").append(p.getQuantity()).append(" left!]");
+            }
+        }
+        prompt.append("\n");
+    }
+
+    /**
+     * Categories with their product count and price range, in name order so the prefix
+     * only changes when the catalog does.
+     */
+    private static void appendCategorySummary(StringBuilder prompt, CatalogSnapshot catalog) {
+        Map<String, CategoryStats> categories = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (CatalogProduct p : catalog.getProducts()) {
+            String category = p.getCategory() != null && !p.getCategory().isBlank() ? p.getCategory().trim() : "Other";
+            categories.computeIfAbsent(category, k -> new CategoryStats()).add(p.getPrice());
+        }
+
+        prompt.append("YOUR PRODUCTS: ").append(catalog.size()).append(" products in these categories:\n");
+        categories.forEach((category, stats) -> {
+            prompt.append("• ").append(category).append(" (").append(stats.count).append(")");
+            if (stats.min != null) {
+                prompt.append(" ₦").append(stats.min.setScale(0, RoundingMode.HALF_UP).toPlainString());
+                if (stats.max.compareTo(stats.min) > 0) {
+                    prompt.append(" - ₦").append(stats.max.setScale(0, RoundingMode.HALF_UP).toPlainString());
+                }
+            }
+            prompt.append("\n");
+        });
+        prompt.append("Only the products under RELEVANT PRODUCTS below can be quoted or added to the cart. ");
+        prompt.append("If the customer wants something not listed there, ask them to describe it.\n\n");
+    }
+
+    private static class CategoryStats {
+        private int count;
+        private BigDecimal min;
+        private BigDecimal max;
+
+        void add(BigDecimal price) {
+            count++;
+            if (price != null) {
+                min = min == null || price.compareTo(min) < 0 ? price : min;
+                max = max == null || price.compareTo(max) > 0 ? price : max;
+            }
+        }
+    }
+
+    private static class CachedPrompt {
+        private final TenantDescriptor tenant;
+        private final CatalogSnapshot catalog;
+        private final String prompt;
+        private final long expiresAt;
+
+        CachedPrompt(TenantDescriptor tenant, CatalogSnapshot catalog, String prompt, long expiresAt) {
+            this.tenant = tenant;
+            this.catalog = catalog;
+            this.prompt = prompt;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
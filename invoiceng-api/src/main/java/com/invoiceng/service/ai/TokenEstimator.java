@@ -0,0 +1,21 @@
+package com.invoiceng.service.ai;
+
+/**
+ * Rough token counts for prompt budgeting, at about four characters per token. Good enough
+ * to size history and draw from rate budgets; Claude's reported usage is the real figure.
+ */
+public final class TokenEstimator {
+
+    public static final int CHARS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        return text == null ? 0 : estimateChars(text.length());
+    }
+
+    public static int estimateChars(long chars) {
+        return (int) Math.min(Integer.MAX_VALUE, chars / CHARS_PER_TOKEN + 1);
+    }
+}
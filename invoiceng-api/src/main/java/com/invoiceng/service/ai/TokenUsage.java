@@ -0,0 +1,16 @@
+package com.invoiceng.service.ai;
+
+/**
+ * Token counts Anthropic reported for one call.
+ */
+public record TokenUsage(int inputTokens, int outputTokens, int cacheWriteTokens, int cacheReadTokens) {
+
+    public static final TokenUsage NONE = new TokenUsage(0, 0, 0, 0);
+
+    /**
+     * Input tokens that count towards the input-tokens-per-minute limit; cache reads do not.
+     */
+    public int billedInputTokens() {
+        return inputTokens + cacheWriteTokens;
+    }
+}
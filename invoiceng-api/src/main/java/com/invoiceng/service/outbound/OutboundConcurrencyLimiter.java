@@ -0,0 +1,114 @@
+package com.invoiceng.service.outbound;
+
+import com.invoiceng.config.WhatsAppConfig;
+import com.invoiceng.exception.WhatsAppException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of WhatsApp API calls in flight across all tenants.
+ *
+ * Calls over the cap wait in a bounded FIFO queue without holding a thread and are
+ * started as earlier calls finish. When the queue is full the call fails straight away,
+ * so a stalled Graph API cannot build up an unbounded backlog in memory.
+ */
+@Component
+@RequiredArgsConstructor
+public class OutboundConcurrencyLimiter {
+
+    private final WhatsAppConfig whatsAppConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Queue<PendingCall<?>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("whatsapp.outbound.in.flight", inFlight, AtomicInteger::get)
+                .description("WhatsApp API calls currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.outbound.queued", pendingCount, AtomicInteger::get)
+                .description("WhatsApp API calls waiting for a concurrency slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run {@code call} once a concurrency slot is free. The call is subscribed at most once.
+     */
+    public <T> Mono<T> run(Mono<T> call) {
+        return Mono.create(sink -> {
+            if (pendingCount.incrementAndGet() > whatsAppConfig.getOutbound().getQueueCapacity()) {
+                pendingCount.decrementAndGet();
+                sink.error(new WhatsAppException("Outbound WhatsApp queue is full"));
+                return;
+            }
+            PendingCall<T> pendingCall = new PendingCall<>(call, sink);
+            sink.onCancel(() -> pendingCall.cancelled.set(true));
+            pending.add(pendingCall);
+            drain();
+        });
+    }
+
+    private void drain() {
+        int maxConcurrency = Math.max(1, whatsAppConfig.getOutbound().getMaxConcurrency());
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxConcurrency) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            PendingCall<?> next = pending.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+                // A call may have been queued between the poll and the decrement
+                if (pending.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            pendingCount.decrementAndGet();
+
+            if (next.cancelled.get()) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            next.start(this::release);
+        }
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    private static class PendingCall<T> {
+        private final Mono<T> call;
+        private final MonoSink<T> sink;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        PendingCall(Mono<T> call, MonoSink<T> sink) {
+            this.call = call;
+            this.sink = sink;
+        }
+
+        void start(Runnable onFinally) {
+            sink.onDispose(call
+                    .doFinally(signal -> onFinally.run())
+                    .subscribe(sink::success, sink::error, () -> sink.success()));
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.invoiceng.service.outbound;
+
+import com.invoiceng.config.WhatsAppConfig;
+import com.invoiceng.exception.WhatsAppException;
+import com.invoiceng.service.WhatsAppService;
+import com.invoiceng.service.tenant.TenantDescriptor;
+import com.invoiceng.service.tenant.TenantDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the messages queued in {@code outbound_messages}.
+ *
+ * A single dispatcher thread per node claims due rows with {@code FOR UPDATE SKIP LOCKED},
+ * so several nodes can drain the outbox without claiming the same row. A claim is a lease:
+ * the row moves to SENDING until {@code leaseSeconds} have passed, after which another node
+ * may take it over. Only the oldest unsent message of each recipient is claimable, which
+ * keeps a customer's messages in order even while an earlier one waits for a retry.
+ *
+ * Sent rows record the returned wamid, also on the linked conversation message. Failures
+ * are retried with jittered exponential backoff up to {@code maxAttempts}; 4xx responses
+ * other than 429 fail straight away. A result is only recorded while the row is still in the
+ * attempt that was claimed; if the lease ran out and another attempt took the row over, the
+ * late result is counted and left to that attempt.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboundMessageDispatcher {
+
+    private static final String CLAIM_SQL = "UPDATE outbound_messages o " +
+            "SET status = 'SENDING', attempts = o.attempts + 1, locked_until = NOW() + (? * INTERVAL '1 second') " +
+            "WHERE o.id IN (" +
+            "  SELECT c.id FROM outbound_messages c " +
+            "  WHERE (c.status = 'PENDING' OR (c.status = 'SENDING' AND c.locked_until < NOW())) " +
+            "    AND c.next_attempt_at <= NOW() " +
+            "    AND NOT EXISTS (SELECT 1 FROM outbound_messages e " +
+            "        WHERE e.phone_number_id = c.phone_number_id AND e.recipient_phone = c.recipient_phone " +
+            "          AND e.status IN ('PENDING', 'SENDING') AND e.seq < c.seq) " +
+            "  ORDER BY c.seq LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING o.id, o.business_id, o.conversation_message_id, o.phone_number_id, o.recipient_phone, " +
+            "o.payload::text AS payload, o.attempts, o.created_at";
+    private static final String MARK_SENT_SQL = "UPDATE outbound_messages " +
+            "SET status = 'SENT', whatsapp_message_id = ?, sent_at = NOW(), locked_until = NULL, last_error = NULL " +
+            "WHERE id = ? AND status = 'SENDING' AND attempts = ?";
+    private static final String LINK_WAMID_SQL = "UPDATE conversation_messages SET whatsapp_message_id = ? WHERE id = ?";
+    private static final String MARK_RETRY_SQL = "UPDATE outbound_messages " +
+            "SET status = 'PENDING', next_attempt_at = NOW() + (? * INTERVAL '1 millisecond'), " +
+            "locked_until = NULL, last_error = ? WHERE id = ? AND status = 'SENDING' AND attempts = ?";
+    private static final String MARK_FAILED_SQL = "UPDATE outbound_messages " +
+            "SET status = 'FAILED', locked_until = NULL, last_error = ? " +
+            "WHERE id = ? AND status = 'SENDING' AND attempts = ?";
+    private static final String PURGE_SQL = "DELETE FROM outbound_messages " +
+            "WHERE status IN ('SENT', 'FAILED') AND created_at < NOW() - (? * INTERVAL '1 day')";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WhatsAppService whatsAppService;
+    private final TenantDirectory tenantDirectory;
+    private final WhatsAppConfig whatsAppConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Semaphore wakeups = new Semaphore(0);
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    private DistributionSummary claimSize;
+    private Counter sent;
+    private Counter retried;
+    private Counter failed;
+    private Counter dispatchFailures;
+    private Counter staleResults;
+    private Timer lag;
+
+    @PostConstruct
+    public void init() {
+        claimSize = DistributionSummary.builder("whatsapp.outbound.outbox.claim.size")
+                .description("Outbox rows claimed per dispatch round")
+                .register(meterRegistry);
+        sent = Counter.builder("whatsapp.outbound.outbox.dispatched").tag("result", "sent")
+                .description("Outbox messages sent")
+                .register(meterRegistry);
+        retried = Counter.builder("whatsapp.outbound.outbox.dispatched").tag("result", "retry")
+                .description("Outbox messages scheduled for another attempt")
+                .register(meterRegistry);
+        failed = Counter.builder("whatsapp.outbound.outbox.dispatched").tag("result", "failed")
+                .description("Outbox messages given up on")
+                .register(meterRegistry);
+        dispatchFailures = Counter.builder("whatsapp.outbound.outbox.errors")
+                .description("Dispatch rounds that failed to claim or record outbox rows")
+                .register(meterRegistry);
+        staleResults = Counter.builder("whatsapp.outbound.outbox.stale")
+                .description("Send results not recorded because the row was claimed again after its lease ran out")
+                .register(meterRegistry);
+        lag = Timer.builder("whatsapp.outbound.outbox.lag")
+                .description("Time from queueing an outbound message to it being accepted by WhatsApp")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        if (!whatsAppConfig.getOutbox().isEnabled()) {
+            log.info("Outbox dispatcher is disabled on this node");
+            return;
+        }
+        running = true;
+        dispatcher = new Thread(this::runDispatcher, "wa-outbox-dispatcher");
+        dispatcher.setDaemon(false);
+        dispatcher.start();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onMessageQueued(OutboundMessageQueuedEvent event) {
+        wakeups.release();
+    }
+
+    @Scheduled(cron = "${whatsapp.outbox.purge-cron:0 17 * * * *}")
+    public void purgeFinishedMessages() {
+        int deleted = jdbcTemplate.update(PURGE_SQL, whatsAppConfig.getOutbox().getRetentionDays());
+        if (deleted > 0) {
+            log.info("Purged {} finished outbox messages", deleted);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (dispatcher == null) {
+            return;
+        }
+        running = false;
+        wakeups.release();
+        try {
+            dispatcher.join(whatsAppConfig.getOutbox().getSendTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runDispatcher() {
+        WhatsAppConfig.Outbox settings = whatsAppConfig.getOutbox();
+        while (running) {
+            try {
+                List<ClaimedMessage> claimed = claim(settings);
+                if (claimed.isEmpty()) {
+                    wakeups.tryAcquire(Math.max(1, settings.getPollIntervalMs()), TimeUnit.MILLISECONDS);
+                    wakeups.drainPermits();
+                    continue;
+                }
+                claimSize.record(claimed.size());
+                dispatch(claimed, settings);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                dispatchFailures.increment();
+                log.error("Outbox dispatch round failed: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(Math.max(1, settings.getPollIntervalMs()));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<ClaimedMessage> claim(WhatsAppConfig.Outbox settings) {
+        return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new ClaimedMessage(
+                        rs.getObject("id", UUID.class),
+                        rs.getObject("business_id", UUID.class),
+                        rs.getObject("conversation_message_id", UUID.class),
+                        rs.getString("phone_number_id"),
+                        rs.getString("recipient_phone"),
+                        rs.getString("payload"),
+                        rs.getInt("attempts"),
+                        rs.getTimestamp("created_at").toLocalDateTime()),
+                settings.getLeaseSeconds(), Math.max(1, settings.getBatchSize()));
+    }
+
+    /**
+     * Send one claimed batch and record the outcome. At most one message per recipient is
+     * in a batch, so the sends can all run concurrently.
+     */
+    private void dispatch(List<ClaimedMessage> claimed, WhatsAppConfig.Outbox settings) {
+        List<Mono<SendResult>> sends = new ArrayList<>(claimed.size());
+        for (ClaimedMessage message : claimed) {
+            sends.add(send(message, settings));
+        }
+        List<SendResult> results = Flux.merge(sends).collectList().block();
+        if (results != null) {
+            record(results, settings);
+        }
+    }
+
+    private Mono<SendResult> send(ClaimedMessage message, WhatsAppConfig.Outbox settings) {
+        String accessToken;
+        if (message.businessId() == null) {
+            accessToken = whatsAppConfig.getAccessToken();
+        } else {
+            Optional<TenantDescriptor> tenant = tenantDirectory.get(message.businessId());
+            if (tenant.isEmpty()) {
+                return Mono.just(SendResult.failed(message, "Business no longer exists", true));
+            }
+            accessToken = tenant.get().getAccessToken();
+        }
+
+        return whatsAppService.sendPayloadAsync(message.phoneNumberId(), accessToken, message.recipientPhone(),
+                        message.payload())
+                .timeout(Duration.ofMillis(settings.getSendTimeoutMs()))
+                .map(response -> SendResult.sent(message, response.getFirstMessageId()))
+                .onErrorResume(e -> Mono.just(SendResult.failed(message, e.getMessage(), isPermanent(e))));
+    }
+
+    private void record(List<SendResult> results, WhatsAppConfig.Outbox settings) {
+        List<Object[]> sentRows = new ArrayList<>();
+        List<Object[]> linkRows = new ArrayList<>();
+        List<Object[]> retryRows = new ArrayList<>();
+        List<Object[]> failedRows = new ArrayList<>();
+
+        LocalDateTime now = LocalDateTime.now();
+        for (SendResult result : results) {
+            ClaimedMessage message = result.message();
+            if (result.error() == null) {
+                sentRows.add(new Object[]{result.whatsappMessageId(), message.id(), message.attempts()});
+                if (message.conversationMessageId() != null && result.whatsappMessageId() != null) {
+                    linkRows.add(new Object[]{result.whatsappMessageId(), message.conversationMessageId()});
+                }
+                lag.record(Duration.between(message.createdAt(), now));
+                sent.increment();
+            } else if (!result.permanent() && message.attempts() < settings.getMaxAttempts()) {
+                retryRows.add(new Object[]{retryDelayMs(message.attempts(), settings), result.error(), message.id(), message.attempts()});
+                retried.increment();
+                log.warn("Outbox message {} to {} failed (attempt {}), retrying: {}",
+                        message.id(), message.recipientPhone(), message.attempts(), result.error());
+            } else {
+                failedRows.add(new Object[]{result.error(), message.id(), message.attempts()});
+                failed.increment();
+                log.error("Giving up on outbox message {} to {} after {} attempts: {}",
+                        message.id(), message.recipientPhone(), message.attempts(), result.error());
+            }
+        }
+
+        if (!sentRows.isEmpty()) {
+            markClaimed(MARK_SENT_SQL, sentRows, "sent");
+        }
+        if (!linkRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(LINK_WAMID_SQL, linkRows);
+        }
+        if (!retryRows.isEmpty()) {
+            markClaimed(MARK_RETRY_SQL, retryRows, "retry");
+        }
+        if (!failedRows.isEmpty()) {
+            markClaimed(MARK_FAILED_SQL, failedRows, "failed");
+        }
+    }
+
+    /**
+     * Apply a result update whose last two parameters are the row id and the claimed attempt.
+     * Rows that no longer match were taken over by a later attempt and are left to it.
+     */
+    private void markClaimed(String sql, List<Object[]> rows, String outcome) {
+        int[] updated = jdbcTemplate.batchUpdate(sql, rows);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Object[] row = rows.get(i);
+                staleResults.increment();
+                log.warn("Outbox message {} was claimed again after attempt {}, not recording it as {}",
+                        row[row.length - 2], row[row.length - 1], outcome);
+            }
+        }
+    }
+
+    private static long retryDelayMs(int attempts, WhatsAppConfig.Outbox settings) {
+        long delay = settings.getRetryBaseDelayMs() << Math.min(20, Math.max(0, attempts - 1));
+        delay = Math.min(settings.getRetryMaxDelayMs(), Math.max(0, delay));
+        // Half fixed, half random, so a burst of failures does not retry in lockstep
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * A 4xx other than 429 means the request itself is wrong (bad number, expired
+     * window, revoked token) and will not succeed on a retry.
+     */
+    private static boolean isPermanent(Throwable e) {
+        Throwable cause = e instanceof WhatsAppException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof WebClientResponseException responseException) {
+            int status = responseException.getStatusCode().value();
+            return status >= 400 && status < 500 && status != 429;
+        }
+        return false;
+    }
+
+    private record ClaimedMessage(UUID id, UUID businessId, UUID conversationMessageId, String phoneNumberId,
+                                  String recipientPhone, String payload, int attempts, LocalDateTime createdAt) {
+    }
+
+    private record SendResult(ClaimedMessage message, String whatsappMessageId, String error, boolean permanent) {
+
+        static SendResult sent(ClaimedMessage message, String whatsappMessageId) {
+            return new SendResult(message, whatsappMessageId, null, false);
+        }
+
+        static SendResult failed(ClaimedMessage message, String error, boolean permanent) {
+            return new SendResult(message, null, error != null ? error : "Unknown error", permanent);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.invoiceng.service.outbound;
+
+/**
+ * Published when a message is written to the outbox, so the dispatcher can pick it up
+ * as soon as the enclosing transaction commits instead of on its next poll.
+ */
+public class OutboundMessageQueuedEvent {
+}
@@ -0,0 +1,95 @@
+package com.invoiceng.service.outbound;
+
+import com.invoiceng.config.WhatsAppConfig;
+import com.invoiceng.exception.WhatsAppException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket per WhatsApp phone number ID, matching Meta's per-number throughput limit.
+ *
+ * Callers reserve a token and get back a {@link Mono} that completes once the token is
+ * due, so waiting for capacity never holds a thread. A reservation that would have to wait
+ * longer than {@code maxRateLimitWaitMs} fails instead of queueing without limit.
+ */
+@Component
+@RequiredArgsConstructor
+public class PhoneNumberRateLimiter {
+
+    private final WhatsAppConfig whatsAppConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private Timer waitTimer;
+
+    @PostConstruct
+    public void init() {
+        waitTimer = Timer.builder("whatsapp.outbound.rate.limit.wait")
+                .description("Time outbound requests waited for a per-number send token")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reserve one send token for the phone number.
+     *
+     * @return a Mono that completes when the request may be sent
+     */
+    public Mono<Void> acquire(String phoneNumberId) {
+        return Mono.defer(() -> {
+            WhatsAppConfig.Outbound settings = whatsAppConfig.getOutbound();
+            Bucket bucket = buckets.computeIfAbsent(String.valueOf(phoneNumberId),
+                    k -> new Bucket(settings.getMessagesPerSecond(), settings.getBurst()));
+
+            long waitNanos = bucket.reserve(TimeUnit.MILLISECONDS.toNanos(settings.getMaxRateLimitWaitMs()));
+            if (waitNanos < 0) {
+                return Mono.error(new WhatsAppException(
+                        "Send rate limit backlog for phone number " + phoneNumberId + " is full"));
+            }
+            waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+            return waitNanos == 0 ? Mono.empty() : Mono.delay(Duration.ofNanos(waitNanos)).then();
+        });
+    }
+
+    private static class Bucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(double perSecond, int burst) {
+            this.tokensPerNano = Math.max(0.001, perSecond) / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, burst);
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        /**
+         * Take a token, going into debt if none is left.
+         *
+         * @return nanoseconds until the token is due, or -1 if that exceeds {@code maxWaitNanos}
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+
+            long waitNanos = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            tokens -= 1;
+            return waitNanos;
+        }
+    }
+}
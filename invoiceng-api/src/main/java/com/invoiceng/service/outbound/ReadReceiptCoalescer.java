@@ -0,0 +1,126 @@
+package com.invoiceng.service.outbound;
+
+import com.invoiceng.config.WhatsAppConfig;
+import com.invoiceng.service.WhatsAppService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Marks inbound messages as read off the message processing path.
+ *
+ * Marking a message as read also marks every earlier message in the chat, so only the
+ * newest message per conversation needs a receipt. Receipts are held here for up to
+ * {@code flushIntervalMs}; a burst of messages in that window costs one Graph API call.
+ * Each flush sends all pending receipts concurrently through the outbound pipeline.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReadReceiptCoalescer {
+
+    private final WhatsAppService whatsAppService;
+    private final WhatsAppConfig whatsAppConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<UUID, PendingReceipt> pending = new ConcurrentHashMap<>();
+
+    private Counter requested;
+    private Counter sent;
+    private Counter dropped;
+
+    @PostConstruct
+    public void init() {
+        requested = Counter.builder("whatsapp.outbound.read.receipts").tag("result", "requested")
+                .description("Inbound messages to be marked as read")
+                .register(meterRegistry);
+        sent = Counter.builder("whatsapp.outbound.read.receipts").tag("result", "sent")
+                .description("Read receipts sent to the Graph API after coalescing")
+                .register(meterRegistry);
+        dropped = Counter.builder("whatsapp.outbound.read.receipts").tag("result", "dropped")
+                .description("Read receipts not sent because too many were pending")
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.outbound.read.receipts.pending", pending, Map::size)
+                .description("Conversations with a read receipt waiting to be sent")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Mark a message as read once the current window closes. Replaces any older pending
+     * receipt for the same conversation.
+     *
+     * @param timestamp the message's WhatsApp timestamp (epoch seconds), or null if unknown
+     */
+    public void markAsRead(UUID conversationId, String phoneNumberId, String accessToken,
+                           String messageId, String timestamp) {
+        requested.increment();
+        PendingReceipt receipt = new PendingReceipt(phoneNumberId, accessToken, messageId, parseTimestamp(timestamp));
+
+        if (pending.size() >= whatsAppConfig.getReadReceipts().getMaxPending() && !pending.containsKey(conversationId)) {
+            dropped.increment();
+            return;
+        }
+        // Deliveries can be reordered; keep the newest message of the conversation
+        pending.merge(conversationId, receipt,
+                (current, candidate) -> candidate.timestamp >= current.timestamp ? candidate : current);
+    }
+
+    @Scheduled(fixedDelayString = "${whatsapp.read-receipts.flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Mono<Void>> receipts = new ArrayList<>(pending.size());
+        for (UUID conversationId : pending.keySet()) {
+            PendingReceipt receipt = pending.remove(conversationId);
+            if (receipt != null) {
+                receipts.add(whatsAppService.markAsReadAsync(receipt.phoneNumberId, receipt.accessToken, receipt.messageId));
+            }
+        }
+        sent.increment(receipts.size());
+        log.debug("Sending {} coalesced read receipts", receipts.size());
+        Flux.merge(receipts).subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<Mono<Void>> receipts = new ArrayList<>(pending.size());
+        pending.values().forEach(receipt ->
+                receipts.add(whatsAppService.markAsReadAsync(receipt.phoneNumberId, receipt.accessToken, receipt.messageId)));
+        pending.clear();
+        if (!receipts.isEmpty()) {
+            // Best effort: a missing receipt only means the customer does not see blue ticks yet
+            Flux.merge(receipts).then().block(Duration.ofSeconds(5));
+        }
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        if (timestamp == null) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private record PendingReceipt(String phoneNumberId, String accessToken, String messageId, long timestamp) {
+    }
+}
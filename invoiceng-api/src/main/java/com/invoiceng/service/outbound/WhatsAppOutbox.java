@@ -0,0 +1,70 @@
+package com.invoiceng.service.outbound;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.invoiceng.dto.whatsapp.WhatsAppSendRequest;
+import com.invoiceng.entity.OutboundMessage;
+import com.invoiceng.repository.OutboundMessageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Entry point for sending WhatsApp messages.
+ *
+ * Messages are written to the {@code outbound_messages} table in the caller's transaction,
+ * so they are recorded if and only if the conversation or order change that produced them
+ * commits. {@link OutboundMessageDispatcher} sends them afterwards; callers never wait on Meta.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WhatsAppOutbox {
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() { };
+
+    private final OutboundMessageRepository outboundMessageRepository;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Queue a text message.
+     *
+     * @param conversationMessageId conversation message that receives the wamid once sent, or null
+     */
+    @Transactional
+    public OutboundMessage enqueueText(UUID businessId, String phoneNumberId, String recipientPhone,
+                                       String text, UUID conversationMessageId) {
+        return enqueue(businessId, phoneNumberId, WhatsAppSendRequest.textMessage(recipientPhone, text),
+                conversationMessageId);
+    }
+
+    /**
+     * Queue any message request.
+     *
+     * @param conversationMessageId conversation message that receives the wamid once sent, or null
+     */
+    @Transactional
+    public OutboundMessage enqueue(UUID businessId, String phoneNumberId, WhatsAppSendRequest request,
+                                   UUID conversationMessageId) {
+        OutboundMessage message = OutboundMessage.builder()
+                .businessId(businessId)
+                .conversationMessageId(conversationMessageId)
+                .phoneNumberId(phoneNumberId)
+                .recipientPhone(request.getTo())
+                .messageType(request.getType())
+                .payload(objectMapper.convertValue(request, PAYLOAD_TYPE))
+                .build();
+
+        message = outboundMessageRepository.save(message);
+        eventPublisher.publishEvent(new OutboundMessageQueuedEvent());
+
+        log.debug("Queued {} message {} to {}", request.getType(), message.getId(), request.getTo());
+        return message;
+    }
+}
@@ -0,0 +1,17 @@
+package com.invoiceng.service.tenant;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Published when a business's products, prices or stock levels change, so caches derived
+ * from the catalog can be dropped once the change is committed.
+ */
+@Getter
+@RequiredArgsConstructor
+public class CatalogChangedEvent {
+
+    private final UUID businessId;
+}
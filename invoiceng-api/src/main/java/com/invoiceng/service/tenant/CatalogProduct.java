@@ -0,0 +1,52 @@
+package com.invoiceng.service.tenant;
+
+import com.invoiceng.entity.Product;
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Immutable copy of the product fields the sales agent reads, held in a {@link CatalogSnapshot}.
+ */
+@Value
+@Builder
+public class CatalogProduct {
+
+    UUID id;
+    String name;
+    String description;
+    String shortDescription;
+    String category;
+    String subcategory;
+    List<String> tags;
+    BigDecimal price;
+    boolean trackInventory;
+    Integer quantity;
+    List<String> aiKeywords;
+    String aiNotes;
+
+    public static CatalogProduct from(Product product) {
+        return CatalogProduct.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .shortDescription(product.getShortDescription())
+                .category(product.getCategory())
+                .subcategory(product.getSubcategory())
+                .tags(copyOf(product.getTags()))
+                .price(product.getPrice())
+                .trackInventory(Boolean.TRUE.equals(product.getTrackInventory()))
+                .quantity(product.getQuantity())
+                .aiKeywords(copyOf(product.getAiKeywords()))
+                .aiNotes(product.getAiNotes())
+                .build();
+    }
+
+    private static List<String> copyOf(List<String> values) {
+        return values != null ? values.stream().filter(Objects::nonNull).toList() : List.of();
+    }
+}
@@ -0,0 +1,156 @@
+package com.invoiceng.service.tenant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * BM25 index over the searchable text of a catalog: name, category, tags, AI keywords and
+ * descriptions. Name words count three times and category, tag and keyword words twice, so
+ * a product named after the query outranks one that only mentions it in passing.
+ *
+ * Built once per {@link CatalogSnapshot}, on first use; immutable afterwards.
+ */
+public final class CatalogSearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int NAME_WEIGHT = 3;
+    private static final int FIELD_WEIGHT = 2;
+
+    // Common chat words that would otherwise match every description
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "any", "are", "be", "can", "do", "for", "from", "get", "give", "have", "how",
+            "i", "in", "is", "it", "me", "much", "my", "need", "of", "on", "one", "or", "please", "pls",
+            "send", "some", "that", "the", "this", "to", "u", "want", "what", "with", "you", "your");
+
+    private final List<CatalogProduct> products;
+    private final Map<String, Postings> postings;
+    private final int[] lengths;
+    private final double averageLength;
+
+    CatalogSearchIndex(List<CatalogProduct> products) {
+        this.products = products;
+        this.lengths = new int[products.size()];
+
+        Map<String, Map<Integer, Integer>> frequencies = new HashMap<>();
+        long totalLength = 0;
+        for (int doc = 0; doc < products.size(); doc++) {
+            CatalogProduct product = products.get(doc);
+            Map<String, Integer> counts = new HashMap<>();
+            addTerms(counts, product.getName(), NAME_WEIGHT);
+            addTerms(counts, product.getCategory(), FIELD_WEIGHT);
+            addTerms(counts, product.getSubcategory(), FIELD_WEIGHT);
+            for (String tag : product.getTags()) {
+                addTerms(counts, tag, FIELD_WEIGHT);
+            }
+            for (String keyword : product.getAiKeywords()) {
+                addTerms(counts, keyword, FIELD_WEIGHT);
+            }
+            addTerms(counts, product.getShortDescription(), 1);
+            addTerms(counts, product.getDescription(), 1);
+
+            int length = 0;
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                frequencies.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(doc, entry.getValue());
+                length += entry.getValue();
+            }
+            lengths[doc] = length;
+            totalLength += length;
+        }
+        this.averageLength = products.isEmpty() ? 1 : Math.max(1, (double) totalLength / products.size());
+
+        Map<String, Postings> index = new HashMap<>(frequencies.size() * 2);
+        frequencies.forEach((term, docs) -> {
+            int[] ids = new int[docs.size()];
+            int[] counts = new int[docs.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : docs.entrySet()) {
+                ids[i] = entry.getKey();
+                counts[i++] = entry.getValue();
+            }
+            double idf = Math.log(1 + (products.size() - ids.length + 0.5) / (ids.length + 0.5));
+            index.put(term, new Postings(ids, counts, idf));
+        });
+        this.postings = index;
+    }
+
+    /**
+     * Up to {@code k} products relevant to the query, best first. Products that share no
+     * term with the query are never returned.
+     */
+    public List<CatalogProduct> topK(String query, int k) {
+        Set<String> terms = queryTerms(query);
+        if (terms.isEmpty() || k <= 0 || products.isEmpty()) {
+            return List.of();
+        }
+
+        double[] scores = new double[products.size()];
+        boolean any = false;
+        for (String term : terms) {
+            Postings p = postings.get(term);
+            if (p == null) {
+                continue;
+            }
+            any = true;
+            for (int i = 0; i < p.docs.length; i++) {
+                int doc = p.docs[i];
+                double tf = p.counts[i];
+                double norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                scores[doc] += p.idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+        if (!any) {
+            return List.of();
+        }
+
+        // Min-heap of the best k; ties keep catalog (name) order
+        PriorityQueue<Integer> best = new PriorityQueue<>(k + 1, (a, b) -> scores[a] != scores[b]
+                ? Double.compare(scores[a], scores[b]) : Integer.compare(b, a));
+        for (int doc = 0; doc < scores.length; doc++) {
+            if (scores[doc] <= 0) {
+                continue;
+            }
+            best.add(doc);
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+        List<CatalogProduct> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(products.get(best.poll()));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static Set<String> queryTerms(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : CatalogSnapshot.words(CatalogSnapshot.normalize(query))) {
+            if (!STOP_WORDS.contains(word)) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    private static void addTerms(Map<String, Integer> counts, String text, int weight) {
+        if (text == null || text.isBlank()) {
+            return;
+        }
+        for (String word : CatalogSnapshot.normalize(text).split(" ")) {
+            if (word.isEmpty() || STOP_WORDS.contains(word)) {
+                continue;
+            }
+            counts.merge(CatalogSnapshot.stem(word), weight, Integer::sum);
+        }
+    }
+
+    private record Postings(int[] docs, int[] counts, double idf) {
+    }
+}
@@ -0,0 +1,249 @@
+package com.invoiceng.service.tenant;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable view of a business's active products with an index for looking products up by
+ * the name a customer or the model typed.
+ *
+ * Names are normalized (lower case, accents and punctuation dropped, whitespace collapsed)
+ * and indexed three ways: an exact map, a word index and an index of character trigrams.
+ * {@link #search} ranks candidates by trigram similarity, the share of words in common and
+ * whether one name's words contain the other's, so "red shoe" finds "Red Shoes (Size 42)"
+ * and "ankara gwn" still finds "Ankara Gown". Built once per catalog change and shared by
+ * all threads without locking.
+ */
+public final class CatalogSnapshot {
+
+    public static final CatalogSnapshot EMPTY = new CatalogSnapshot(List.of());
+
+    // Below this a best match is more likely wrong than helpful
+    static final double MIN_MATCH_SCORE = 0.4;
+
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final List<CatalogProduct> products;
+    private final Map<String, Integer> exact;
+    private final Map<String, int[]> words;
+    private final Map<String, int[]> trigrams;
+    private final int[] wordCounts;
+    private final int[] trigramCounts;
+
+    // Only needed for catalogs too large to list in full, so built on first use
+    private volatile CatalogSearchIndex searchIndex;
+
+    public CatalogSnapshot(List<CatalogProduct> products) {
+        List<CatalogProduct> sorted = new ArrayList<>(products);
+        sorted.sort(Comparator.comparing(CatalogProduct::getName, String.CASE_INSENSITIVE_ORDER));
+        this.products = Collections.unmodifiableList(sorted);
+
+        Map<String, Integer> exactIndex = new HashMap<>();
+        Map<String, List<Integer>> wordPostings = new HashMap<>();
+        Map<String, List<Integer>> trigramPostings = new HashMap<>();
+        wordCounts = new int[sorted.size()];
+        trigramCounts = new int[sorted.size()];
+
+        for (int i = 0; i < sorted.size(); i++) {
+            String name = normalize(sorted.get(i).getName());
+            exactIndex.putIfAbsent(name, i);
+
+            Set<String> nameWords = words(name);
+            wordCounts[i] = nameWords.size();
+            for (String word : nameWords) {
+                wordPostings.computeIfAbsent(word, k -> new ArrayList<>()).add(i);
+            }
+
+            Set<String> nameTrigrams = trigrams(name);
+            trigramCounts[i] = nameTrigrams.size();
+            for (String trigram : nameTrigrams) {
+                trigramPostings.computeIfAbsent(trigram, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        this.exact = Map.copyOf(exactIndex);
+        this.words = toArrays(wordPostings);
+        this.trigrams = toArrays(trigramPostings);
+    }
+
+    /**
+     * Active products sorted by name.
+     */
+    public List<CatalogProduct> getProducts() {
+        return products;
+    }
+
+    public boolean isEmpty() {
+        return products.isEmpty();
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    /**
+     * Relevance index over names, categories, tags, keywords and descriptions.
+     */
+    public CatalogSearchIndex searchIndex() {
+        CatalogSearchIndex index = searchIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = searchIndex;
+                if (index == null) {
+                    index = new CatalogSearchIndex(products);
+                    searchIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Product whose normalized name equals the normalized query.
+     */
+    public Optional<CatalogProduct> findByName(String name) {
+        Integer index = exact.get(normalize(name));
+        return index != null ? Optional.of(products.get(index)) : Optional.empty();
+    }
+
+    /**
+     * Best ranked product for the query, if it is a close enough match.
+     */
+    public Optional<CatalogProduct> bestMatch(String query) {
+        List<Match> matches = search(query, 1);
+        return !matches.isEmpty() && matches.get(0).score() >= MIN_MATCH_SCORE
+                ? Optional.of(matches.get(0).product())
+                : Optional.empty();
+    }
+
+    /**
+     * Products ranked by how well their name matches the query, best first. An exact name
+     * scores 1; other scores are below 1 and only comparable within one query.
+     */
+    public List<Match> search(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || products.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        Integer exactIndex = exact.get(normalized);
+        if (exactIndex != null && limit == 1) {
+            return List.of(new Match(products.get(exactIndex), 1.0));
+        }
+
+        int[] sharedTrigrams = new int[products.size()];
+        Set<String> queryTrigrams = trigrams(normalized);
+        for (String trigram : queryTrigrams) {
+            for (int i : trigrams.getOrDefault(trigram, NO_POSTINGS)) {
+                sharedTrigrams[i]++;
+            }
+        }
+        int[] sharedWords = new int[products.size()];
+        Set<String> queryWords = words(normalized);
+        for (String word : queryWords) {
+            for (int i : words.getOrDefault(word, NO_POSTINGS)) {
+                sharedWords[i]++;
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < products.size(); i++) {
+            if (sharedTrigrams[i] == 0 && sharedWords[i] == 0) {
+                continue;
+            }
+            double score;
+            if (exactIndex != null && exactIndex == i) {
+                score = 1.0;
+            } else {
+                double dice = 2.0 * sharedTrigrams[i] / (queryTrigrams.size() + trigramCounts[i]);
+                double wordShare = (double) sharedWords[i] / Math.max(queryWords.size(), wordCounts[i]);
+                boolean contained = sharedWords[i] > 0
+                        && (sharedWords[i] == wordCounts[i] || sharedWords[i] == queryWords.size());
+                score = Math.min(0.99, 0.5 * dice + 0.3 * wordShare + (contained ? 0.2 : 0));
+            }
+            matches.add(new Match(products.get(i), score));
+        }
+
+        matches.sort(Comparator.comparingDouble(Match::score).reversed());
+        return matches.size() > limit ? List.copyOf(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Lower case, accents and punctuation removed, words separated by single spaces.
+     */
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                normalized.append(' ');
+                space = true;
+            }
+        }
+        int length = normalized.length();
+        if (length > 0 && normalized.charAt(length - 1) == ' ') {
+            normalized.setLength(length - 1);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Words of a normalized name with a plural "s" dropped, so "shoe" and "shoes" meet.
+     */
+    static Set<String> words(String normalized) {
+        if (normalized.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String word : normalized.split(" ")) {
+            result.add(stem(word));
+        }
+        return result;
+    }
+
+    static String stem(String word) {
+        return word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")
+                ? word.substring(0, word.length() - 1) : word;
+    }
+
+    /**
+     * Character trigrams of the name padded with a space on each side, so short words and
+     * word boundaries count too.
+     */
+    private static Set<String> trigrams(String normalized) {
+        String padded = " " + normalized + " ";
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, List<Integer>> postings) {
+        Map<String, int[]> result = new HashMap<>(postings.size() * 2);
+        postings.forEach((key, list) -> result.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    public record Match(CatalogProduct product, double score) {
+    }
+}
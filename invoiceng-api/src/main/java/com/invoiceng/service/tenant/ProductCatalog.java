@@ -0,0 +1,128 @@
+package com.invoiceng.service.tenant;
+
+import com.invoiceng.config.WebhookConfig;
+import com.invoiceng.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant {@link CatalogSnapshot} of active products for the sales agent.
+ *
+ * Snapshots are immutable and replaced whole, so readers take the current one without
+ * locking. When a {@link CatalogChangedEvent} commits, the tenant's snapshot is dropped and
+ * rebuilt straight away, so the next message does not pay for the load. Loads that race with
+ * an invalidation are not cached. The TTL only bounds staleness for changes made outside
+ * the application.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductCatalog {
+
+    private final ProductRepository productRepository;
+    private final WebhookConfig webhookConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<UUID, CachedCatalog> catalogs = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private Counter hits;
+    private Counter misses;
+    private Timer buildDuration;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("tenant.catalog.lookups").tag("result", "hit")
+                .description("Catalog lookups served from a snapshot")
+                .register(meterRegistry);
+        misses = Counter.builder("tenant.catalog.lookups").tag("result", "miss")
+                .description("Catalog lookups that loaded products from the database")
+                .register(meterRegistry);
+        buildDuration = Timer.builder("tenant.catalog.build")
+                .description("Time to load and index a tenant's catalog")
+                .register(meterRegistry);
+        Gauge.builder("tenant.catalog.size", catalogs, Map::size)
+                .description("Tenants with a catalog snapshot in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Current catalog snapshot of a business.
+     */
+    public CatalogSnapshot get(UUID businessId) {
+        if (businessId == null) {
+            return CatalogSnapshot.EMPTY;
+        }
+
+        CachedCatalog cached = catalogs.get(businessId);
+        if (cached != null && !cached.isExpired()) {
+            hits.increment();
+            return cached.snapshot;
+        }
+
+        misses.increment();
+        return load(businessId);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        invalidate(event.getBusinessId());
+        try {
+            load(event.getBusinessId());
+        } catch (Exception e) {
+            // The next lookup loads it instead
+            log.warn("Failed to rebuild catalog of business {}: {}", event.getBusinessId(), e.getMessage());
+        }
+    }
+
+    public void invalidate(UUID businessId) {
+        invalidations.incrementAndGet();
+        catalogs.remove(businessId);
+        log.debug("Invalidated catalog snapshot of business {}", businessId);
+    }
+
+    private CatalogSnapshot load(UUID businessId) {
+        long generation = invalidations.get();
+        long start = System.nanoTime();
+        CatalogSnapshot snapshot = new CatalogSnapshot(
+                productRepository.findByBusinessIdAndStatusOrderByNameAsc(businessId, "active").stream()
+                        .map(CatalogProduct::from)
+                        .toList());
+        buildDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (generation == invalidations.get()) {
+            long ttlNanos = TimeUnit.SECONDS.toNanos(webhookConfig.getTenants().getCatalogTtlSeconds());
+            catalogs.put(businessId, new CachedCatalog(snapshot, System.nanoTime() + ttlNanos));
+        }
+        log.debug("Loaded catalog snapshot of business {} with {} products", businessId, snapshot.size());
+        return snapshot;
+    }
+
+    private static class CachedCatalog {
+        private final CatalogSnapshot snapshot;
+        private final long expiresAt;
+
+        CachedCatalog(CatalogSnapshot snapshot, long expiresAt) {
+            this.snapshot = snapshot;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
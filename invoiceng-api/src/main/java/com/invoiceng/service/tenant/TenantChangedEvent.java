@@ -0,0 +1,17 @@
+package com.invoiceng.service.tenant;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Published when a business profile or its agent config changes, so cached
+ * tenant metadata can be dropped once the change is committed.
+ */
+@Getter
+@RequiredArgsConstructor
+public class TenantChangedEvent {
+
+    private final UUID businessId;
+}
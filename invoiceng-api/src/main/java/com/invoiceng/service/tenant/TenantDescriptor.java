@@ -0,0 +1,25 @@
+package com.invoiceng.service.tenant;
+
+import com.invoiceng.entity.AgentConfig;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of the tenant metadata needed to handle a WhatsApp message.
+ *
+ * The phone number ID and access token are the effective values, with the platform
+ * defaults already applied. The agent config is a detached copy whose collections are
+ * unmodifiable; it must not be saved or modified.
+ */
+@Value
+@Builder
+public class TenantDescriptor {
+
+    UUID businessId;
+    String businessName;
+    String phoneNumberId;
+    String accessToken;
+    AgentConfig agentConfig;
+}
@@ -0,0 +1,209 @@
+package com.invoiceng.service.tenant;
+
+import com.invoiceng.config.WebhookConfig;
+import com.invoiceng.entity.AgentConfig;
+import com.invoiceng.entity.User;
+import com.invoiceng.repository.AgentConfigRepository;
+import com.invoiceng.repository.UserRepository;
+import com.invoiceng.service.WhatsAppService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory tenant routing table for the WhatsApp hot path.
+ *
+ * Resolves a WhatsApp phone number ID (or a business ID) to an immutable
+ * {@link TenantDescriptor} holding the business name, effective credentials and agent
+ * config, so handling a message does not re-read the tenant from the database.
+ * Unknown phone number IDs are cached as misses for a shorter TTL.
+ *
+ * Entries are dropped when a {@link TenantChangedEvent} commits. Loads that race with
+ * an invalidation are not cached, so a stale descriptor cannot outlive the change.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TenantDirectory {
+
+    private final UserRepository userRepository;
+    private final AgentConfigRepository agentConfigRepository;
+    private final WhatsAppService whatsAppService;
+    private final WebhookConfig webhookConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CachedTenant> byPhoneNumberId = new ConcurrentHashMap<>();
+    private final Map<UUID, CachedTenant> byBusinessId = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("tenant.directory.lookups").tag("result", "hit")
+                .description("Tenant lookups served from memory")
+                .register(meterRegistry);
+        misses = Counter.builder("tenant.directory.lookups").tag("result", "miss")
+                .description("Tenant lookups that loaded from the database")
+                .register(meterRegistry);
+        Gauge.builder("tenant.directory.size", byBusinessId, Map::size)
+                .description("Tenants held in the routing table")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Resolve the business that owns a WhatsApp phone number ID.
+     */
+    public Optional<TenantDescriptor> findByPhoneNumberId(String phoneNumberId) {
+        if (phoneNumberId == null) {
+            return Optional.empty();
+        }
+
+        CachedTenant cached = byPhoneNumberId.get(phoneNumberId);
+        if (cached != null && !cached.isExpired()) {
+            hits.increment();
+            return Optional.ofNullable(cached.descriptor);
+        }
+
+        misses.increment();
+        long generation = invalidations.get();
+        Optional<TenantDescriptor> descriptor = userRepository.findByWhatsappPhoneNumberId(phoneNumberId)
+                .map(this::describe);
+        if (generation == invalidations.get()) {
+            cache(phoneNumberId, descriptor.orElse(null));
+        }
+        return descriptor;
+    }
+
+    /**
+     * Resolve a business by ID.
+     */
+    public Optional<TenantDescriptor> get(UUID businessId) {
+        if (businessId == null) {
+            return Optional.empty();
+        }
+
+        CachedTenant cached = byBusinessId.get(businessId);
+        if (cached != null && !cached.isExpired()) {
+            hits.increment();
+            return Optional.of(cached.descriptor);
+        }
+
+        misses.increment();
+        long generation = invalidations.get();
+        Optional<TenantDescriptor> descriptor = userRepository.findById(businessId).map(this::describe);
+        if (generation == invalidations.get()) {
+            descriptor.ifPresent(d -> cache(null, d));
+        }
+        return descriptor;
+    }
+
+    /**
+     * Agent config of a business, or null if it has none.
+     */
+    public AgentConfig getAgentConfig(UUID businessId) {
+        return get(businessId).map(TenantDescriptor::getAgentConfig).orElse(null);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTenantChanged(TenantChangedEvent event) {
+        invalidate(event.getBusinessId());
+    }
+
+    public void invalidate(UUID businessId) {
+        invalidations.incrementAndGet();
+        byBusinessId.remove(businessId);
+        // A phone number may have moved to or from this business, so drop misses as well
+        byPhoneNumberId.entrySet().removeIf(entry -> entry.getValue().descriptor == null
+                || businessId.equals(entry.getValue().descriptor.getBusinessId()));
+        log.debug("Invalidated cached tenant {}", businessId);
+    }
+
+    private void cache(String phoneNumberId, TenantDescriptor descriptor) {
+        WebhookConfig.Tenants settings = webhookConfig.getTenants();
+        if (descriptor == null) {
+            byPhoneNumberId.put(phoneNumberId, new CachedTenant(null, settings.getNegativeTtlSeconds()));
+            return;
+        }
+
+        CachedTenant entry = new CachedTenant(descriptor, settings.getTtlSeconds());
+        byBusinessId.put(descriptor.getBusinessId(), entry);
+        if (phoneNumberId != null) {
+            byPhoneNumberId.put(phoneNumberId, entry);
+        }
+    }
+
+    private TenantDescriptor describe(User business) {
+        AgentConfig config = agentConfigRepository.findByBusinessId(business.getId())
+                .map(TenantDirectory::detach)
+                .orElse(null);
+
+        return TenantDescriptor.builder()
+                .businessId(business.getId())
+                .businessName(business.getBusinessName())
+                .phoneNumberId(whatsAppService.getPhoneNumberId(business))
+                .accessToken(whatsAppService.getAccessToken(business))
+                .agentConfig(config)
+                .build();
+    }
+
+    /**
+     * Copy an agent config out of the persistence context so it can be shared across threads.
+     */
+    private static AgentConfig detach(AgentConfig config) {
+        return AgentConfig.builder()
+                .id(config.getId())
+                .agentName(config.getAgentName())
+                .greetingMessage(config.getGreetingMessage())
+                .personality(readOnly(config.getPersonality()))
+                .salesSettings(readOnly(config.getSalesSettings()))
+                .businessHours(readOnly(config.getBusinessHours()))
+                .afterHoursBehavior(config.getAfterHoursBehavior())
+                .handoffTriggers(config.getHandoffTriggers() != null
+                        ? Collections.unmodifiableList(new ArrayList<>(config.getHandoffTriggers())) : null)
+                .handoffNotificationMethod(config.getHandoffNotificationMethod())
+                .templates(readOnly(config.getTemplates()))
+                .deliveryAreas(config.getDeliveryAreas() != null
+                        ? config.getDeliveryAreas().stream().map(TenantDirectory::readOnly).toList() : null)
+                .defaultDeliveryFee(config.getDefaultDeliveryFee())
+                .dispatchTime(config.getDispatchTime())
+                .modelRouting(readOnly(config.getModelRouting()))
+                .createdAt(config.getCreatedAt())
+                .updatedAt(config.getUpdatedAt())
+                .build();
+    }
+
+    private static <V> Map<String, V> readOnly(Map<String, V> map) {
+        return map != null ? Collections.unmodifiableMap(new LinkedHashMap<>(map)) : null;
+    }
+
+    private static class CachedTenant {
+        private final TenantDescriptor descriptor;
+        private final long expiresAt;
+
+        CachedTenant(TenantDescriptor descriptor, long ttlSeconds) {
+            this.descriptor = descriptor;
+            this.expiresAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.config.WebhookConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes inbound webhook work onto a fixed set of single-consumer lanes.
+ *
+ * Every task is keyed by (phoneNumberId, customerPhone), so all events of one
+ * conversation run one after another on the same lane, while different
+ * conversations spread across all lanes. Each lane has a bounded queue; when it
+ * is full the task is rejected instead of queueing without limit.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationLaneDispatcher {
+
+    private final WebhookConfig webhookConfig;
+    private final MeterRegistry meterRegistry;
+
+    private Lane[] lanes;
+    private Counter rejectedCounter;
+    private Timer queueTimer;
+
+    @PostConstruct
+    public void init() {
+        WebhookConfig.Lanes settings = webhookConfig.getLanes();
+        int count = Math.max(1, settings.getCount());
+
+        lanes = new Lane[count];
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane(i, settings.getQueueCapacity());
+
+            Lane lane = lanes[i];
+            Gauge.builder("whatsapp.webhook.lane.queue.depth", lane, l -> l.executor.getQueue().size())
+                    .description("Tasks waiting on a webhook lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+
+        Gauge.builder("whatsapp.webhook.lanes.queue.depth", this, ConversationLaneDispatcher::getQueuedTaskCount)
+                .description("Tasks waiting across all webhook lanes")
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.webhook.lanes.utilization", this, ConversationLaneDispatcher::getUtilization)
+                .description("Fraction of webhook lanes currently running a task")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("whatsapp.webhook.lanes.rejected")
+                .description("Tasks rejected because their lane queue was full")
+                .register(meterRegistry);
+        queueTimer = Timer.builder("whatsapp.webhook.lane.queue.time")
+                .description("Time a task waited on its lane before starting")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        log.info("Started {} webhook lanes with queue capacity {}", count, settings.getQueueCapacity());
+    }
+
+    /**
+     * Queue a task on the lane owning the given conversation.
+     *
+     * @return false if the lane queue is full and the task was not accepted
+     */
+    public boolean submit(String phoneNumberId, String customerPhone, Runnable task) {
+        Lane lane = laneFor(phoneNumberId, customerPhone);
+        long queuedAt = System.nanoTime();
+        try {
+            lane.executor.execute(() -> {
+                queueTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                lane.run(task);
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            log.warn("Webhook lane {} is full, rejected task for {}/{}", lane.index, phoneNumberId, customerPhone);
+            return false;
+        }
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getQueuedTaskCount() {
+        int total = 0;
+        for (Lane lane : lanes) {
+            total += lane.executor.getQueue().size();
+        }
+        return total;
+    }
+
+    public double getUtilization() {
+        int busy = 0;
+        for (Lane lane : lanes) {
+            if (lane.running.get() > 0) {
+                busy++;
+            }
+        }
+        return (double) busy / lanes.length;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.executor.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + webhookConfig.getLanes().getShutdownTimeoutMs();
+        for (Lane lane : lanes) {
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (!lane.executor.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                    log.warn("Webhook lane {} did not drain before shutdown, {} tasks dropped",
+                            lane.index, lane.executor.shutdownNow().size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.executor.shutdownNow();
+            }
+        }
+    }
+
+    private Lane laneFor(String phoneNumberId, String customerPhone) {
+        int hash = 31 * String.valueOf(phoneNumberId).hashCode() + String.valueOf(customerPhone).hashCode();
+        // Spread the bits so sequential phone numbers do not cluster on neighbouring lanes
+        hash ^= (hash >>> 16);
+        return lanes[Math.floorMod(hash, lanes.length)];
+    }
+
+    private static class Lane {
+        private final int index;
+        private final ThreadPoolExecutor executor;
+        private final AtomicInteger running = new AtomicInteger();
+
+        Lane(int index, int queueCapacity) {
+            this.index = index;
+            this.executor = new ThreadPoolExecutor(
+                    1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "wa-lane-" + index);
+                        thread.setDaemon(false);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy()
+            );
+        }
+
+        void run(Runnable task) {
+            running.incrementAndGet();
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Unhandled error on webhook lane {}", index, e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.config.WebhookConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debounces AI turns per conversation.
+ *
+ * Each inbound message (re)arms a timer for its conversation. The AI turn runs only when the
+ * customer has been quiet for the configured window, or once the maximum wait since the
+ * first message of the burst has passed, so "hi", "pls", "how much is the ankara" sent in
+ * quick succession produce a single reply. The turn is queued back onto the conversation's
+ * lane, keeping it ordered with the conversation's other work.
+ *
+ * Each message's webhook delivery is held open until the turn answering it has run, so its
+ * journal entry is only acknowledged once the reply is queued. A turn whose lane is full is
+ * tried again after another window. Turns still pending at shutdown leave their deliveries
+ * unacknowledged, to be replayed on the next start.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class InboundBurstCoalescer {
+
+    private final WebhookConfig webhookConfig;
+    private final ConversationLaneDispatcher laneDispatcher;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<UUID, PendingTurn> pendingTurns = new ConcurrentHashMap<>();
+    // Turns not on a lane yet: debouncing, or waiting for room on a full lane
+    private final Set<PendingTurn> unqueued = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+    private Counter coalescedCounter;
+    private Counter turnCounter;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wa-burst-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        coalescedCounter = Counter.builder("whatsapp.webhook.coalesced.messages")
+                .description("Inbound messages merged into an AI turn that was already pending")
+                .register(meterRegistry);
+        turnCounter = Counter.builder("whatsapp.webhook.coalesced.turns")
+                .description("AI turns run after the debounce window")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Schedule (or push back) the AI turn for a conversation, holding {@code completion} open
+     * until the turn has run. When coalescing is disabled the turn runs immediately on the
+     * calling thread.
+     */
+    public void schedule(String phoneNumberId, String customerPhone, UUID conversationId,
+                         WebhookCompletion completion, Runnable turn) {
+        WebhookConfig.Coalescing settings = webhookConfig.getCoalescing();
+        if (!settings.isEnabled() || settings.getWindowMs() <= 0) {
+            turn.run();
+            return;
+        }
+
+        // Only the conversation's lane calls this, so there is no concurrent schedule for one conversation
+        long now = System.currentTimeMillis();
+        PendingTurn previous = pendingTurns.get(conversationId);
+        PendingTurn pending;
+        if (previous != null && previous.future.cancel(false)) {
+            unqueued.remove(previous);
+            pending = new PendingTurn(previous.firstAt, previous.holds);
+            coalescedCounter.increment();
+        } else {
+            pending = new PendingTurn(now, new CopyOnWriteArrayList<>());
+        }
+        pending.holds.add(completion.hold());
+
+        pendingTurns.put(conversationId, pending);
+        unqueued.add(pending);
+        long fireAt = Math.min(now + settings.getWindowMs(), pending.firstAt + settings.getMaxWaitMs());
+        pending.future = scheduler.schedule(
+                () -> fire(phoneNumberId, customerPhone, conversationId, pending, turn),
+                Math.max(0, fireAt - now), TimeUnit.MILLISECONDS);
+    }
+
+    public int getPendingTurnCount() {
+        return pendingTurns.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        // Unanswered: keep the deliveries in the journal so the turns run again after the restart
+        for (PendingTurn pending : unqueued) {
+            pending.holds.forEach(WebhookCompletion.Hold::fail);
+        }
+        if (!unqueued.isEmpty()) {
+            log.info("{} pending AI turns left for replay on restart", unqueued.size());
+        }
+    }
+
+    private void fire(String phoneNumberId, String customerPhone, UUID conversationId,
+                      PendingTurn pending, Runnable turn) {
+        pendingTurns.remove(conversationId, pending);
+        turnCounter.increment();
+        submit(phoneNumberId, customerPhone, conversationId, pending, turn);
+    }
+
+    private void submit(String phoneNumberId, String customerPhone, UUID conversationId,
+                        PendingTurn pending, Runnable turn) {
+        boolean queued = laneDispatcher.submit(phoneNumberId, customerPhone, () -> {
+            try {
+                turn.run();
+            } finally {
+                pending.holds.forEach(WebhookCompletion.Hold::release);
+            }
+        });
+        if (queued) {
+            unqueued.remove(pending);
+            return;
+        }
+
+        log.warn("Could not queue AI turn for conversation {}: lane is saturated, retrying", conversationId);
+        try {
+            scheduler.schedule(() -> submit(phoneNumberId, customerPhone, conversationId, pending, turn),
+                    webhookConfig.getCoalescing().getWindowMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the shutdown hook leaves the deliveries for replay
+        }
+    }
+
+    private static class PendingTurn {
+        private final long firstAt;
+        // Holds of every delivery answered by this turn
+        private final List<WebhookCompletion.Hold> holds;
+        private volatile ScheduledFuture<?> future;
+
+        PendingTurn(long firstAt, List<WebhookCompletion.Hold> holds) {
+            this.firstAt = firstAt;
+            this.holds = holds;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.config.WebhookConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cheap front for the WhatsApp message-ID duplicate check.
+ *
+ * An exact LRU of recently stored IDs answers Meta's retries with no database I/O.
+ * Behind it, a Bloom filter covering the configured time window tells whether an ID
+ * has possibly been seen: a negative answer means the message is new and can go
+ * straight to the insert, a positive one still needs the database to confirm because
+ * Bloom filters have false positives. The Bloom filter is split into two generations
+ * that rotate every half window, so old IDs age out without a full reset.
+ *
+ * The database insert ({@code ON CONFLICT DO NOTHING}) stays the authoritative check;
+ * this filter only decides how much work a message needs before reaching it.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageDedupeFilter {
+
+    public enum Verdict {
+        /** Stored recently on this node - skip without touching the database */
+        DUPLICATE,
+        /** Bloom filter hit - confirm against the database */
+        POSSIBLE_DUPLICATE,
+        /** Never seen within the window */
+        NEW
+    }
+
+    private final WebhookConfig webhookConfig;
+    private final MeterRegistry meterRegistry;
+
+    private Map<String, Boolean> recentIds;
+    private volatile BloomGeneration current;
+    private volatile BloomGeneration previous;
+    private volatile long rotateAt;
+    private volatile long rotations;
+
+    private Counter exactHits;
+    private Counter bloomHits;
+    private Counter misses;
+    private Counter falsePositives;
+
+    @PostConstruct
+    public void init() {
+        WebhookConfig.Dedupe settings = webhookConfig.getDedupe();
+        int exactCacheSize = Math.max(1, settings.getExactCacheSize());
+        recentIds = new LinkedHashMap<>(exactCacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > exactCacheSize;
+            }
+        };
+        current = newGeneration();
+        previous = newGeneration();
+        rotateAt = System.currentTimeMillis() + halfWindowMillis();
+
+        exactHits = Counter.builder("whatsapp.webhook.dedupe").tag("result", "exact_hit")
+                .description("Duplicate message IDs answered from the in-memory LRU")
+                .register(meterRegistry);
+        bloomHits = Counter.builder("whatsapp.webhook.dedupe").tag("result", "bloom_hit")
+                .description("Message IDs the Bloom filter reported as possibly seen")
+                .register(meterRegistry);
+        misses = Counter.builder("whatsapp.webhook.dedupe").tag("result", "miss")
+                .description("Message IDs not seen within the dedupe window")
+                .register(meterRegistry);
+        falsePositives = Counter.builder("whatsapp.webhook.dedupe.false.positives")
+                .description("Bloom filter hits that the database showed to be new messages")
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.webhook.dedupe.false.positive.rate", this, MessageDedupeFilter::getFalsePositiveRate)
+                .description("Share of Bloom filter hits that were false positives")
+                .register(meterRegistry);
+        FunctionCounter.builder("whatsapp.webhook.dedupe.bloom.rotations", this, f -> f.rotations)
+                .description("Bloom filter generation rotations")
+                .register(meterRegistry);
+    }
+
+    public Verdict check(String messageId) {
+        if (messageId == null) {
+            misses.increment();
+            return Verdict.NEW;
+        }
+
+        synchronized (recentIds) {
+            if (recentIds.containsKey(messageId)) {
+                exactHits.increment();
+                return Verdict.DUPLICATE;
+            }
+        }
+
+        rotateIfDue();
+        long[] hashes = hash(messageId);
+        if (current.mightContain(hashes) || previous.mightContain(hashes)) {
+            bloomHits.increment();
+            return Verdict.POSSIBLE_DUPLICATE;
+        }
+
+        misses.increment();
+        return Verdict.NEW;
+    }
+
+    /**
+     * Remember an ID that is now known to be stored.
+     */
+    public void record(String messageId) {
+        if (messageId == null) {
+            return;
+        }
+        synchronized (recentIds) {
+            recentIds.put(messageId, Boolean.TRUE);
+        }
+        rotateIfDue();
+        current.put(hash(messageId));
+    }
+
+    /**
+     * Report that a {@link Verdict#POSSIBLE_DUPLICATE} turned out to be a new message.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public double getFalsePositiveRate() {
+        double hits = bloomHits.count();
+        return hits == 0 ? 0.0 : falsePositives.count() / hits;
+    }
+
+    private void rotateIfDue() {
+        long now = System.currentTimeMillis();
+        if (now < rotateAt) {
+            return;
+        }
+        synchronized (this) {
+            if (now < rotateAt) {
+                return;
+            }
+            previous = current;
+            current = newGeneration();
+            rotateAt = now + halfWindowMillis();
+            rotations++;
+        }
+        log.debug("Rotated message dedupe Bloom filter generation");
+    }
+
+    private long halfWindowMillis() {
+        return Math.max(1, webhookConfig.getDedupe().getWindowMinutes()) * 60_000L / 2;
+    }
+
+    private BloomGeneration newGeneration() {
+        WebhookConfig.Dedupe settings = webhookConfig.getDedupe();
+        // Each generation holds roughly half a window of IDs
+        long n = Math.max(1000, settings.getExpectedInsertions() / 2);
+        double p = Math.min(0.5, Math.max(1e-6, settings.getFalsePositiveRate()));
+        long bits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        int hashFunctions = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+        return new BloomGeneration(bits, hashFunctions);
+    }
+
+    /**
+     * Two independent 64-bit FNV-1a style hashes, combined by double hashing in the filter.
+     */
+    private static long[] hash(String value) {
+        long h1 = 0xcbf29ce484222325L;
+        long h2 = 0x84222325cbf29ce4L;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            h1 = (h1 ^ c) * 0x100000001b3L;
+            h2 = (h2 ^ c) * 0x9E3779B97F4A7C15L;
+        }
+        h2 ^= (h2 >>> 33);
+        return new long[]{h1, h2 | 1};
+    }
+
+    private static class BloomGeneration {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashFunctions;
+
+        BloomGeneration(long bits, int hashFunctions) {
+            int wordCount = (int) Math.min(Integer.MAX_VALUE, (bits + 63) / 64);
+            this.words = new AtomicLongArray(wordCount);
+            this.bitCount = (long) wordCount * 64;
+            this.hashFunctions = hashFunctions;
+        }
+
+        void put(long[] hashes) {
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Math.floorMod(hashes[0] + i * hashes[1], bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << (bit & 63);
+                long existing;
+                do {
+                    existing = words.get(word);
+                    if ((existing & mask) != 0) {
+                        break;
+                    }
+                } while (!words.compareAndSet(word, existing, existing | mask));
+            }
+        }
+
+        boolean mightContain(long[] hashes) {
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Math.floorMod(hashes[0] + i * hashes[1], bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.config.WebhookConfig;
+import com.invoiceng.dto.whatsapp.WhatsAppWebhookPayload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers WhatsApp status receipts and writes them to {@code message_statuses} in batches.
+ *
+ * Statuses are most of the webhook volume and need no conversation context, so they are
+ * handed straight to this recorder instead of the conversation lanes. A single writer
+ * thread flushes when a batch is full or when the oldest buffered status has waited
+ * {@code flushIntervalMs}, using one multi-row insert per batch. Duplicate receipts are
+ * ignored by the (whatsapp_message_id, status) key.
+ *
+ * The webhook delivery is only reported complete once its statuses are written, so a
+ * failed flush leaves the delivery in the journal for replay. Values are cut to their column
+ * sizes when buffered. If the database still rejects a batch's data, the batch is split in
+ * halves until the offending receipts are isolated; those are dropped and the rest written.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageStatusRecorder {
+
+    private static final String INSERT_PREFIX = "INSERT INTO message_statuses " +
+            "(whatsapp_message_id, status, phone_number_id, recipient_id, status_at, wa_conversation_id, " +
+            "pricing_category, billable, error_code, error_title) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_SUFFIX = " ON CONFLICT (whatsapp_message_id, status) DO NOTHING";
+    private static final int COLUMNS = 10;
+    // Keeps a single statement well below PostgreSQL's bind parameter limit
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+    // Column sizes of message_statuses
+    private static final int MAX_ID_LENGTH = 100;
+    private static final int MAX_STATUS_LENGTH = 20;
+    private static final int MAX_RECIPIENT_LENGTH = 20;
+    private static final int MAX_CATEGORY_LENGTH = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WebhookConfig webhookConfig;
+    private final MeterRegistry meterRegistry;
+
+    private BlockingQueue<PendingStatus> buffer;
+    private Thread writer;
+    private volatile boolean running;
+
+    private DistributionSummary flushSize;
+    private Timer flushDuration;
+    private Timer flushLatency;
+    private Counter dropped;
+    private Counter rejected;
+    private Counter flushFailures;
+
+    @PostConstruct
+    public void init() {
+        WebhookConfig.Status settings = webhookConfig.getStatus();
+        buffer = new ArrayBlockingQueue<>(Math.max(1, settings.getBufferCapacity()));
+
+        flushSize = DistributionSummary.builder("whatsapp.webhook.status.flush.size")
+                .description("Status receipts written per flush")
+                .register(meterRegistry);
+        flushDuration = Timer.builder("whatsapp.webhook.status.flush.duration")
+                .description("Time spent writing one batch of status receipts")
+                .register(meterRegistry);
+        flushLatency = Timer.builder("whatsapp.webhook.status.flush.latency")
+                .description("Time from receiving a status receipt to it being written")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        dropped = Counter.builder("whatsapp.webhook.status.dropped")
+                .description("Status receipts rejected because the buffer was full")
+                .register(meterRegistry);
+        rejected = Counter.builder("whatsapp.webhook.status.rejected")
+                .description("Status receipts dropped because their values could not be stored")
+                .register(meterRegistry);
+        flushFailures = Counter.builder("whatsapp.webhook.status.flush.failures")
+                .description("Status batches that could not be written")
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.webhook.status.buffered", buffer, BlockingQueue::size)
+                .description("Status receipts waiting to be written")
+                .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::runWriter, "wa-status-writer");
+        writer.setDaemon(false);
+        writer.start();
+    }
+
+    /**
+     * Buffer a status receipt. The completion is released once the receipt is written.
+     *
+     * @return false if the buffer is full and the receipt was not accepted
+     */
+    public boolean record(String phoneNumberId, WhatsAppWebhookPayload.Status status, WebhookCompletion completion) {
+        if (status.getId() == null || status.getStatus() == null) {
+            log.debug("Ignoring status receipt without message ID or status");
+            return true;
+        }
+        if (status.getId().length() > MAX_ID_LENGTH || status.getStatus().length() > MAX_STATUS_LENGTH) {
+            // Cutting the key would store it against the wrong message
+            rejected.increment();
+            log.warn("Ignoring status receipt with oversized message ID or status");
+            return true;
+        }
+
+        Runnable done = completion.track(() -> { });
+        if (!buffer.offer(new PendingStatus(values(phoneNumberId, status), completion, done, System.nanoTime()))) {
+            dropped.increment();
+            log.warn("Status buffer is full, rejected {} status for message {}", status.getStatus(), status.getId());
+            completion.failed();
+            done.run();
+            return false;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            writer.join(webhookConfig.getLanes().getShutdownTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!buffer.isEmpty()) {
+            log.warn("{} status receipts were not written before shutdown", buffer.size());
+        }
+    }
+
+    private void runWriter() {
+        WebhookConfig.Status settings = webhookConfig.getStatus();
+        int batchSize = Math.max(1, settings.getBatchSize());
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, settings.getFlushIntervalMs()));
+        List<PendingStatus> batch = new ArrayList<>(batchSize);
+
+        while (running || !buffer.isEmpty()) {
+            try {
+                PendingStatus first = buffer.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Linger until the batch is full or the oldest receipt has waited a full interval
+                long deadline = first.receivedAt + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    buffer.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingStatus next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Unexpected error in status writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingStatus> batch) {
+        long start = System.nanoTime();
+        boolean written = false;
+        try {
+            for (int from = 0; from < batch.size(); from += MAX_ROWS_PER_STATEMENT) {
+                write(batch.subList(from, Math.min(batch.size(), from + MAX_ROWS_PER_STATEMENT)));
+            }
+            written = true;
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.error("Failed to write {} status receipts: {}", batch.size(), e.getMessage());
+        }
+
+        long end = System.nanoTime();
+        flushDuration.record(end - start, TimeUnit.NANOSECONDS);
+        flushSize.record(batch.size());
+
+        for (PendingStatus pending : batch) {
+            if (written) {
+                flushLatency.record(end - pending.receivedAt, TimeUnit.NANOSECONDS);
+            } else {
+                pending.completion.failed();
+            }
+            pending.done.run();
+        }
+    }
+
+    /**
+     * Insert the rows, splitting them in halves when the database rejects the data of the
+     * statement, down to single rows that are then dropped. Connection and other transient
+     * failures are thrown so the whole batch is retried from the journal.
+     */
+    private void write(List<PendingStatus> rows) {
+        try {
+            insert(rows);
+        } catch (NonTransientDataAccessException e) {
+            if (e instanceof NonTransientDataAccessResourceException) {
+                throw e;
+            }
+            if (rows.size() == 1) {
+                rejected.increment();
+                Object[] values = rows.get(0).values;
+                log.warn("Dropping {} status for message {} rejected by the database: {}", values[1], values[0],
+                        e.getMostSpecificCause().getMessage());
+                return;
+            }
+            int half = rows.size() / 2;
+            write(rows.subList(0, half));
+            write(rows.subList(half, rows.size()));
+        }
+    }
+
+    private void insert(List<PendingStatus> rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows.size() * (ROW_PLACEHOLDERS.length() + 2));
+        sql.append(INSERT_PREFIX);
+        Object[] args = new Object[rows.size() * COLUMNS];
+        int i = 0;
+        for (PendingStatus row : rows) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+            System.arraycopy(row.values, 0, args, i, COLUMNS);
+            i += COLUMNS;
+        }
+        sql.append(INSERT_SUFFIX);
+
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    /**
+     * Column values of a receipt, cut to the column sizes.
+     */
+    private static Object[] values(String phoneNumberId, WhatsAppWebhookPayload.Status status) {
+        WhatsAppWebhookPayload.StatusError error = status.getErrors() != null && !status.getErrors().isEmpty()
+                ? status.getErrors().get(0) : null;
+        return new Object[]{
+                clean(status.getId(), MAX_ID_LENGTH),
+                clean(status.getStatus(), MAX_STATUS_LENGTH),
+                clean(phoneNumberId, MAX_ID_LENGTH),
+                clean(status.getRecipientId(), MAX_RECIPIENT_LENGTH),
+                parseTimestamp(status.getTimestamp()),
+                status.getConversation() != null ? clean(status.getConversation().getId(), MAX_ID_LENGTH) : null,
+                status.getPricing() != null ? clean(status.getPricing().getCategory(), MAX_CATEGORY_LENGTH) : null,
+                status.getPricing() != null ? status.getPricing().getBillable() : null,
+                error != null ? error.getCode() : null,
+                error != null ? clean(error.getTitle(), Integer.MAX_VALUE) : null
+        };
+    }
+
+    // PostgreSQL text cannot hold NUL characters
+    private static String clean(String value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.indexOf('\0') >= 0 ? value.replace("\0", "") : value;
+        return text.length() > maxLength ? text.substring(0, maxLength) : text;
+    }
+
+    private static LocalDateTime parseTimestamp(String epochSeconds) {
+        if (epochSeconds == null) {
+            return null;
+        }
+        try {
+            // Local time, like every other timestamp column, which are written from LocalDateTime.now()
+            return LocalDateTime.ofInstant(Instant.ofEpochSecond(Long.parseLong(epochSeconds)), ZoneId.systemDefault());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class PendingStatus {
+        private final Object[] values;
+        private final WebhookCompletion completion;
+        private final Runnable done;
+        private final long receivedAt;
+
+        PendingStatus(Object[] values, WebhookCompletion completion, Runnable done, long receivedAt) {
+            this.values = values;
+            this.completion = completion;
+            this.done = done;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
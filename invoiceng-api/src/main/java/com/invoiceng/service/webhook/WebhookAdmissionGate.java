@@ -0,0 +1,210 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.config.WebhookConfig;
+import com.invoiceng.service.tenant.TenantDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for WhatsApp webhook deliveries.
+ *
+ * A delivery holds a permit from the moment it is accepted until all of its lane tasks
+ * have finished, including the AI turn answering its messages. Permits are bounded globally and per tenant (WhatsApp phone number ID),
+ * so one merchant's promo spike cannot take every lane or database connection. Phone
+ * number IDs that do not resolve to a tenant share one budget, so unauthenticated IDs
+ * cannot grow the per-tenant table.
+ *
+ * Deliveries that arrive over budget are spilled: their body stays unacknowledged in the
+ * journal and only the sequence number is queued here, to be redriven by
+ * {@link WebhookSpillRedriver} once permits free up. The spill queue itself is bounded;
+ * beyond it the endpoint answers 503 and Meta retries later.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookAdmissionGate {
+
+    private final WebhookConfig webhookConfig;
+    private final TenantDirectory tenantDirectory;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Semaphore> tenantPermits = new ConcurrentHashMap<>();
+    private Semaphore unknownTenantPermits;
+    private final Deque<SpilledDelivery> spilled = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger spilledCount = new AtomicInteger();
+
+    private Semaphore globalPermits;
+    private Counter admitted;
+    private Counter saturated;
+    private Counter spills;
+    private Counter rejected;
+    private Timer spillTime;
+
+    @PostConstruct
+    public void init() {
+        WebhookConfig.Admission settings = webhookConfig.getAdmission();
+        globalPermits = new Semaphore(Math.max(1, settings.getMaxInFlight()));
+        unknownTenantPermits = new Semaphore(Math.max(1, settings.getMaxInFlightPerTenant()));
+
+        admitted = Counter.builder("whatsapp.webhook.admission").tag("result", "admitted")
+                .description("Webhook deliveries admitted for processing")
+                .register(meterRegistry);
+        saturated = Counter.builder("whatsapp.webhook.admission").tag("result", "saturated")
+                .description("Admission attempts refused because the in-flight budget was used up")
+                .register(meterRegistry);
+        spills = Counter.builder("whatsapp.webhook.admission.spilled")
+                .description("Webhook deliveries deferred to the journal for later processing")
+                .register(meterRegistry);
+        rejected = Counter.builder("whatsapp.webhook.admission.rejected")
+                .description("Webhook deliveries answered with 503")
+                .register(meterRegistry);
+        spillTime = Timer.builder("whatsapp.webhook.admission.spill.time")
+                .description("Time a deferred delivery waited before being redriven")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.webhook.admission.in.flight", this, WebhookAdmissionGate::getInFlight)
+                .description("Webhook deliveries currently holding a permit")
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.webhook.admission.spill.depth", spilledCount, AtomicInteger::get)
+                .description("Deferred deliveries waiting to be redriven")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Take a permit for a delivery without waiting.
+     *
+     * @param tenantKey WhatsApp phone number ID of the delivery, or null if unknown
+     * @return the permit, or null if the tenant or global budget is used up
+     */
+    public Permit tryAcquire(String tenantKey) {
+        Semaphore tenant = tenantKey != null ? tenantPermits(tenantKey) : null;
+
+        if (tenant != null && !tenant.tryAcquire()) {
+            saturated.increment();
+            return null;
+        }
+        if (!globalPermits.tryAcquire()) {
+            if (tenant != null) {
+                tenant.release();
+            }
+            saturated.increment();
+            return null;
+        }
+
+        admitted.increment();
+        return new Permit(tenant);
+    }
+
+    private Semaphore tenantPermits(String tenantKey) {
+        Semaphore permits = tenantPermits.get(tenantKey);
+        if (permits != null) {
+            return permits;
+        }
+        if (tenantDirectory.findByPhoneNumberId(tenantKey).isEmpty()) {
+            return unknownTenantPermits;
+        }
+        return tenantPermits.computeIfAbsent(tenantKey,
+                k -> new Semaphore(Math.max(1, webhookConfig.getAdmission().getMaxInFlightPerTenant())));
+    }
+
+    public boolean isGloballySaturated() {
+        return globalPermits.availablePermits() == 0;
+    }
+
+    public int getInFlight() {
+        return Math.max(1, webhookConfig.getAdmission().getMaxInFlight()) - globalPermits.availablePermits();
+    }
+
+    public boolean hasSpillCapacity() {
+        return spilledCount.get() < webhookConfig.getAdmission().getMaxSpilled();
+    }
+
+    /**
+     * Queue a journaled delivery for redrive.
+     */
+    public void spill(long seq, String tenantKey, int attempts) {
+        spilled.addLast(new SpilledDelivery(seq, tenantKey, attempts, System.nanoTime()));
+        spilledCount.incrementAndGet();
+        spills.increment();
+    }
+
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    public int getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    SpilledDelivery pollSpilled() {
+        SpilledDelivery delivery = spilled.pollFirst();
+        if (delivery != null) {
+            spilledCount.decrementAndGet();
+        }
+        return delivery;
+    }
+
+    /**
+     * Put back a delivery that could not be admitted yet, either at the head (keeping its
+     * turn) or at the tail (letting other tenants go first).
+     */
+    void putBack(SpilledDelivery delivery, boolean keepTurn) {
+        if (keepTurn) {
+            spilled.addFirst(delivery);
+        } else {
+            spilled.addLast(delivery);
+        }
+        spilledCount.incrementAndGet();
+    }
+
+    void recordRedriven(SpilledDelivery delivery) {
+        spillTime.record(System.nanoTime() - delivery.getSpilledAt(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * In-flight permit of one delivery. Releasing more than once has no effect.
+     */
+    public class Permit {
+        private final Semaphore tenant;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore tenant) {
+            this.tenant = tenant;
+        }
+
+        public void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            globalPermits.release();
+            if (tenant != null) {
+                tenant.release();
+            }
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    static class SpilledDelivery {
+        private final long seq;
+        private final String tenantKey;
+        private final int attempts;
+        private final long spilledAt;
+    }
+}
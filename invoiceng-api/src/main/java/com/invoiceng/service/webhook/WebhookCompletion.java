@@ -0,0 +1,111 @@
+package com.invoiceng.service.webhook;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the lane tasks spawned from one webhook delivery and runs a callback once all of
+ * them have finished. The callback is skipped if any task could not be queued, so the
+ * delivery stays unacknowledged in the journal and is replayed later; the optional
+ * failure callback runs instead.
+ */
+@Slf4j
+public class WebhookCompletion {
+
+    private final Runnable onProcessed;
+    private final Runnable onFailed;
+    // Starts at 1 for the dispatch itself so the callback cannot fire while tasks are still being queued
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private volatile boolean failed;
+
+    public WebhookCompletion(Runnable onProcessed) {
+        this(onProcessed, () -> { });
+    }
+
+    public WebhookCompletion(Runnable onProcessed, Runnable onFailed) {
+        this.onProcessed = onProcessed;
+        this.onFailed = onFailed;
+    }
+
+    /**
+     * Wrap a task so its completion is counted. Call before queueing the task.
+     */
+    public Runnable track(Runnable task) {
+        pending.incrementAndGet();
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                release();
+            }
+        };
+    }
+
+    /**
+     * Keep the delivery open for work that outlives the task it was started from, such as a
+     * deferred AI turn. Take the hold while that task is still running.
+     */
+    public Hold hold() {
+        pending.incrementAndGet();
+        return new Hold();
+    }
+
+    /**
+     * Record that a tracked task was not queued.
+     */
+    public void rejected() {
+        failed = true;
+        release();
+    }
+
+    public void failed() {
+        failed = true;
+    }
+
+    /**
+     * Called by the dispatcher once every task of the delivery has been handed off.
+     */
+    public void dispatched() {
+        release();
+    }
+
+    private void release() {
+        if (pending.decrementAndGet() != 0) {
+            return;
+        }
+        try {
+            if (failed) {
+                onFailed.run();
+            } else {
+                onProcessed.run();
+            }
+        } catch (Exception e) {
+            log.warn("Webhook completion callback failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * An open piece of deferred work. Releasing or failing more than once has no effect.
+     */
+    public class Hold {
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        public void release() {
+            if (done.compareAndSet(false, true)) {
+                WebhookCompletion.this.release();
+            }
+        }
+
+        /**
+         * Release, leaving the delivery unacknowledged so it is processed again.
+         */
+        public void fail() {
+            if (done.compareAndSet(false, true)) {
+                failed = true;
+                WebhookCompletion.this.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.invoiceng.service.webhook;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.invoiceng.dto.whatsapp.WhatsAppWebhookPayload;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming front end for Meta webhook bodies.
+ *
+ * Walks the body with a Jackson {@link JsonParser} instead of binding the whole
+ * {@link WhatsAppWebhookPayload} graph. Only {@code metadata.phone_number_id} and the
+ * {@code contacts}, {@code messages} and {@code statuses} arrays are read; every other
+ * subtree is skipped without being materialized. Contacts and messages are bound
+ * element by element; statuses, which are most of the webhook volume, are read field by
+ * field into the few properties the status recorder stores.
+ *
+ * Meta usually sends a change's {@code value} before its {@code field}, so the value is
+ * read first and dropped afterwards if the change is not a {@code messages} change.
+ */
+@Component
+public class WebhookEventParser {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader contactReader;
+    private final ObjectReader messageReader;
+    private final ObjectReader errorReader;
+    private final ObjectReader originReader;
+
+    public WebhookEventParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.contactReader = objectMapper.readerFor(WhatsAppWebhookPayload.Contact.class);
+        this.messageReader = objectMapper.readerFor(WhatsAppWebhookPayload.Message.class);
+        this.errorReader = objectMapper.readerFor(WhatsAppWebhookPayload.StatusError.class);
+        this.originReader = objectMapper.readerFor(WhatsAppWebhookPayload.Origin.class);
+    }
+
+    /**
+     * Extract the handled events from a raw webhook body.
+     *
+     * @throws IOException if the body is not valid JSON or not a JSON object
+     */
+    public WebhookEvents parse(byte[] body) throws IOException {
+        WebhookEvents events = new WebhookEvents();
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Webhook body must be a JSON object");
+            }
+            while (nextField(parser)) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("entry".equals(name) && token == JsonToken.START_ARRAY) {
+                    while (nextElement(parser)) {
+                        if (parser.currentToken() == JsonToken.START_OBJECT) {
+                            parseEntry(parser, events);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return events;
+    }
+
+    private void parseEntry(JsonParser parser, WebhookEvents events) throws IOException {
+        while (nextField(parser)) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("changes".equals(name) && token == JsonToken.START_ARRAY) {
+                while (nextElement(parser)) {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        parseChange(parser, events);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseChange(JsonParser parser, WebhookEvents events) throws IOException {
+        String field = null;
+        ChangeValue value = null;
+
+        while (nextField(parser)) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("field".equals(name) && token == JsonToken.VALUE_STRING) {
+                field = parser.getText();
+            } else if ("value".equals(name) && token == JsonToken.START_OBJECT) {
+                value = parseValue(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if ("messages".equals(field) && value != null) {
+            events.addChange(value.phoneNumberId, value.contacts, value.messages, value.statuses);
+        }
+    }
+
+    private ChangeValue parseValue(JsonParser parser) throws IOException {
+        ChangeValue value = new ChangeValue();
+
+        while (nextField(parser)) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT && "metadata".equals(name)) {
+                value.phoneNumberId = parsePhoneNumberId(parser);
+            } else if (token == JsonToken.START_ARRAY && "messages".equals(name)) {
+                value.messages = readArray(parser, messageReader);
+            } else if (token == JsonToken.START_ARRAY && "statuses".equals(name)) {
+                value.statuses = readStatuses(parser);
+            } else if (token == JsonToken.START_ARRAY && "contacts".equals(name)) {
+                value.contacts = readArray(parser, contactReader);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    private String parsePhoneNumberId(JsonParser parser) throws IOException {
+        String phoneNumberId = null;
+        while (nextField(parser)) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("phone_number_id".equals(name) && token.isScalarValue()) {
+                phoneNumberId = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return phoneNumberId;
+    }
+
+    private <T> List<T> readArray(JsonParser parser, ObjectReader reader) throws IOException {
+        List<T> items = new ArrayList<>();
+        while (nextElement(parser)) {
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                items.add(reader.readValue(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return items;
+    }
+
+    private List<WhatsAppWebhookPayload.Status> readStatuses(JsonParser parser) throws IOException {
+        List<WhatsAppWebhookPayload.Status> statuses = new ArrayList<>();
+        while (nextElement(parser)) {
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                statuses.add(readStatus(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return statuses;
+    }
+
+    private WhatsAppWebhookPayload.Status readStatus(JsonParser parser) throws IOException {
+        WhatsAppWebhookPayload.Status status = new WhatsAppWebhookPayload.Status();
+        while (nextField(parser)) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token.isScalarValue()) {
+                switch (name) {
+                    case "id" -> status.setId(parser.getValueAsString());
+                    case "status" -> status.setStatus(parser.getValueAsString());
+                    case "timestamp" -> status.setTimestamp(parser.getValueAsString());
+                    case "recipient_id" -> status.setRecipientId(parser.getValueAsString());
+                    default -> { }
+                }
+            } else if (token == JsonToken.START_OBJECT && "conversation".equals(name)) {
+                WhatsAppWebhookPayload.Conversation conversation = new WhatsAppWebhookPayload.Conversation();
+                while (nextField(parser)) {
+                    String field = parser.currentName();
+                    JsonToken fieldToken = parser.nextToken();
+                    if ("id".equals(field) && fieldToken.isScalarValue()) {
+                        conversation.setId(parser.getValueAsString());
+                    } else if ("expiration_timestamp".equals(field) && fieldToken.isScalarValue()) {
+                        conversation.setExpirationTimestamp(parser.getValueAsString());
+                    } else if ("origin".equals(field) && fieldToken == JsonToken.START_OBJECT) {
+                        conversation.setOrigin(originReader.readValue(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                status.setConversation(conversation);
+            } else if (token == JsonToken.START_OBJECT && "pricing".equals(name)) {
+                WhatsAppWebhookPayload.Pricing pricing = new WhatsAppWebhookPayload.Pricing();
+                while (nextField(parser)) {
+                    String field = parser.currentName();
+                    JsonToken fieldToken = parser.nextToken();
+                    if ("category".equals(field) && fieldToken.isScalarValue()) {
+                        pricing.setCategory(parser.getValueAsString());
+                    } else if ("pricing_model".equals(field) && fieldToken.isScalarValue()) {
+                        pricing.setPricingModel(parser.getValueAsString());
+                    } else if ("billable".equals(field) && fieldToken.isBoolean()) {
+                        pricing.setBillable(parser.getBooleanValue());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                status.setPricing(pricing);
+            } else if (token == JsonToken.START_ARRAY && "errors".equals(name)) {
+                status.setErrors(readArray(parser, errorReader));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Advance to the next field of the current object.
+     *
+     * @return false once the object has ended
+     */
+    private static boolean nextField(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of webhook body");
+        }
+        return token == JsonToken.FIELD_NAME;
+    }
+
+    /**
+     * Advance to the next element of the current array.
+     *
+     * @return false once the array has ended
+     */
+    private static boolean nextElement(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of webhook body");
+        }
+        return token != JsonToken.END_ARRAY;
+    }
+
+    private static class ChangeValue {
+        private String phoneNumberId;
+        private List<WhatsAppWebhookPayload.Contact> contacts;
+        private List<WhatsAppWebhookPayload.Message> messages;
+        private List<WhatsAppWebhookPayload.Status> statuses;
+    }
+}
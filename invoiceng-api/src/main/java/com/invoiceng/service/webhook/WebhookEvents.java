@@ -0,0 +1,72 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.dto.whatsapp.WhatsAppWebhookPayload;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The events of one webhook delivery that the pipeline acts on: inbound customer
+ * messages and status receipts from {@code messages} changes. Everything else in the
+ * delivery is dropped when it is parsed.
+ */
+@Getter
+public class WebhookEvents {
+
+    private final List<InboundMessage> messages = new ArrayList<>();
+    private final List<StatusReceipt> statuses = new ArrayList<>();
+
+    public boolean isEmpty() {
+        return messages.isEmpty() && statuses.isEmpty();
+    }
+
+    /**
+     * The phone number ID the delivery is addressed to, used as its tenant key.
+     */
+    public String getTenantKey() {
+        for (InboundMessage message : messages) {
+            if (message.getPhoneNumberId() != null) {
+                return message.getPhoneNumberId();
+            }
+        }
+        for (StatusReceipt status : statuses) {
+            if (status.getPhoneNumberId() != null) {
+                return status.getPhoneNumberId();
+            }
+        }
+        return null;
+    }
+
+    void addChange(String phoneNumberId, List<WhatsAppWebhookPayload.Contact> contacts,
+                   List<WhatsAppWebhookPayload.Message> changeMessages,
+                   List<WhatsAppWebhookPayload.Status> changeStatuses) {
+        WhatsAppWebhookPayload.Contact contact = contacts != null && !contacts.isEmpty() ? contacts.get(0) : null;
+        if (changeMessages != null) {
+            for (WhatsAppWebhookPayload.Message message : changeMessages) {
+                messages.add(new InboundMessage(phoneNumberId, contact, message));
+            }
+        }
+        if (changeStatuses != null) {
+            for (WhatsAppWebhookPayload.Status status : changeStatuses) {
+                statuses.add(new StatusReceipt(phoneNumberId, status));
+            }
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class InboundMessage {
+        private final String phoneNumberId;
+        private final WhatsAppWebhookPayload.Contact contact;
+        private final WhatsAppWebhookPayload.Message message;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class StatusReceipt {
+        private final String phoneNumberId;
+        private final WhatsAppWebhookPayload.Status status;
+    }
+}
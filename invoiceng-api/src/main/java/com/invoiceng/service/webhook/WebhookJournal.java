@@ -0,0 +1,613 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.config.WebhookConfig;
+import com.invoiceng.exception.WebhookJournalException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segment-rotated journal of raw WhatsApp webhook bodies.
+ *
+ * The controller appends every body before answering Meta with 200; the call returns
+ * once the record is fsynced. A single writer thread group-commits: it drains all
+ * appends that arrived while the previous fsync was running and makes them durable
+ * with one {@code force()}, so concurrent requests share the cost of the fsync.
+ *
+ * When processing of an entry finishes, an ACK record is appended (without waiting
+ * for fsync). On startup, entries without an ACK are handed back for replay. A lost
+ * ACK only causes a replay, which the duplicate-message check absorbs. Unacknowledged
+ * entries can also be read back by sequence number while the application runs, which
+ * lets deliveries deferred under load be processed later straight from disk.
+ *
+ * A batch that fails to write is cut back off the segment and its callers are refused.
+ * Recovery skips any record that fails its checksum and keeps reading after it.
+ *
+ * Record layout: [int length][int crc32][byte type][long seq][payload]
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookJournal {
+
+    private static final byte TYPE_ENTRY = 1;
+    private static final byte TYPE_ACK = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 1 + 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final WebhookConfig webhookConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<Long, Segment> pendingBySeq = new ConcurrentHashMap<>();
+    private final Map<Long, Long> pendingOffsets = new ConcurrentHashMap<>();
+    private final List<JournalEntry> recovered = new ArrayList<>();
+
+    private Path directory;
+    private Segment activeSegment;
+    private long nextSeq = 1;
+    private volatile boolean running;
+    private Thread writerThread;
+
+    private Timer appendTimer;
+    private DistributionSummary batchSizeSummary;
+
+    @PostConstruct
+    public void init() {
+        WebhookConfig.Journal settings = webhookConfig.getJournal();
+        if (!settings.isEnabled()) {
+            log.info("Webhook journal disabled");
+            return;
+        }
+
+        try {
+            directory = Paths.get(settings.getDirectory()).toAbsolutePath();
+            Files.createDirectories(directory);
+            recover();
+            openSegment(nextSeq);
+        } catch (IOException e) {
+            throw new WebhookJournalException("Failed to open webhook journal at " + settings.getDirectory(), e);
+        }
+
+        appendTimer = Timer.builder("whatsapp.webhook.journal.append")
+                .description("Time to durably append a webhook body, including group-commit fsync")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("whatsapp.webhook.journal.commit.batch")
+                .description("Records written per group commit")
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.webhook.journal.pending", pendingBySeq, Map::size)
+                .description("Journal entries not yet acknowledged as processed")
+                .register(meterRegistry);
+
+        running = true;
+        writerThread = new Thread(this::writeLoop, "wa-journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        log.info("Webhook journal opened at {} with {} unprocessed entries", directory, recovered.size());
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * Durably append a raw webhook body. Waits at most {@code append-timeout-ms} for the fsync.
+     *
+     * @return the sequence number to acknowledge once the entry has been processed
+     */
+    public long append(byte[] body) {
+        if (!running) {
+            throw new WebhookJournalException("Webhook journal is not running");
+        }
+
+        long start = System.nanoTime();
+        Request request = new Request(TYPE_ENTRY, 0, body);
+        queue.add(request);
+        try {
+            long seq = request.result.get(webhookConfig.getJournal().getAppendTimeoutMs(), TimeUnit.MILLISECONDS);
+            appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return seq;
+        } catch (InterruptedException e) {
+            request.result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new WebhookJournalException("Interrupted while appending to webhook journal", e);
+        } catch (ExecutionException e) {
+            throw new WebhookJournalException("Failed to append to webhook journal", e.getCause());
+        } catch (TimeoutException e) {
+            // The writer skips a cancelled request, or acknowledges it itself if it was already written
+            request.result.cancel(false);
+            throw new WebhookJournalException("Timed out appending to webhook journal", e);
+        }
+    }
+
+    /**
+     * Mark an entry as processed. Does not wait for the ACK to reach disk.
+     */
+    public void acknowledge(long seq) {
+        if (!running) {
+            log.debug("Webhook journal closed, dropping ACK for entry {}", seq);
+            return;
+        }
+        queue.add(new Request(TYPE_ACK, seq, null));
+    }
+
+    /**
+     * Read back the body of an entry that has not been acknowledged yet.
+     *
+     * @return the body, or empty if the entry is unknown or already acknowledged
+     */
+    public Optional<byte[]> read(long seq) {
+        Segment segment = pendingBySeq.get(seq);
+        Long offset = pendingOffsets.get(seq);
+        if (segment == null || offset == null) {
+            return Optional.empty();
+        }
+
+        // Segments are only deleted once all of their entries are acknowledged, so this one still exists
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            byte type = header.get();
+            long recordSeq = header.getLong();
+
+            ByteBuffer payload = ByteBuffer.allocate(Math.max(0, length));
+            channel.read(payload, offset + HEADER_BYTES);
+            byte[] body = payload.array();
+            if (type != TYPE_ENTRY || recordSeq != seq || checksum(type, seq, body) != crc) {
+                throw new WebhookJournalException("Journal entry " + seq + " failed verification");
+            }
+            return Optional.of(body);
+        } catch (IOException e) {
+            throw new WebhookJournalException("Failed to read journal entry " + seq, e);
+        }
+    }
+
+    /**
+     * Entries found on disk at startup without an ACK. Returned once; later calls return an empty list.
+     */
+    public synchronized List<JournalEntry> drainRecoveredEntries() {
+        List<JournalEntry> entries = new ArrayList<>(recovered);
+        recovered.clear();
+        return entries;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!running) {
+            return;
+        }
+        // The writer drains the queue and exits on its next poll; it is not interrupted because an
+        // interrupt during FileChannel I/O would close the channel mid-commit.
+        running = false;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            activeSegment.channel.force(false);
+            activeSegment.channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close webhook journal segment: {}", e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        WebhookConfig.Journal settings = webhookConfig.getJournal();
+        long lingerNanos = TimeUnit.MICROSECONDS.toNanos(settings.getGroupCommitLingerMicros());
+        int maxBatch = Math.max(1, settings.getMaxBatchSize());
+        List<Request> batch = new ArrayList<>(maxBatch);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+
+                // Give appends that are in flight on other request threads a chance to join this fsync
+                if (lingerNanos > 0 && batch.size() < maxBatch && first.type == TYPE_ENTRY) {
+                    LockSupport.parkNanos(lingerNanos);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+
+                commit(batch);
+            } catch (InterruptedException e) {
+                log.warn("Webhook journal writer interrupted, continuing");
+            } catch (Throwable t) {
+                // Fail this batch only; the writer has to keep running or every later append waits for nothing
+                log.error("Webhook journal writer failed a batch of {} records", batch.size(), t);
+                for (Request request : batch) {
+                    request.result.completeExceptionally(t);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Request> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        boolean hasEntries = false;
+        Exception failure = null;
+        try {
+            for (Request request : batch) {
+                if (request.type == TYPE_ENTRY && request.result.isDone()) {
+                    // Its caller gave up waiting
+                    continue;
+                }
+                if (request.type == TYPE_ENTRY) {
+                    request.seq = nextSeq++;
+                    hasEntries = true;
+                }
+                write(request);
+            }
+            if (hasEntries) {
+                activeSegment.channel.force(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Webhook journal write failed", e);
+            failure = e;
+            rollBack(batch);
+        }
+        batchSizeSummary.record(batch.size());
+
+        for (Request request : batch) {
+            if (request.type == TYPE_ENTRY) {
+                if (request.segment == null) {
+                    if (failure != null) {
+                        request.result.completeExceptionally(failure);
+                    }
+                    continue;
+                }
+                // Attribute the entry to the segment it was written to; the batch may have rotated
+                pendingBySeq.put(request.seq, request.segment);
+                pendingOffsets.put(request.seq, request.position);
+                request.segment.pending++;
+                if (!request.result.complete(request.seq)) {
+                    // Its caller gave up while the batch was being written and was refused, so nobody will
+                    // acknowledge the entry; acknowledge it here or it holds back segment deletion forever
+                    queue.add(new Request(TYPE_ACK, request.seq, null));
+                }
+            } else {
+                // An ACK that did not reach disk is a lost ACK: the entry is replayed after a restart
+                pendingOffsets.remove(request.seq);
+                Segment segment = pendingBySeq.remove(request.seq);
+                if (segment != null) {
+                    segment.pending--;
+                }
+            }
+        }
+        deleteProcessedSegments();
+    }
+
+    /**
+     * Undo the part of a failed batch that is not known to be on disk. Records in a segment the
+     * batch rotated away from were forced by the rotation and stay. The rest are cut off the
+     * active segment and their sequence numbers are handed out again. If the segment cannot be
+     * cut back, it is sealed with the torn bytes in it, which recovery skips, and a new one is
+     * opened. Lost records are marked by clearing their segment.
+     */
+    private void rollBack(List<Request> batch) {
+        long goodSize = -1;
+        long firstLostSeq = 0;
+        for (Request request : batch) {
+            if (request.segment != null && request.segment.sealed) {
+                continue;
+            }
+            if (request.segment == activeSegment && (goodSize < 0 || request.position < goodSize)) {
+                goodSize = request.position;
+            }
+            if (request.type == TYPE_ENTRY && request.seq > 0 && firstLostSeq == 0) {
+                firstLostSeq = request.seq;
+            }
+            request.segment = null;
+        }
+        if (firstLostSeq > 0) {
+            nextSeq = firstLostSeq;
+        }
+
+        if (!activeSegment.sealed) {
+            try {
+                if (goodSize >= 0) {
+                    activeSegment.channel.truncate(goodSize);
+                }
+                activeSegment.size = activeSegment.channel.size();
+                return;
+            } catch (IOException e) {
+                log.error("Failed to cut journal segment {} back to byte {}, sealing it", activeSegment.path, goodSize, e);
+                seal(activeSegment);
+            }
+        }
+        try {
+            openSegment(nextSeq);
+        } catch (IOException e) {
+            // Every append fails until a later batch manages to open one
+            log.error("Failed to open a new webhook journal segment", e);
+        }
+    }
+
+    private void write(Request request) throws IOException {
+        byte[] payload = request.payload != null ? request.payload : new byte[0];
+        int recordBytes = HEADER_BYTES + payload.length;
+
+        if (activeSegment.size > 0 && activeSegment.size + recordBytes > webhookConfig.getJournal().getSegmentSizeBytes()) {
+            // An entry's sequence number is already taken, so name the new segment after it
+            rotate(request.type == TYPE_ENTRY ? request.seq : nextSeq);
+        }
+
+        request.segment = activeSegment;
+        request.position = activeSegment.size;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(payload.length);
+        header.putInt(checksum(request.type, request.seq, payload));
+        header.put(request.type);
+        header.putLong(request.seq);
+        header.flip();
+
+        ByteBuffer[] buffers = {header, ByteBuffer.wrap(payload)};
+        while (buffers[1].hasRemaining() || buffers[0].hasRemaining()) {
+            activeSegment.channel.write(buffers);
+        }
+        activeSegment.size += recordBytes;
+    }
+
+    private void rotate(long firstSeq) throws IOException {
+        activeSegment.channel.force(false);
+        activeSegment.channel.close();
+        activeSegment.sealed = true;
+        openSegment(firstSeq);
+    }
+
+    private void seal(Segment segment) {
+        segment.sealed = true;
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close webhook journal segment {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+        // A segment with the same name can only exist if it holds no entries (e.g. one that only holds ACKs)
+        Segment existing = segments.remove(firstSeq);
+        if (existing != null) {
+            existing.sealed = true;
+        }
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeSegment = new Segment(path, channel, channel.size());
+        segments.put(firstSeq, activeSegment);
+    }
+
+    /**
+     * Delete sealed segments from the head of the journal once all of their entries are acknowledged.
+     * Segments are removed strictly oldest-first so an ACK is never deleted before the entry it covers.
+     */
+    private void deleteProcessedSegments() {
+        while (!segments.isEmpty()) {
+            Map.Entry<Long, Segment> head = segments.firstEntry();
+            Segment segment = head.getValue();
+            if (!segment.sealed || segment.pending > 0) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                log.warn("Failed to delete processed journal segment {}: {}", segment.path, e.getMessage());
+                return;
+            }
+            segments.remove(head.getKey());
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        Map<Long, JournalEntry> entries = new HashMap<>();
+        Map<Long, Segment> entrySegments = new HashMap<>();
+        Map<Long, Long> entryOffsets = new HashMap<>();
+        Set<Long> acks = new HashSet<>();
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long firstSeq = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = new Segment(file, null, Files.size(file));
+            segment.sealed = true;
+            segments.put(firstSeq, segment);
+
+            long validBytes = readSegment(file, segment, entries, entrySegments, entryOffsets, acks);
+            if (validBytes < segment.size) {
+                log.warn("Truncating torn tail of journal segment {} at byte {}", file, validBytes);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(validBytes);
+                }
+            }
+        }
+
+        for (JournalEntry entry : entries.values()) {
+            nextSeq = Math.max(nextSeq, entry.getSeq() + 1);
+        }
+        for (Long ack : acks) {
+            nextSeq = Math.max(nextSeq, ack + 1);
+        }
+
+        entries.values().stream()
+                .filter(entry -> !acks.contains(entry.getSeq()))
+                .sorted((a, b) -> Long.compare(a.getSeq(), b.getSeq()))
+                .forEach(entry -> {
+                    Segment segment = entrySegments.get(entry.getSeq());
+                    segment.pending++;
+                    pendingBySeq.put(entry.getSeq(), segment);
+                    pendingOffsets.put(entry.getSeq(), entryOffsets.get(entry.getSeq()));
+                    recovered.add(entry);
+                });
+
+        deleteProcessedSegments();
+    }
+
+    /**
+     * Read the records of a segment. A record that fails its length or checksum check is
+     * skipped by scanning forward to the next valid record, so one torn write does not hide the
+     * records after it.
+     *
+     * @return the end of the last valid record
+     */
+    private long readSegment(Path file, Segment segment, Map<Long, JournalEntry> entries,
+                             Map<Long, Segment> entrySegments, Map<Long, Long> entryOffsets,
+                             Set<Long> acks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            long size = channel.size();
+            long position = 0;
+            long validEnd = 0;
+
+            while (position + HEADER_BYTES <= size) {
+                Record record = readRecord(channel, header, position, size);
+                if (record == null) {
+                    long next = position + 1;
+                    while (next + HEADER_BYTES <= size && readRecord(channel, header, next, size) == null) {
+                        next++;
+                    }
+                    if (next + HEADER_BYTES > size) {
+                        break;
+                    }
+                    log.warn("Skipping {} corrupt bytes of journal segment {} at byte {}", next - position, file, position);
+                    position = next;
+                    continue;
+                }
+
+                if (record.type == TYPE_ENTRY) {
+                    entries.put(record.seq, new JournalEntry(record.seq, record.payload));
+                    entrySegments.put(record.seq, segment);
+                    entryOffsets.put(record.seq, position);
+                } else {
+                    acks.add(record.seq);
+                }
+                position += HEADER_BYTES + record.payload.length;
+                validEnd = position;
+            }
+            return validEnd;
+        }
+    }
+
+    /**
+     * The record at {@code position}, or null if there is no valid record there.
+     */
+    private static Record readRecord(FileChannel channel, ByteBuffer header, long position, long size) throws IOException {
+        header.clear();
+        channel.read(header, position);
+        header.flip();
+        int length = header.getInt();
+        int crc = header.getInt();
+        byte type = header.get();
+        long seq = header.getLong();
+
+        if ((type != TYPE_ENTRY && type != TYPE_ACK) || length < 0 || position + HEADER_BYTES + length > size) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        channel.read(payload, position + HEADER_BYTES);
+        byte[] bytes = payload.array();
+        return checksum(type, seq, bytes) == crc ? new Record(type, seq, bytes) : null;
+    }
+
+    private static int checksum(byte type, long seq, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(ByteBuffer.allocate(8).putLong(0, seq));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class JournalEntry {
+        private final long seq;
+        private final byte[] body;
+    }
+
+    private record Record(byte type, long seq, byte[] payload) {
+    }
+
+    private static class Request {
+        private final byte type;
+        private final byte[] payload;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private long seq;
+        private Segment segment;
+        private long position;
+
+        Request(byte type, long seq, byte[] payload) {
+            this.type = type;
+            this.seq = seq;
+            this.payload = payload;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+        private int pending;
+        private boolean sealed;
+
+        Segment(Path path, FileChannel channel, long size) {
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+}
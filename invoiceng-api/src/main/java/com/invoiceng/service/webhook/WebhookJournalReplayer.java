@@ -0,0 +1,55 @@
+package com.invoiceng.service.webhook;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Re-feeds webhook deliveries that were journaled but never marked processed
+ * (e.g. the pod was killed mid-turn) once the application is ready. They are queued
+ * as spilled deliveries, so a large backlog goes through admission control like live traffic.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookJournalReplayer {
+
+    private final WebhookJournal webhookJournal;
+    private final WebhookAdmissionGate admissionGate;
+    private final WebhookEventParser webhookEventParser;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayUnprocessedEntries() {
+        if (!webhookJournal.isEnabled()) {
+            return;
+        }
+
+        List<WebhookJournal.JournalEntry> entries = webhookJournal.drainRecoveredEntries();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        log.info("Replaying {} unprocessed webhook deliveries from the journal", entries.size());
+        for (WebhookJournal.JournalEntry entry : entries) {
+            replay(entry);
+        }
+    }
+
+    private void replay(WebhookJournal.JournalEntry entry) {
+        long seq = entry.getSeq();
+        WebhookEvents events;
+        try {
+            events = webhookEventParser.parse(entry.getBody());
+        } catch (Exception e) {
+            log.error("Discarding unreadable journal entry {}: {}", seq, e.getMessage());
+            webhookJournal.acknowledge(seq);
+            return;
+        }
+
+        admissionGate.spill(seq, events.getTenantKey(), 0);
+    }
+}
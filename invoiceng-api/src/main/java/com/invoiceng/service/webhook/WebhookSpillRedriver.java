@@ -0,0 +1,110 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.config.WebhookConfig;
+import com.invoiceng.config.WhatsAppConfig;
+import com.invoiceng.exception.WebhookJournalException;
+import com.invoiceng.service.WebhookProcessingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Feeds spilled webhook deliveries back into processing as admission permits free up.
+ *
+ * Bodies are read back from the journal, so a spill only costs a sequence number in
+ * memory. A redriven delivery that fails again (e.g. its lane is still full) is spilled
+ * again up to {@code maxRedriveAttempts}; after that it stays in the journal and is
+ * replayed on the next restart.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookSpillRedriver {
+
+    private final WebhookAdmissionGate admissionGate;
+    private final WebhookJournal webhookJournal;
+    private final WebhookProcessingService webhookProcessingService;
+    private final WebhookConfig webhookConfig;
+    private final WhatsAppConfig whatsAppConfig;
+    private final WebhookEventParser webhookEventParser;
+
+    @Scheduled(fixedDelayString = "${webhook.admission.redrive-interval-ms:500}")
+    public void redriveSpilled() {
+        if (!webhookJournal.isEnabled()) {
+            return;
+        }
+
+        // Visit each spilled delivery at most once per run so saturated tenants cannot spin the loop
+        int remaining = admissionGate.getSpilledCount();
+        while (remaining-- > 0) {
+            WebhookAdmissionGate.SpilledDelivery delivery = admissionGate.pollSpilled();
+            if (delivery == null) {
+                return;
+            }
+
+            WebhookAdmissionGate.Permit permit = admissionGate.tryAcquire(delivery.getTenantKey());
+            if (permit == null) {
+                boolean globallySaturated = admissionGate.isGloballySaturated();
+                admissionGate.putBack(delivery, globallySaturated);
+                if (globallySaturated) {
+                    return;
+                }
+                continue;
+            }
+
+            admissionGate.recordRedriven(delivery);
+            redrive(delivery, permit);
+        }
+    }
+
+    /**
+     * Completion for a journaled delivery holding {@code permit}: acknowledges the entry once
+     * processed, and spills it for another attempt if any of its tasks could not be queued.
+     */
+    public WebhookCompletion completionFor(long seq, String tenantKey, int attempts,
+                                           WebhookAdmissionGate.Permit permit) {
+        return new WebhookCompletion(
+                () -> {
+                    permit.release();
+                    webhookJournal.acknowledge(seq);
+                },
+                () -> {
+                    permit.release();
+                    if (attempts + 1 < webhookConfig.getAdmission().getMaxRedriveAttempts()) {
+                        admissionGate.spill(seq, tenantKey, attempts + 1);
+                    } else {
+                        log.error("Giving up on redriving journal entry {} after {} attempts, it will be replayed on restart",
+                                seq, attempts + 1);
+                    }
+                });
+    }
+
+    private void redrive(WebhookAdmissionGate.SpilledDelivery delivery, WebhookAdmissionGate.Permit permit) {
+        long seq = delivery.getSeq();
+        WebhookEvents events;
+        try {
+            Optional<byte[]> body = webhookJournal.read(seq);
+            if (body.isEmpty()) {
+                // Already acknowledged, e.g. processed by a startup replay
+                permit.release();
+                return;
+            }
+            events = webhookEventParser.parse(body.get());
+        } catch (WebhookJournalException e) {
+            log.error("Failed to read spilled journal entry {}: {}", seq, e.getMessage());
+            permit.release();
+            return;
+        } catch (Exception e) {
+            log.error("Discarding unreadable journal entry {}: {}", seq, e.getMessage());
+            permit.release();
+            webhookJournal.acknowledge(seq);
+            return;
+        }
+
+        webhookProcessingService.processEventsAsync(events, whatsAppConfig.getPhoneNumberId(),
+                completionFor(seq, delivery.getTenantKey(), delivery.getAttempts(), permit));
+    }
+}
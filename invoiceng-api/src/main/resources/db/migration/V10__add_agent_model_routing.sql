@@ -0,0 +1,5 @@
+-- V10__add_agent_model_routing.sql
+-- Per-tenant overrides for the Claude model router, e.g.
+-- {"fast_model": "...", "strong_model": "...", "strong_states": ["browsing"], "force": "strong"}
+
+ALTER TABLE agent_configs ADD COLUMN IF NOT EXISTS model_routing JSONB;
@@ -0,0 +1,15 @@
+-- V11__add_ai_usage_detail.sql
+-- Most single calls cost well under a cent, so cost_cents alone rounds them away.
+-- Keep the exact estimate in micro-dollars next to it, plus the prompt cache token counts.
+
+ALTER TABLE ai_usage ADD COLUMN IF NOT EXISTS cost_micro_usd BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE ai_usage ADD COLUMN IF NOT EXISTS cache_write_tokens INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE ai_usage ADD COLUMN IF NOT EXISTS cache_read_tokens INTEGER NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_ai_usage_business_date ON ai_usage(business_id, created_at);
+
+-- Usage outlives the conversation it was spent on: keep the row and clear the reference
+-- instead of blocking the delete.
+ALTER TABLE ai_usage DROP CONSTRAINT IF EXISTS ai_usage_conversation_id_fkey;
+ALTER TABLE ai_usage ADD CONSTRAINT ai_usage_conversation_id_fkey
+    FOREIGN KEY (conversation_id) REFERENCES conversations(id) ON DELETE SET NULL;
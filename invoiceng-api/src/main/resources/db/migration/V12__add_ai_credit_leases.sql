@@ -0,0 +1,18 @@
+-- V12__add_ai_credit_leases.sql
+-- Blocks of AI credits taken out of ai_credits.credits_remaining by an application node.
+-- A node spends its blocks in memory, records what it used here and returns the rest when
+-- it lets the lease go. Leases of a node that stops renewing them expire, and their unused
+-- credits are returned to ai_credits by whichever node reclaims them.
+
+CREATE TABLE IF NOT EXISTS ai_credit_leases (
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    node_id UUID NOT NULL,
+    credits_leased INTEGER NOT NULL,
+    credits_used INTEGER NOT NULL DEFAULT 0,
+    expires_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, node_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_ai_credit_leases_node ON ai_credit_leases(node_id);
+CREATE INDEX IF NOT EXISTS idx_ai_credit_leases_expires ON ai_credit_leases(expires_at);
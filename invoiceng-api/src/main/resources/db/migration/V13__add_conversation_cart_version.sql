@@ -0,0 +1,6 @@
+-- V13__add_conversation_cart_version.sql
+-- Version of conversations.cart, bumped on every cart write. Nodes keep live carts in memory
+-- between turns; a cached cart is only used while its version matches the row, and a write
+-- based on an older version is refused, so carts changed on another node are never overwritten.
+
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS cart_version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,22 @@
+-- V8__add_message_statuses.sql
+-- Delivery/read receipts reported by the WhatsApp Cloud API for outbound messages
+
+CREATE TABLE IF NOT EXISTS message_statuses (
+    whatsapp_message_id VARCHAR(100) NOT NULL,
+    status VARCHAR(20) NOT NULL, -- sent, delivered, read, failed
+    phone_number_id VARCHAR(100),
+    recipient_id VARCHAR(20),
+    status_at TIMESTAMP,
+    wa_conversation_id VARCHAR(100),
+    pricing_category VARCHAR(50),
+    billable BOOLEAN,
+    error_code INTEGER,
+    error_title TEXT,
+    received_at TIMESTAMP DEFAULT NOW(),
+
+    -- Meta retries deliveries, so each status is stored once per message
+    PRIMARY KEY (whatsapp_message_id, status)
+);
+
+CREATE INDEX IF NOT EXISTS idx_message_statuses_phone_status_at ON message_statuses(phone_number_id, status_at DESC);
+CREATE INDEX IF NOT EXISTS idx_message_statuses_failed ON message_statuses(status_at DESC) WHERE status = 'failed';
@@ -0,0 +1,30 @@
+-- V9__add_outbound_messages.sql
+-- Transactional outbox for outbound WhatsApp messages. Rows are written in the same
+-- transaction as the conversation or order change and sent by OutboundMessageDispatcher.
+
+CREATE TABLE IF NOT EXISTS outbound_messages (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    -- Insertion order; messages to one recipient are sent strictly in this order
+    seq BIGSERIAL NOT NULL,
+    business_id UUID REFERENCES users(id) ON DELETE CASCADE,
+    conversation_message_id UUID REFERENCES conversation_messages(id) ON DELETE SET NULL,
+    phone_number_id VARCHAR(100) NOT NULL,
+    recipient_phone VARCHAR(20) NOT NULL,
+    message_type VARCHAR(20) NOT NULL,
+    payload JSONB NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING', -- PENDING, SENDING, SENT, FAILED
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    locked_until TIMESTAMP,
+    whatsapp_message_id VARCHAR(100),
+    last_error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    sent_at TIMESTAMP
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_outbound_messages_seq ON outbound_messages(seq);
+CREATE INDEX IF NOT EXISTS idx_outbound_messages_due ON outbound_messages(seq)
+    WHERE status IN ('PENDING', 'SENDING');
+CREATE INDEX IF NOT EXISTS idx_outbound_messages_recipient ON outbound_messages(phone_number_id, recipient_phone, seq)
+    WHERE status IN ('PENDING', 'SENDING');
+CREATE INDEX IF NOT EXISTS idx_outbound_messages_sent_at ON outbound_messages(sent_at) WHERE status = 'SENT';
@@ -0,0 +1,105 @@
+package com.invoiceng.service.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingActionDetectorTest {
+
+    @Test
+    void detectsATagInASingleChunk() {
+        StreamingActionDetector detector = new StreamingActionDetector();
+
+        assertThat(detector.append("Added! [ADD_TO_CART: Red shoes x 2] Anything else?"))
+                .containsExactly("[ADD_TO_CART: Red shoes x 2]");
+        assertThat(detector.getTextWithoutTags()).isEqualTo("Added!  Anything else?");
+    }
+
+    @Test
+    void detectsATagSplitAcrossDeltas() {
+        StreamingActionDetector detector = new StreamingActionDetector();
+
+        assertThat(detector.append("Done [ADD_TO")).isEmpty();
+        assertThat(detector.append("_CART: Red ")).isEmpty();
+        assertThat(detector.append("shoes x 2] and")).containsExactly("[ADD_TO_CART: Red shoes x 2]");
+        assertThat(detector.append(" more")).isEmpty();
+        assertThat(detector.getTextWithoutTags()).isEqualTo("Done  and more");
+    }
+
+    @Test
+    void detectsATagWhoseOpeningBracketEndsAChunk() {
+        StreamingActionDetector detector = new StreamingActionDetector();
+
+        assertThat(detector.append("Confirmed [")).isEmpty();
+        assertThat(detector.append("CONFIRM_ORDER]")).containsExactly("[CONFIRM_ORDER]");
+    }
+
+    @Test
+    void detectsTagsInChunkSizesDownToOneCharacter() {
+        String output = "Sure [SET_ADDRESS: 12 Allen Ave, Ikeja] then [CONFIRM_ORDER] [x] done";
+        for (int size = 1; size <= output.length(); size++) {
+            StreamingActionDetector detector = new StreamingActionDetector();
+            List<String> tags = new ArrayList<>();
+            for (int i = 0; i < output.length(); i += size) {
+                tags.addAll(detector.append(output.substring(i, Math.min(output.length(), i + size))));
+            }
+
+            assertThat(tags).as("chunk size %d", size)
+                    .containsExactly("[SET_ADDRESS: 12 Allen Ave, Ikeja]", "[CONFIRM_ORDER]");
+            assertThat(detector.getTextWithoutTags()).isEqualTo("Sure  then  [x] done");
+        }
+    }
+
+    @Test
+    void skipsStrayBrackets() {
+        StreamingActionDetector detector = new StreamingActionDetector();
+
+        assertThat(detector.append("Sizes [S, M, L] and [note")).isEmpty();
+        assertThat(detector.append(": see below] [HANDOFF: wants a manager]"))
+                .containsExactly("[HANDOFF: wants a manager]");
+        assertThat(detector.getText()).isEqualTo("Sizes [S, M, L] and [note: see below] [HANDOFF: wants a manager]");
+        assertThat(detector.getTextWithoutTags()).isEqualTo("Sizes [S, M, L] and [note: see below] ");
+    }
+
+    @Test
+    void detectsATagRightAfterAnOpeningBracket() {
+        StreamingActionDetector detector = new StreamingActionDetector();
+
+        assertThat(detector.append("[[CONFIRM_ORDER]")).containsExactly("[CONFIRM_ORDER]");
+        assertThat(detector.getTextWithoutTags()).isEqualTo("[");
+    }
+
+    @Test
+    void ignoresAnIncompleteActionName() {
+        StreamingActionDetector detector = new StreamingActionDetector();
+
+        assertThat(detector.append("[CONFIRM] [ADD_TO] [ADDRESS: x]")).isEmpty();
+    }
+
+    @Test
+    void acceptsLowercaseAndLeadingWhitespace() {
+        StreamingActionDetector detector = new StreamingActionDetector();
+
+        List<String> tags = detector.append("ok [ confirm_order ]");
+
+        assertThat(tags).containsExactly("[ confirm_order ]");
+        assertThat(StreamingActionDetector.actionName(tags.get(0))).isEqualTo("CONFIRM_ORDER");
+    }
+
+    @Test
+    void givesUpOnATagThatNeverCloses() {
+        StreamingActionDetector detector = new StreamingActionDetector();
+
+        assertThat(detector.append("[ADD_TO_CART: " + "x".repeat(600))).isEmpty();
+        assertThat(detector.append(" [CANCEL_ORDER]")).containsExactly("[CANCEL_ORDER]");
+    }
+
+    @Test
+    void namesTheActionOfATag() {
+        assertThat(StreamingActionDetector.actionName("[APPLY_DISCOUNT: SAVE10]")).isEqualTo("APPLY_DISCOUNT");
+        assertThat(StreamingActionDetector.actionName("[note]")).isNull();
+    }
+}
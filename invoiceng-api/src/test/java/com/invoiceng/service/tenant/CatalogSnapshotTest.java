@@ -0,0 +1,101 @@
+package com.invoiceng.service.tenant;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogSnapshotTest {
+
+    private final CatalogSnapshot catalog = new CatalogSnapshot(List.of(
+            product("Red Shoes (Size 42)"),
+            product("Blue Shoes"),
+            product("Ankara Gown"),
+            product("Café Latte"),
+            product("Leather Belt")
+    ));
+
+    @Test
+    void scoresAnExactNameOne() {
+        List<CatalogSnapshot.Match> matches = catalog.search("ankara  GOWN!", 3);
+
+        assertThat(matches).isNotEmpty();
+        assertThat(matches.get(0).product().getName()).isEqualTo("Ankara Gown");
+        assertThat(matches.get(0).score()).isEqualTo(1.0);
+        assertThat(matches.subList(1, matches.size())).allSatisfy(match -> assertThat(match.score()).isLessThan(1.0));
+    }
+
+    @Test
+    void matchesNamesWithoutAccentsOrPunctuation() {
+        assertThat(catalog.findByName("cafe latte")).map(CatalogProduct::getName).hasValue("Café Latte");
+        assertThat(catalog.bestMatch("CAFÉ-LATTE")).map(CatalogProduct::getName).hasValue("Café Latte");
+    }
+
+    @Test
+    void findsAProductByPartOfItsName() {
+        assertThat(catalog.bestMatch("red shoe")).map(CatalogProduct::getName).hasValue("Red Shoes (Size 42)");
+        assertThat(catalog.bestMatch("belts")).map(CatalogProduct::getName).hasValue("Leather Belt");
+    }
+
+    @Test
+    void findsAProductDespiteATypo() {
+        List<CatalogSnapshot.Match> matches = catalog.search("ankara gwn", 1);
+
+        assertThat(matches).hasSize(1);
+        assertThat(matches.get(0).product().getName()).isEqualTo("Ankara Gown");
+        assertThat(matches.get(0).score()).isBetween(CatalogSnapshot.MIN_MATCH_SCORE, 0.99);
+        assertThat(catalog.bestMatch("ankara gwn")).map(CatalogProduct::getName).hasValue("Ankara Gown");
+    }
+
+    @Test
+    void ranksTheCloserNameFirst() {
+        List<CatalogSnapshot.Match> matches = catalog.search("blue shoes", 5);
+
+        assertThat(matches).extracting(match -> match.product().getName())
+                .startsWith("Blue Shoes", "Red Shoes (Size 42)");
+        assertThat(matches).isSortedAccordingTo((a, b) -> Double.compare(b.score(), a.score()));
+    }
+
+    @Test
+    void returnsNoBestMatchBelowTheThreshold() {
+        List<CatalogSnapshot.Match> matches = catalog.search("shirt", 5);
+
+        assertThat(matches).isNotEmpty();
+        assertThat(matches.get(0).score()).isLessThan(CatalogSnapshot.MIN_MATCH_SCORE);
+        assertThat(catalog.bestMatch("shirt")).isEmpty();
+    }
+
+    @Test
+    void bestMatchFollowsTheTopSearchScore() {
+        for (String query : List.of("red", "shoe", "gown", "leather", "latte", "blue belt", "lather", "hat", "x")) {
+            List<CatalogSnapshot.Match> top = catalog.search(query, 1);
+            Optional<CatalogProduct> best = catalog.bestMatch(query);
+
+            if (!top.isEmpty() && top.get(0).score() >= CatalogSnapshot.MIN_MATCH_SCORE) {
+                assertThat(best).as(query).contains(top.get(0).product());
+            } else {
+                assertThat(best).as(query).isEmpty();
+            }
+        }
+    }
+
+    @Test
+    void limitsTheNumberOfMatches() {
+        assertThat(catalog.search("shoes", 1)).hasSize(1);
+        assertThat(catalog.search("shoes", 0)).isEmpty();
+    }
+
+    @Test
+    void returnsNothingForAnEmptyQueryOrCatalog() {
+        assertThat(catalog.search("  ?! ", 5)).isEmpty();
+        assertThat(catalog.bestMatch(null)).isEmpty();
+        assertThat(CatalogSnapshot.EMPTY.bestMatch("red shoes")).isEmpty();
+        assertThat(catalog.bestMatch("watch")).isEmpty();
+    }
+
+    private static CatalogProduct product(String name) {
+        return CatalogProduct.builder().name(name).build();
+    }
+}
@@ -0,0 +1,157 @@
+package com.invoiceng.service.webhook;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.invoiceng.dto.whatsapp.WhatsAppWebhookPayload;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WebhookEventParserTest {
+
+    private final WebhookEventParser parser = new WebhookEventParser(new ObjectMapper());
+
+    @Test
+    void readsAMessagesChangeWithValueBeforeField() throws IOException {
+        WebhookEvents events = parse("""
+                {"object": "whatsapp_business_account", "entry": [{"id": "waba", "changes": [{
+                  "value": {
+                    "messaging_product": "whatsapp",
+                    "metadata": {"display_phone_number": "2348000000000", "phone_number_id": "pn-1"},
+                    "contacts": [{"profile": {"name": "Ada"}, "wa_id": "2348011111111"}],
+                    "messages": [{"from": "2348011111111", "id": "wamid.1", "timestamp": "1700000000",
+                                  "type": "text", "text": {"body": "Hi"}}]
+                  },
+                  "field": "messages"
+                }]}]}
+                """);
+
+        assertThat(events.getMessages()).hasSize(1);
+        WebhookEvents.InboundMessage inbound = events.getMessages().get(0);
+        assertThat(inbound.getPhoneNumberId()).isEqualTo("pn-1");
+        assertThat(inbound.getContact().getWaId()).isEqualTo("2348011111111");
+        assertThat(inbound.getContact().getProfile().getName()).isEqualTo("Ada");
+        assertThat(inbound.getMessage().getId()).isEqualTo("wamid.1");
+        assertThat(inbound.getMessage().getText().getBody()).isEqualTo("Hi");
+        assertThat(events.getTenantKey()).isEqualTo("pn-1");
+    }
+
+    @Test
+    void readsAMessagesChangeWithFieldBeforeValue() throws IOException {
+        WebhookEvents events = parse("""
+                {"entry": [{"changes": [{"field": "messages", "value": {
+                  "metadata": {"phone_number_id": "pn-1"},
+                  "messages": [{"from": "2348011111111", "id": "wamid.1", "type": "text", "text": {"body": "Hi"}}]
+                }}]}]}
+                """);
+
+        assertThat(events.getMessages()).extracting(m -> m.getMessage().getId()).containsExactly("wamid.1");
+    }
+
+    @Test
+    void dropsAValueReadBeforeAFieldOtherThanMessages() throws IOException {
+        WebhookEvents events = parse("""
+                {"entry": [{"changes": [
+                  {"value": {"metadata": {"phone_number_id": "pn-1"},
+                             "messages": [{"id": "wamid.ignored", "type": "text", "text": {"body": "x"}}]},
+                   "field": "message_template_status_update"},
+                  {"value": {"metadata": {"phone_number_id": "pn-1"}}}
+                ]}]}
+                """);
+
+        assertThat(events.isEmpty()).isTrue();
+        assertThat(events.getTenantKey()).isNull();
+    }
+
+    @Test
+    void skipsSubtreesItDoesNotRead() throws IOException {
+        WebhookEvents events = parse("""
+                {"object": "whatsapp_business_account",
+                 "extra": {"nested": [1, {"messages": [{"id": "wamid.top"}]}], "field": "messages"},
+                 "entry": [
+                   "not an object",
+                   {"id": "waba", "time": 1700000000, "meta": {"changes": [{"field": "messages"}]},
+                    "changes": [
+                      42,
+                      {"value": {
+                         "metadata": {"phone_number_id": "pn-1", "extra": {"phone_number_id": "pn-wrong"}},
+                         "errors": [{"code": 1, "messages": [{"id": "wamid.error"}]}],
+                         "statuses": [{"id": "wamid.out", "status": "read", "timestamp": "1700000001",
+                                       "biz_opaque_callback_data": {"messages": [1, 2]}, "unknown": [[], {}]}],
+                         "messages": ["skip", {"id": "wamid.1", "type": "text", "text": {"body": "Hi"},
+                                              "referral": {"source_url": "x", "headline": {"a": [1]}}}]
+                       },
+                       "field": "messages",
+                       "after": [{"value": {}}]}
+                    ]}
+                 ]}
+                """);
+
+        assertThat(events.getMessages()).extracting(m -> m.getMessage().getId()).containsExactly("wamid.1");
+        assertThat(events.getMessages().get(0).getPhoneNumberId()).isEqualTo("pn-1");
+        assertThat(events.getStatuses()).extracting(s -> s.getStatus().getId()).containsExactly("wamid.out");
+        assertThat(events.getStatuses().get(0).getStatus().getStatus()).isEqualTo("read");
+    }
+
+    @Test
+    void readsTheStoredPropertiesOfAStatus() throws IOException {
+        WebhookEvents events = parse("""
+                {"entry": [{"changes": [{"value": {
+                  "metadata": {"phone_number_id": "pn-1"},
+                  "statuses": [{
+                    "id": "wamid.out", "status": "failed", "timestamp": "1700000002", "recipient_id": "2348011111111",
+                    "conversation": {"id": "conv-1", "expiration_timestamp": "1700086400", "origin": {"type": "service"}},
+                    "pricing": {"billable": true, "pricing_model": "CBP", "category": "service"},
+                    "errors": [{"code": 131026, "title": "Message undeliverable"}]
+                  }]
+                }, "field": "messages"}]}]}
+                """);
+
+        assertThat(events.getMessages()).isEmpty();
+        assertThat(events.getStatuses()).hasSize(1);
+        WebhookEvents.StatusReceipt receipt = events.getStatuses().get(0);
+        WhatsAppWebhookPayload.Status status = receipt.getStatus();
+        assertThat(receipt.getPhoneNumberId()).isEqualTo("pn-1");
+        assertThat(status.getRecipientId()).isEqualTo("2348011111111");
+        assertThat(status.getTimestamp()).isEqualTo("1700000002");
+        assertThat(status.getConversation().getId()).isEqualTo("conv-1");
+        assertThat(status.getConversation().getOrigin().getType()).isEqualTo("service");
+        assertThat(status.getPricing().getCategory()).isEqualTo("service");
+        assertThat(status.getPricing().getBillable()).isTrue();
+        assertThat(status.getErrors()).extracting(WhatsAppWebhookPayload.StatusError::getCode).containsExactly(131026);
+    }
+
+    @Test
+    void keepsEachChangeWithItsOwnPhoneNumberId() throws IOException {
+        WebhookEvents events = parse("""
+                {"entry": [
+                  {"changes": [{"field": "messages", "value": {"metadata": {"phone_number_id": "pn-1"},
+                                "messages": [{"id": "wamid.1"}]}}]},
+                  {"changes": [{"field": "messages", "value": {"metadata": {"phone_number_id": "pn-2"},
+                                "messages": [{"id": "wamid.2"}, {"id": "wamid.3"}]}}]}
+                ]}
+                """);
+
+        assertThat(events.getMessages())
+                .extracting(WebhookEvents.InboundMessage::getPhoneNumberId)
+                .containsExactly("pn-1", "pn-2", "pn-2");
+    }
+
+    @Test
+    void rejectsABodyThatIsNotAnObject() {
+        assertThatThrownBy(() -> parse("[{\"entry\": []}]")).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void rejectsATruncatedBody() {
+        assertThatThrownBy(() -> parse("{\"entry\": [{\"changes\": [{\"field\": \"messages\""))
+                .isInstanceOf(IOException.class);
+    }
+
+    private WebhookEvents parse(String json) throws IOException {
+        return parser.parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,234 @@
+package com.invoiceng.service.webhook;
+
+import com.invoiceng.config.WebhookConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookJournalTest {
+
+    private static final int HEADER_BYTES = 17;
+
+    @TempDir
+    Path directory;
+
+    private WebhookConfig config;
+    private final List<WebhookJournal> opened = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        config = new WebhookConfig();
+        config.getJournal().setDirectory(directory.toString());
+        config.getJournal().setGroupCommitLingerMicros(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(WebhookJournal::close);
+    }
+
+    @Test
+    void recoversEntriesWithoutAnAck() {
+        WebhookJournal journal = open();
+        long first = journal.append(body("first"));
+        long second = journal.append(body("second"));
+        long third = journal.append(body("third"));
+        journal.acknowledge(second);
+        journal.close();
+
+        List<WebhookJournal.JournalEntry> recovered = open().drainRecoveredEntries();
+
+        assertThat(recovered).extracting(WebhookJournal.JournalEntry::getSeq).containsExactly(first, third);
+        assertThat(text(recovered.get(0))).isEqualTo("first");
+        assertThat(text(recovered.get(1))).isEqualTo("third");
+    }
+
+    @Test
+    void recoveredEntriesAreReturnedOnce() {
+        WebhookJournal journal = open();
+        journal.append(body("first"));
+        journal.close();
+
+        WebhookJournal reopened = open();
+
+        assertThat(reopened.drainRecoveredEntries()).hasSize(1);
+        assertThat(reopened.drainRecoveredEntries()).isEmpty();
+    }
+
+    @Test
+    void continuesSequenceNumbersAfterRestart() {
+        WebhookJournal journal = open();
+        journal.append(body("first"));
+        long last = journal.append(body("second"));
+        journal.close();
+
+        assertThat(open().append(body("third"))).isGreaterThan(last);
+    }
+
+    @Test
+    void readsBackUnacknowledgedEntriesOnly() {
+        WebhookJournal journal = open();
+        long first = journal.append(body("first"));
+        long second = journal.append(body("second"));
+        journal.acknowledge(first);
+        journal.close();
+
+        WebhookJournal reopened = open();
+
+        assertThat(reopened.read(first)).isEmpty();
+        assertThat(reopened.read(second)).hasValueSatisfying(bytes ->
+                assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo("second"));
+    }
+
+    @Test
+    void truncatesATornTail() throws IOException {
+        WebhookJournal journal = open();
+        long first = journal.append(body("first"));
+        long second = journal.append(body("second"));
+        journal.close();
+
+        Path segment = onlySegment();
+        long intactSize = Files.size(segment);
+        // A header promising 100 payload bytes, of which only 5 made it to disk
+        ByteBuffer torn = ByteBuffer.allocate(HEADER_BYTES + 5);
+        torn.putInt(100).putInt(0).put((byte) 1).putLong(second + 1);
+        Files.write(segment, torn.array(), StandardOpenOption.APPEND);
+
+        List<WebhookJournal.JournalEntry> recovered = open().drainRecoveredEntries();
+
+        assertThat(recovered).extracting(WebhookJournal.JournalEntry::getSeq).containsExactly(first, second);
+        assertThat(Files.size(segment)).isEqualTo(intactSize);
+    }
+
+    @Test
+    void skipsACorruptRecordAndKeepsReadingAfterIt() throws IOException {
+        WebhookJournal journal = open();
+        long first = journal.append(body("first"));
+        journal.append(body("second"));
+        long third = journal.append(body("third"));
+        journal.close();
+
+        Path segment = onlySegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        int secondPayload = HEADER_BYTES + "first".length() + HEADER_BYTES;
+        bytes[secondPayload] ^= 0x55;
+        Files.write(segment, bytes);
+
+        List<WebhookJournal.JournalEntry> recovered = open().drainRecoveredEntries();
+
+        assertThat(recovered).extracting(WebhookJournal.JournalEntry::getSeq).containsExactly(first, third);
+        assertThat(text(recovered.get(1))).isEqualTo("third");
+    }
+
+    @Test
+    void ignoresAnAckForAnotherSequenceNumber() {
+        WebhookJournal journal = open();
+        long first = journal.append(body("first"));
+        journal.acknowledge(first + 100);
+        journal.close();
+
+        assertThat(open().drainRecoveredEntries())
+                .extracting(WebhookJournal.JournalEntry::getSeq)
+                .containsExactly(first);
+    }
+
+    @Test
+    void deletesSealedSegmentsOnceAllTheirEntriesAreAcknowledged() throws IOException {
+        // Small enough that every entry starts a new segment
+        config.getJournal().setSegmentSizeBytes(64);
+        WebhookJournal journal = open();
+        long first = journal.append(body("first-entry-body"));
+        long second = journal.append(body("second-entry-body"));
+        long third = journal.append(body("third-entry-body"));
+        assertThat(segments()).hasSize(3);
+
+        journal.acknowledge(first);
+        journal.acknowledge(second);
+        journal.close();
+
+        assertThat(segments()).extracting(path -> path.getFileName().toString())
+                .doesNotContain(segmentName(first), segmentName(second))
+                .contains(segmentName(third));
+        assertThat(open().drainRecoveredEntries())
+                .extracting(WebhookJournal.JournalEntry::getSeq)
+                .containsExactly(third);
+    }
+
+    @Test
+    void keepsLaterSegmentsWhileAnOlderOneHasPendingEntries() throws IOException {
+        config.getJournal().setSegmentSizeBytes(64);
+        WebhookJournal journal = open();
+        long first = journal.append(body("first-entry-body"));
+        long second = journal.append(body("second-entry-body"));
+        journal.append(body("third-entry-body"));
+
+        journal.acknowledge(second);
+        journal.close();
+
+        assertThat(segments()).extracting(path -> path.getFileName().toString())
+                .contains(segmentName(first), segmentName(second));
+    }
+
+    @Test
+    void keepsAPendingEntryWhenAcksRotateTheSegment() {
+        config.getJournal().setSegmentSizeBytes(64);
+        WebhookJournal journal = open();
+        long first = journal.append(body("first-entry-body"));
+        long second = journal.append(body("second-entry-body"));
+        for (int i = 0; i < 6; i++) {
+            journal.acknowledge(first);
+        }
+        // Seals the segment the ACKs went to, which makes it a candidate for deletion
+        long third = journal.append(body("third-entry-body"));
+        journal.close();
+
+        assertThat(open().drainRecoveredEntries())
+                .extracting(WebhookJournal.JournalEntry::getSeq)
+                .containsExactly(second, third);
+    }
+
+    private WebhookJournal open() {
+        WebhookJournal journal = new WebhookJournal(config, new SimpleMeterRegistry());
+        journal.init();
+        opened.add(journal);
+        return journal;
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> segments = segments();
+        assertThat(segments).hasSize(1);
+        return segments.get(0);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static String segmentName(long firstSeq) {
+        return String.format("segment-%020d.log", firstSeq);
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(WebhookJournal.JournalEntry entry) {
+        return new String(entry.getBody(), StandardCharsets.UTF_8);
+    }
+}